@@ -8,6 +8,7 @@ import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
 import net.mahdilamb.dataviz.graphics.Orientation;
 import net.mahdilamb.dataviz.graphics.Stroke;
 import net.mahdilamb.dataviz.utils.Numbers;
+import net.mahdilamb.dataviz.utils.Ryu;
 import net.mahdilamb.dataviz.utils.StringUtils;
 
 import java.awt.*;
@@ -66,7 +67,7 @@ public class ColorScales extends KeyArea<ColorScales> {
                     int i = 0;
                     for (double d = first; d <= last && i < values.length; d += spacing, ++i) {
                         values[i] = d;
-                        labels[i] = String.valueOf(Numbers.approximateDouble(values[i]));
+                        labels[i] = Ryu.toString(Numbers.approximateDouble(values[i]));
                         labelWidth = Math.max(getTextWidth(renderer, scales.itemFont, labels[i]), labelWidth);
                     }
                 }
@@ -102,7 +103,7 @@ public class ColorScales extends KeyArea<ColorScales> {
                             canvas.strokeLine(barEnd, y, barEnd + scales.tickLength, y);
                         }
                         if (scales.showLabels) {
-                            canvas.fillText(labels[i], barEnd + (scales.showTicks ? (scales.tickLength) : 0) + 2, y + baselineOffset);
+                            canvas.fillCachedText(labels[i], barEnd + (scales.showTicks ? (scales.tickLength) : 0) + 2, y + baselineOffset);
 
                         }
                     }
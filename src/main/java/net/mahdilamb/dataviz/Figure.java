@@ -317,6 +317,7 @@ public final class Figure extends FigureBase<Figure> implements FigureComponent<
         for (final PlotData<?, ?> data : layout.data) {
             if (data.qualitativeColormap == null) {
                 data.qualitativeColormap = colormap;
+                data.invalidateMarkers();
             }
         }
     }
@@ -325,6 +326,7 @@ public final class Figure extends FigureBase<Figure> implements FigureComponent<
         for (final PlotData<?, ?> data : layout.data) {
             if (data.sequentialColormap == null) {
                 data.sequentialColormap = colormap;
+                data.invalidateMarkers();
             }
         }
     }
@@ -65,7 +65,7 @@ public class Legend extends KeyArea<Legend> {
             double y = getY() + legend.paddingY + getTextBaselineOffset(renderer, legend.titleFont);
             canvas.setFill(legend.titleColor);
             canvas.setFont(legend.titleFont);
-            canvas.fillText(styler.getName(), x, y);
+            canvas.fillCachedText(styler.getName(), x, y);
             canvas.setFill(legend.itemColor);
             canvas.setFont(legend.itemFont);
             for (final Item item : items) {
@@ -129,7 +129,7 @@ public class Legend extends KeyArea<Legend> {
             } else {
                 labelOffsetY = 0;
             }
-            canvas.fillText(label, getX() + ((glyph.getMaxSize() + glyph.getSize()) * .5) + legend.paddingX + 2, getY() + labelOffsetY + getTextBaselineOffset(renderer, legend.itemFont));
+            canvas.fillCachedText(label, getX() + ((glyph.getMaxSize() + glyph.getSize()) * .5) + legend.paddingX + 2, getY() + labelOffsetY + getTextBaselineOffset(renderer, legend.itemFont));
         }
 
         @Override
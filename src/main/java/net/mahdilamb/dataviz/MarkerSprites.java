@@ -0,0 +1,185 @@
+package net.mahdilamb.dataviz;
+
+import net.mahdilamb.dataviz.figure.Renderer;
+import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
+import net.mahdilamb.dataviz.graphics.Stroke;
+import net.mahdilamb.dataviz.swing.BufferedImageExtended;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A cache of pre-rasterized markers. Each combination of marker shape, size, fill, edge and device scale is rasterized
+ * once (for each sub-pixel offset used) and then drawn as an image, rather than rebuilding and filling the geometry of
+ * every marker. Each renderer has its own cache.
+ */
+final class MarkerSprites {
+    /**
+     * The number of sub-pixel offsets in each direction
+     */
+    static final int SUBPIXEL_STEPS = 4;
+    /**
+     * The maximum size of marker to rasterize, in device pixels. Larger markers are drawn as geometry
+     */
+    static final double MAX_SIZE = 64;
+    /**
+     * The maximum number of sprites held
+     */
+    private static final int MAX_SPRITES = 1024;
+    /*
+     * Padding around the marker for the edge and antialiasing
+     */
+    private static final int PADDING = 2;
+
+    //the sprites are looked up by several drawing threads, so rasterizing one does not block the others
+    private final Map<Key, Sprite> sprites = new ConcurrentHashMap<>();
+
+    private static final class Key {
+        final MarkerShape shape;
+        final double size, scale;
+        final int fill, edge;
+
+        Key(MarkerShape shape, double size, double scale, int fill, int edge) {
+            this.shape = shape;
+            this.size = size;
+            this.scale = scale;
+            this.fill = fill;
+            this.edge = edge;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return shape == key.shape && Double.compare(size, key.size) == 0 && Double.compare(scale, key.scale) == 0 && fill == key.fill && edge == key.edge;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(shape, size, scale, fill, edge);
+        }
+    }
+
+    /**
+     * The rasterized forms of a marker at each sub-pixel offset, in device pixels
+     */
+    static final class Sprite {
+        final Key key;
+        final int half;
+        //the variants are rasterized on demand by several drawing threads, so are published through an atomic array
+        private final AtomicReferenceArray<BufferedImageExtended> variants = new AtomicReferenceArray<>(SUBPIXEL_STEPS * SUBPIXEL_STEPS);
+
+        private Sprite(final Key key) {
+            this.key = key;
+            this.half = (int) Math.ceil(key.size * key.scale * .5) + PADDING;
+        }
+
+        /**
+         * Draw the sprite centered on the position
+         *
+         * @param canvas the canvas to draw on
+         * @param x      the x position of the center of the marker
+         * @param y      the y position of the center of the marker
+         */
+        void draw(final GraphicsBuffer canvas, double x, double y) {
+            //snap to the nearest sub-pixel offset of the device, carrying over to the next pixel when the nearest offset is a whole pixel
+            final double stepsX = Math.floor(x * key.scale * SUBPIXEL_STEPS + .5), stepsY = Math.floor(y * key.scale * SUBPIXEL_STEPS + .5);
+            final double floorX = Math.floor(stepsX / SUBPIXEL_STEPS), floorY = Math.floor(stepsY / SUBPIXEL_STEPS);
+            final int subX = (int) (stepsX - floorX * SUBPIXEL_STEPS),
+                    subY = (int) (stepsY - floorY * SUBPIXEL_STEPS);
+            final BufferedImageExtended image = getVariant(subX, subY);
+            if (key.scale == 1) {
+                canvas.drawImage(image, floorX - half, floorY - half);
+            } else {
+                canvas.drawImage(image, (floorX - half) / key.scale, (floorY - half) / key.scale, image.getWidth() / key.scale, image.getHeight() / key.scale);
+            }
+        }
+
+        private BufferedImageExtended getVariant(int subX, int subY) {
+            final int v = subY * SUBPIXEL_STEPS + subX;
+            final BufferedImageExtended image = variants.get(v);
+            if (image != null) {
+                return image;
+            }
+            //two threads may rasterize the same variant, in which case the first one is kept
+            variants.compareAndSet(v, null, rasterize(key, half, half + (double) subX / SUBPIXEL_STEPS, half + (double) subY / SUBPIXEL_STEPS));
+            return variants.get(v);
+        }
+
+        boolean matches(MarkerShape shape, double size, double scale, int fill, int edge) {
+            return key.shape == shape && key.size == size && key.scale == scale && key.fill == fill && key.edge == edge;
+        }
+    }
+
+    private MarkerSprites() {
+
+    }
+
+    /**
+     * @param renderer the renderer
+     * @return the sprites of the renderer
+     */
+    static MarkerSprites of(final Renderer renderer) {
+        return renderer.getCache(MarkerSprites.class, MarkerSprites::new);
+    }
+
+    /**
+     * @param canvas the canvas
+     * @param size   the size of the marker
+     * @return whether the marker can be drawn as a sprite on the canvas
+     */
+    static boolean canUseSprite(final GraphicsBuffer canvas, double size) {
+        return canvas.isRaster() && size > 0 && size * canvas.getDeviceScale() <= MAX_SIZE;
+    }
+
+    /**
+     * Get the sprite for a marker
+     *
+     * @param shape the marker shape
+     * @param size  the size of the marker
+     * @param scale the device scale of the canvas the marker is drawn on
+     * @param fill  the fill color, as packed ARGB
+     * @param edge  the edge color, as packed ARGB (or 0 if the marker has no edge)
+     * @return the sprite
+     */
+    Sprite get(final MarkerShape shape, double size, double scale, int fill, int edge) {
+        final Key key = new Key(shape, size, scale, fill, edge);
+        final Sprite sprite = sprites.get(key);
+        if (sprite != null) {
+            return sprite;
+        }
+        if (sprites.size() >= MAX_SPRITES) {
+            //too many styles, so start again rather than tracking the least recently used
+            sprites.clear();
+        }
+        return sprites.computeIfAbsent(key, Sprite::new);
+    }
+
+    /**
+     * Remove all the sprites
+     */
+    void clear() {
+        sprites.clear();
+    }
+
+    private static BufferedImageExtended rasterize(final Key key, int half, double x, double y) {
+        final BufferedImageExtended image = new BufferedImageExtended(2 * half + 1, 2 * half + 1, 0, 0, 0, 0, 0, 0);
+        image.setFill(new Color(key.fill, true));
+        key.shape.fill.paint(image, x, y, key.size * key.scale);
+        if (key.edge != 0) {
+            image.setStroke(key.scale == 1 ? Stroke.SOLID : new Stroke(key.scale));
+            image.setStroke(new Color(key.edge, true));
+            key.shape.stroke.paint(image, x, y, key.size * key.scale);
+        }
+        image.done();
+        return image;
+    }
+}
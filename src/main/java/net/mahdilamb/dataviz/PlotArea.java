@@ -1,21 +1,37 @@
 package net.mahdilamb.dataviz;
 
+import net.mahdilamb.colormap.Colormap;
+import net.mahdilamb.dataviz.data.RelationalData;
 import net.mahdilamb.dataviz.figure.BufferingStrategy;
 import net.mahdilamb.dataviz.figure.Component;
 import net.mahdilamb.dataviz.figure.Renderer;
 import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
+import net.mahdilamb.dataviz.graphics.Stroke;
+import net.mahdilamb.dataviz.layouts.XYLayout;
 import net.mahdilamb.dataviz.ui.Label;
+import net.mahdilamb.dataviz.utils.Numbers;
 import net.mahdilamb.dataviz.utils.rtree.RTree;
 
 import java.awt.*;
 import java.util.List;
-import java.util.Map;
+import java.util.function.IntPredicate;
 
 public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
+    /**
+     * The stroke used to draw the shapes
+     */
+    protected static final Stroke SHAPE_STROKE = Stroke.SOLID;
+    /*
+     * The number of colors of the sequential colormap that are included in the fingerprint
+     */
+    private static final int COLORMAP_SAMPLES = 256;
     protected PL layout;
     boolean mouseDown = false;
     double startX, startY;
     PlotShape<PL> lastHover;
+    //the pan and wheel zoom accumulated since the last frame
+    private double pendingPanX, pendingPanY, pendingZoom = 1, zoomX, zoomY;
+    private final Runnable applyPendingTransform = this::applyPendingTransform;
 
     protected PlotArea(PL layout, BufferingStrategy<? extends PlotArea<PL>> bufferingStrategy) {
         super(bufferingStrategy);
@@ -72,7 +88,9 @@ public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
             if (getInputMode() == InputMode.State.POLYGON_SELECT) {
 
             } else if (getInputMode() == InputMode.State.PAN) {
-                layout.panPlotArea(x - startX, y - startY);
+                pendingPanX += x - startX;
+                pendingPanY += y - startY;
+                getContext().getRenderer().runBeforeNextFrame(applyPendingTransform);
                 startX = x;
                 startY = y;
             }
@@ -86,10 +104,9 @@ public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
                 }
             } else {
                 if (((Figure) getContext().getRenderer().getFigure()).toggleHover.getValue()) {
-                    final List<? extends PlotShape<PL>> matches = contains(x, y);
-                    if (!matches.isEmpty()) {
-                        final PlotShape<PL> thisMatch = matches.get(matches.size() - 1);
-                        if (thisMatch != lastHover) {
+                    final PlotShape<PL> thisMatch = getHoverShape(x, y);
+                    if (thisMatch != null) {
+                        if (!thisMatch.isSameElement(lastHover)) {
                             setTooltip(thisMatch.createTooltip(getContext().getRenderer()));
                             lastHover = thisMatch;
                         }
@@ -102,6 +119,23 @@ public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
         super.onMouseMove(ctrlDown, shiftDown, x, y);
     }
 
+    /**
+     * Apply the pan and zoom accumulated since the last frame
+     */
+    private void applyPendingTransform() {
+        if (pendingPanX != 0 || pendingPanY != 0) {
+            final double dx = pendingPanX, dy = pendingPanY;
+            pendingPanX = pendingPanY = 0;
+            layout.panPlotArea(dx, dy);
+        }
+        if (pendingZoom != 1) {
+            //the zoom factors of each scroll are multiplied together
+            final double zoom = pendingZoom - 1;
+            pendingZoom = 1;
+            layout.zoomPlotArea(zoomX, zoomY, zoom);
+        }
+    }
+
     protected void clearTooltip() {
         lastHover = null;
         setTooltip(null);
@@ -110,14 +144,29 @@ public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
 
     protected abstract List<? extends PlotShape<PL>> contains(double x, double y);
 
+    /**
+     * Get the shape to show the tooltip of when hovering over a position. By default, this is the last shape that
+     * contains the position
+     *
+     * @param x the x position
+     * @param y the y position
+     * @return the shape at the position, or {@code null} if there is none
+     */
+    protected PlotShape<PL> getHoverShape(double x, double y) {
+        final List<? extends PlotShape<PL>> matches = contains(x, y);
+        return matches.isEmpty() ? null : matches.get(matches.size() - 1);
+    }
+
     protected abstract List<? extends PlotShape<PL>> contains(double x, double minY, double maxY);
 
 
     @Override
     protected void onMouseScroll(boolean controlDown, boolean shiftDown, double x, double y, double rotation) {
         if (layout.supportsWheelZoom) {
-            layout.zoomPlotArea(x, y, rotation);
-
+            pendingZoom *= 1 + rotation;
+            zoomX = x;
+            zoomY = y;
+            getContext().getRenderer().runBeforeNextFrame(applyPendingTransform);
         }
 
     }
@@ -126,6 +175,48 @@ public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
         return data.shapes;
     }
 
+    /**
+     * @param data the data
+     * @return the markers of the data, stored by column, or {@code null} if the data has no markers
+     */
+    protected static PlotMarkers getMarkers(final PlotData<?, XYLayout> data) {
+        return data.markers;
+    }
+
+    /**
+     * @param markers the markers
+     * @param i       the row of the marker
+     * @return a temporary shape representing the marker (e.g. for hover)
+     */
+    protected static PlotShape<XYLayout> getMarker(final PlotMarkers markers, int i) {
+        return markers.get(i);
+    }
+
+    /**
+     * @param markers the markers
+     * @param i       the row of the marker
+     * @return the size of the marker, in pixels
+     */
+    protected static double getMarkerSize(final PlotMarkers markers, int i) {
+        return markers.getSize(i);
+    }
+
+    protected static void drawMarker(XYLayout layout, PlotMarkers markers, int i, double x, double y, Renderer renderer, GraphicsBuffer canvas, int fill, int edge) {
+        markers.draw(layout, renderer, canvas, i, x, y, fill, edge);
+    }
+
+    protected static void drawMarkers(XYLayout layout, PlotMarkers markers, Renderer renderer, GraphicsBuffer canvas, IntPredicate filter, int edge, double minX, double minY, double maxX, double maxY) {
+        markers.drawAll(layout, renderer, canvas, filter, i -> getColor(markers, i), edge, minX, minY, maxX, maxY);
+    }
+
+    protected static boolean drawAggregated(XYLayout layout, PlotMarkers markers, GraphicsBuffer canvas, IntPredicate filter, double minX, double minY, double maxX, double maxY) {
+        return markers.drawAggregated(layout, canvas, filter, minX, minY, maxX, maxY);
+    }
+
+    protected static boolean markerIntersects(XYLayout layout, PlotMarkers markers, int i, double x, double y, double minX, double minY, double maxX, double maxY) {
+        return markers.intersects(layout, i, x, y, minX, minY, maxX, maxY);
+    }
+
     protected static <PL extends PlotLayout<PL>> List<PlotData<?, PL>> getData(PlotLayout<PL> layout) {
         return layout.data;
     }
@@ -134,6 +225,10 @@ public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
         shape.draw(layout, renderer, canvas);
     }
 
+    protected static <PL extends PlotLayout<PL>> void draw(PL layout, PlotShape<PL> shape, Renderer renderer, GraphicsBuffer canvas, double minX, double minY, double maxX, double maxY) {
+        shape.draw(layout, renderer, canvas, minX, minY, maxX, maxY);
+    }
+
     protected static <PL extends PlotLayout<PL>> Label getTitle(final PlotLayout<PL> layout) {
         return layout.title;
     }
@@ -159,6 +254,14 @@ public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
         return color;
     }
 
+    protected static int getColor(PlotMarkers markers, int i) {
+        final int color = markers.getColor(i);
+        if (markers.parent.selected != null && !markers.parent.selected.get(i)) {
+            return PlotMarkers.dim(color);
+        }
+        return color;
+    }
+
     protected static <PL extends PlotLayout<PL>> PlotSelection<PL> getSelection(PL layout) {
         return layout.selection;
     }
@@ -191,19 +294,94 @@ public abstract class PlotArea<PL extends PlotLayout<PL>> extends Component {
 
     protected abstract void clearCache();
 
-    protected final boolean isVisible(PlotShape<PL> shape) {
-        if (layout.data.size() == 1 && layout.data.get(0).attributes.isEmpty()) {
-            return true;
-        }
-        boolean visible = true;
+    protected static <PL extends PlotLayout<PL>> boolean isVisible(PlotShape<PL> shape) {
+        return shape.parent.isVisible(shape.i);
+    }
+
+    /**
+     * @param data the source data
+     * @param i    the index of the shape in its source data
+     * @return whether the shape is visible
+     */
+    protected static boolean isVisible(PlotData<?, ?> data, int i) {
+        return data.isVisible(i);
+    }
+
+
+    /**
+     * Compute a fingerprint of everything that affects how the shapes in this plot area are drawn (the geometry,
+     * vertices, stroke, color, size, marker shape and visibility of every shape, along with the aggregation and
+     * downsampling settings of the data). The fingerprint is stable between JVMs.
+     *
+     * @return the fingerprint of the shapes in the plot area
+     * @implNote this iterates over every shape, so should only be called when the shapes or their styles have changed
+     */
+    protected final long computeFingerprint() {
+        long hash = fingerprint(layout.data.size(), SHAPE_STROKE);
         for (final PlotData<?, PL> data : layout.data) {
-            for (final Map.Entry<PlotDataAttribute.Type, PlotDataAttribute> attribute : data.attributes.entrySet()) {
-                visible &= attribute.getValue().isVisible(shape.i);
+            hash = Numbers.hashCombine(hash, data.showEdges() ? 1 : 0);
+            final PlotMarkers markers = data.markers;
+            if (markers != null) {
+                //the aggregation settings determine whether and how the markers are shaded as a density image
+                hash = Numbers.hashCombine(hash, data.getAggregateDensity());
+                hash = Numbers.hashCombine(hash, data.getAggregateNormalization().ordinal());
+                final Colormap colormap = data.getSequentialColormap();
+                for (int i = 0; i < COLORMAP_SAMPLES; ++i) {
+                    hash = Numbers.hashCombine(hash, colormap.get(i / (COLORMAP_SAMPLES - 1f)).getRGB());
+                }
+                for (int i = 0; i < markers.size(); ++i) {
+                    hash = Numbers.hashCombine(hash, markers.getX(i));
+                    hash = Numbers.hashCombine(hash, markers.getY(i));
+                    if (!isVisible(data, i)) {
+                        hash = Numbers.hashCombine(hash, -1);
+                        continue;
+                    }
+                    hash = Numbers.hashCombine(hash, getColor(markers, i));
+                    hash = Numbers.hashCombine(hash, markers.getSize(i));
+                    hash = Numbers.hashCombine(hash, data.getShape(i).ordinal());
+                }
+            }
+            if (data instanceof RelationalData) {
+                hash = Numbers.hashCombine(hash, ((RelationalData<?>) data).getDownsampling().ordinal());
+            }
+            hash = Numbers.hashCombine(hash, data.lineColor == null ? 0 : data.lineColor.getRGB());
+            hash = Numbers.hashCombine(hash, data.fillColor == null ? 0 : data.fillColor.getRGB());
+            for (final RTree<PlotShape<PL>> tree : data.shapes) {
+                for (final PlotShape<PL> shape : tree.leaves()) {
+                    hash = shape.fingerprint(hash);
+                    if (!isVisible(shape)) {
+                        hash = Numbers.hashCombine(hash, -1);
+                        continue;
+                    }
+                    hash = Numbers.hashCombine(hash, getColor(data, shape).getRGB());
+                    if (shape.i >= 0) {
+                        hash = Numbers.hashCombine(hash, data.getSize(shape.i));
+                        hash = Numbers.hashCombine(hash, data.getShape(shape.i).ordinal());
+                    }
+                }
             }
         }
-        return visible;
+        return hash;
     }
 
+    /**
+     * Add a stroke to a fingerprint. {@link Stroke#hashCode()} is not used as it is not stable between JVMs
+     *
+     * @param hash   the fingerprint so far
+     * @param stroke the stroke
+     * @return the fingerprint including the stroke
+     */
+    private static long fingerprint(long hash, final Stroke stroke) {
+        hash = Numbers.hashCombine(hash, stroke.getWidth());
+        hash = Numbers.hashCombine(hash, stroke.getLineJoin().ordinal());
+        hash = Numbers.hashCombine(hash, stroke.getEndCap().ordinal());
+        hash = Numbers.hashCombine(hash, stroke.getMiterLimit());
+        hash = Numbers.hashCombine(hash, stroke.getDashOffset());
+        for (int i = 0; i < stroke.numDashes(); ++i) {
+            hash = Numbers.hashCombine(hash, stroke.getDash(i));
+        }
+        return hash;
+    }
 
     protected static boolean isSelection(final InputMode.State state) {
         return state != null && state.isSelection;
@@ -8,6 +8,7 @@ import net.mahdilamb.dataframe.utils.IntArrayList;
 import net.mahdilamb.dataviz.data.RelationalData;
 import net.mahdilamb.dataviz.layouts.XYLayout;
 import net.mahdilamb.dataviz.plots.DataFrameOnlyMethodException;
+import net.mahdilamb.dataviz.utils.DensityGrid;
 import net.mahdilamb.dataviz.utils.rtree.RTree;
 
 import java.awt.*;
@@ -47,10 +48,19 @@ public abstract class PlotData<PD extends PlotData<PD, PL>, PL extends PlotLayou
      * List of the shapes in the data
      */
     final List<RTree<PlotShape<PL>>> shapes = new LinkedList<>();
+    /**
+     * The markers in the data, stored by column (may be {@code null})
+     */
+    PlotMarkers markers;
     /**
      * Set of the traces that are used to style the data
      */
     final Map<PlotDataAttribute.Type, PlotDataAttribute> attributes = new EnumMap<>(PlotDataAttribute.Type.class);
+    /*
+     * The visibility of each row (one bit per row), compiled from the legend toggles and filters of the attributes.
+     * Null if it needs to be compiled
+     */
+    private volatile long[] visibility;
 
     /**
      * Create a plot data that does not use a dataframe
@@ -109,6 +119,87 @@ public abstract class PlotData<PD extends PlotData<PD, PL>, PL extends PlotLayou
 
     protected final void clear() {
         shapes.clear();
+        markers = null;
+        visibility = null;
+    }
+
+    /**
+     * @param i the row
+     * @return whether the row is visible, given the legend toggles and filters of the attributes
+     */
+    final boolean isVisible(int i) {
+        if (attributes.isEmpty() || i < 0) {
+            return true;
+        }
+        long[] visibility = this.visibility;
+        if (visibility == null) {
+            visibility = compileVisibility();
+        }
+        return (i >>> 6) >= visibility.length || (visibility[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private synchronized long[] compileVisibility() {
+        if (visibility == null) {
+            final int size = size();
+            final long[] bits = new long[(size + 63) >>> 6];
+            for (int i = 0; i < size; ++i) {
+                if (isVisibleInAttributes(i)) {
+                    bits[i >>> 6] |= 1L << i;
+                }
+            }
+            visibility = bits;
+        }
+        return visibility;
+    }
+
+    private boolean isVisibleInAttributes(int i) {
+        for (final PlotDataAttribute attribute : attributes.values()) {
+            if (!attribute.isVisible(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Update the visibility of the rows in a category that has been toggled
+     *
+     * @param indices  the category of each row
+     * @param category the toggled category
+     * @param visible  whether the category is now visible
+     */
+    synchronized void updateVisibility(final int[] indices, int category, boolean visible) {
+        if (visibility == null) {
+            return;
+        }
+        final long[] bits = visibility.clone();
+        for (int i = 0; i < indices.length; ++i) {
+            if (indices[i] != category) {
+                continue;
+            }
+            if (visible && isVisibleInAttributes(i)) {
+                bits[i >>> 6] |= 1L << i;
+            } else {
+                bits[i >>> 6] &= ~(1L << i);
+            }
+        }
+        visibility = bits;
+    }
+
+    /**
+     * Recompile the visibility of the rows when next used
+     */
+    void invalidateVisibility() {
+        visibility = null;
+    }
+
+    /**
+     * Invalidate the cached styles of the markers
+     */
+    void invalidateMarkers() {
+        if (markers != null) {
+            markers.invalidate();
+        }
     }
 
     protected Color getColor(int i) {
@@ -126,6 +217,33 @@ public abstract class PlotData<PD extends PlotData<PD, PL>, PL extends PlotLayou
         return getLayout().getColor(this);
     }
 
+    /**
+     * Calculate the colors of all the rows, as packed ARGB
+     *
+     * @param out the output array
+     */
+    protected void calculateColors(final int[] out) {
+        for (int i = 0; i < out.length; ++i) {
+            out[i] = getColor(i).getRGB();
+        }
+    }
+
+    /**
+     * Calculate the colors of all the rows from a numeric color attribute, using a lookup table of the sequential
+     * colormap
+     *
+     * @param out the output array
+     * @return whether the colors were calculated (i.e. the color attribute is numeric and there are no groups)
+     */
+    protected final boolean calculateNumericColors(final int[] out) {
+        final PlotDataAttribute color = getAttribute(PlotDataAttribute.Type.COLOR);
+        if (!(color instanceof PlotDataAttribute.Numeric) || getAttribute(PlotDataAttribute.Type.GROUP) != null) {
+            return false;
+        }
+        ((PlotDataAttribute.Numeric) color).calculateColors(getSequentialColormap(), out);
+        return true;
+    }
+
     protected double getOpacity(int i) {
         return 1;
     }
@@ -167,15 +285,18 @@ public abstract class PlotData<PD extends PlotData<PD, PL>, PL extends PlotLayou
             styler = ifCategorical.apply(attribute, series.asString());
         }
         attributes.put(attribute, styler);
+        invalidateVisibility();
         refresh();
     }
 
     protected final void removeAttribute(final PlotDataAttribute.Type attribute) {
         final PlotDataAttribute styler = attributes.remove(attribute);
+        invalidateVisibility();
         if (styler != null) {
             hoverFormatter.remove(styler);
             //todo remove legend item/ colorbar
         }
+        invalidateMarkers();
         if (layout != null) {
             layout.clearCache();
             PlotLayout.redraw(layout);
@@ -212,6 +333,7 @@ public abstract class PlotData<PD extends PlotData<PD, PL>, PL extends PlotLayou
 
     @SuppressWarnings("unchecked")
     protected final PD refresh() {
+        invalidateMarkers();
         if (layout != null) {
             layout.clearCache();
             PlotLayout.redraw(layout);
@@ -265,6 +387,21 @@ public abstract class PlotData<PD extends PlotData<PD, PL>, PL extends PlotLayou
         return 0;
     }
 
+    /**
+     * @return the number of markers per pixel of the area covered by the markers (at the current scale) above which the
+     * markers are aggregated into a density image rather than drawn individually
+     */
+    protected double getAggregateDensity() {
+        return Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return the normalization to use when the markers are aggregated
+     */
+    protected DensityGrid.Normalization getAggregateNormalization() {
+        return DensityGrid.Normalization.EQ_HIST;
+    }
+
     protected final PlotOptions getPlotOptions() {
         return getClass().getAnnotation(PlotOptions.class);
     }
@@ -295,6 +432,20 @@ public abstract class PlotData<PD extends PlotData<PD, PL>, PL extends PlotLayou
         return new PlotShape.PlotMarker(data, i, x, y);
     }
 
+    /**
+     * Set the markers of the data. The markers are stored by column, rather than as a shape per marker
+     *
+     * @param data the data
+     * @param x    the x positions of the markers (owned by the markers after this call)
+     * @param y    the y positions of the markers (owned by the markers after this call)
+     */
+    protected static void setMarkers(PlotData<?, XYLayout> data, double[] x, double[] y) {
+        data.markers = new PlotMarkers(data, x, y);
+        if (data.layout != null) {
+            data.layout.clearCache();
+        }
+    }
+
     protected static PlotShape<XYLayout> createPolyLine(RelationalData<?> data, int i, IntArrayList ids) {
         return new PlotShape.PolyLine(data, i, ids);
     }
@@ -6,8 +6,10 @@ import net.mahdilamb.dataframe.Series;
 import net.mahdilamb.dataframe.utils.GroupBy;
 import net.mahdilamb.dataframe.utils.UnsortedDoubleSet;
 import net.mahdilamb.dataviz.figure.AbstractComponent;
+import net.mahdilamb.dataviz.utils.ExtendedColormap;
 import net.mahdilamb.dataviz.utils.Interpolations;
 import net.mahdilamb.dataviz.utils.Numbers;
+import net.mahdilamb.dataviz.utils.Ryu;
 import net.mahdilamb.dataviz.utils.StringUtils;
 import net.mahdilamb.stats.ArrayUtils;
 import net.mahdilamb.stats.StatUtils;
@@ -145,6 +147,7 @@ public abstract class PlotDataAttribute {
             for (int j = 0; j < categories.length; ++j) {
                 if (category.equals(categories[j])) {
                     isVisible[j] = visibility;
+                    data.updateVisibility(indices, j, visibility);
                     return refresh();
                 }
             }
@@ -300,6 +303,27 @@ public abstract class PlotDataAttribute {
             return colormap.get(get(i));
         }
 
+        /**
+         * Calculate the colors of all the rows as packed ARGB. If the output range is 0-1 (as it is for colors), the
+         * colors are quantized using a lookup table
+         *
+         * @param colormap the colormap
+         * @param out      the output array
+         */
+        void calculateColors(final Colormap colormap, final int[] out) {
+            final double[] positions = new double[values.size()];
+            for (int i = 0; i < positions.length; ++i) {
+                positions[i] = get(i);
+            }
+            if (scaleMin == 0 && scaleMax == 1) {
+                new ExtendedColormap(colormap).map(positions, out);
+            } else {
+                for (int i = 0; i < positions.length; ++i) {
+                    out[i] = colormap.get(positions[i]).getRGB();
+                }
+            }
+        }
+
         public double getMax() {
             return scaleMax;
         }
@@ -309,7 +333,7 @@ public abstract class PlotDataAttribute {
             if (legendGroup == null) {
                 final java.util.List<Legend.Item> items = new ArrayList<>(points().length);
                 for (double v : legendPoints) {
-                    final Legend.Item item = new Legend.Item(legend, data.getGlyph(this, v), Double.toString(Numbers.approximateDouble(v)));
+                    final Legend.Item item = new Legend.Item(legend, data.getGlyph(this, v), Ryu.toString(Numbers.approximateDouble(v)));
                     //   item.setOnMouseClick(() -> setVisibility(category, item.toggleVisibility()));
                     items.add(item);
                 }
@@ -336,6 +360,7 @@ public abstract class PlotDataAttribute {
         public PlotDataAttribute setFilter(double min, double max) throws UnsupportedOperationException {
             filterMin = Math.min(min, max);
             filterMax = Math.max(max, min);
+            data.invalidateVisibility();
             return this;
         }
 
@@ -0,0 +1,566 @@
+package net.mahdilamb.dataviz;
+
+import net.mahdilamb.dataviz.figure.Renderer;
+import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
+import net.mahdilamb.dataviz.layouts.XYLayout;
+import net.mahdilamb.dataviz.utils.DensityGrid;
+import net.mahdilamb.dataviz.utils.rtree.PackedPointIndex;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Columnar storage of the markers in a trace. Rather than an object per marker, the coordinates and styles are stored
+ * in primitive arrays indexed by row, and the spatial index stores the row ids.
+ */
+public final class PlotMarkers {
+    /**
+     * The maximum number of styles that the markers in a batch are grouped by. If there are more (e.g. with a continuous
+     * colormap), the batch is drawn and a new one is started, so markers found later are always drawn on top
+     */
+    private static final int MAX_BATCHES = 256;
+    /**
+     * The maximum number of cells used to calculate the distribution of the counts when aggregating
+     */
+    private static final double MAX_NORMALIZER_CELLS = 1 << 22;
+
+    /**
+     * The visible markers in a tile, grouped by style (marker shape and color) so that each style is set on the canvas
+     * once. The order of the markers within each group is preserved
+     */
+    private static final class Batch {
+        int size = 0;
+        int[] ids = new int[64];
+        int[] colors = new int[64];
+        int[] batches = new int[64];
+        double[] xs = new double[64];
+        double[] ys = new double[64];
+        /*
+         * Open-addressing map from style to batch
+         */
+        long[] keys = new long[2 * MAX_BATCHES];
+        int[] values = new int[2 * MAX_BATCHES];
+        boolean[] used = new boolean[2 * MAX_BATCHES];
+        int numBatches = 0;
+
+        /**
+         * Add a marker to the batch
+         *
+         * @return whether the marker could be added (false if there are too many styles)
+         */
+        boolean add(int i, double x, double y, int shape, int color) {
+            final long key = ((long) shape << 32) | (color & 0xFFFFFFFFL);
+            int slot = (Long.hashCode(key) * 0x9E3779B9 >>> 1) % keys.length;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) % keys.length;
+            }
+            if (!used[slot]) {
+                if (numBatches == MAX_BATCHES) {
+                    return false;
+                }
+                used[slot] = true;
+                keys[slot] = key;
+                values[slot] = numBatches++;
+            }
+            if (size == ids.length) {
+                final int capacity = size * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                colors = Arrays.copyOf(colors, capacity);
+                batches = Arrays.copyOf(batches, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+            }
+            ids[size] = i;
+            xs[size] = x;
+            ys[size] = y;
+            colors[size] = color;
+            batches[size++] = values[slot];
+            return true;
+        }
+
+        /**
+         * @return the order in which to draw the markers, grouped by batch (a stable counting sort)
+         */
+        int[] order() {
+            final int[] starts = new int[numBatches + 1];
+            for (int k = 0; k < size; ++k) {
+                ++starts[batches[k] + 1];
+            }
+            for (int b = 0; b < numBatches; ++b) {
+                starts[b + 1] += starts[b];
+            }
+            final int[] order = new int[size];
+            for (int k = 0; k < size; ++k) {
+                order[starts[batches[k]]++] = k;
+            }
+            return order;
+        }
+
+        /**
+         * Remove all the markers and styles
+         */
+        void clear() {
+            size = 0;
+            numBatches = 0;
+            Arrays.fill(used, false);
+        }
+    }
+
+    /**
+     * A marker drawn from its geometry. Markers with the same shape and size, and that are both with or without an
+     * edge, are equal whatever their colors, so vector canvases can define the geometry once and set the colors
+     * wherever it is used
+     */
+    private static final class MarkerSymbol implements GraphicsBuffer.Symbol {
+        final MarkerShape shape;
+        final double size;
+        final int fill, edge;
+        final Color fillColor, edgeColor;
+
+        MarkerSymbol(MarkerShape shape, double size, int fill, int edge) {
+            this.shape = shape;
+            this.size = size;
+            this.fill = fill;
+            this.edge = edge;
+            this.fillColor = new Color(fill, true);
+            this.edgeColor = edge == 0 ? null : new Color(edge, true);
+        }
+
+        boolean matches(MarkerShape shape, double size, int fill, int edge) {
+            return this.shape == shape && this.size == size && this.fill == fill && this.edge == edge;
+        }
+
+        @Override
+        public void paint(GraphicsBuffer canvas, double x, double y) {
+            shape.fill.paint(canvas, x, y, size);
+            if (edgeColor != null) {
+                shape.stroke.paint(canvas, x, y, size);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof MarkerSymbol)) {
+                return false;
+            }
+            final MarkerSymbol other = (MarkerSymbol) o;
+            return shape == other.shape && size == other.size && (edge == 0) == (other.edge == 0);
+        }
+
+        @Override
+        public int hashCode() {
+            return (shape.hashCode() * 31 + Double.hashCode(size)) * 31 + (edge == 0 ? 0 : 1);
+        }
+    }
+
+    final PlotData<?, XYLayout> parent;
+    final int size;
+    final PackedPointIndex index;
+    /*
+     * Style columns. These are calculated lazily and cleared when the styles of the parent change
+     */
+    private volatile boolean stylesValid = false;
+    private float[] sizes;
+    private double uniformSize;
+    /*
+     * The packed ARGB color of each row, or the index of each row in the palette if the color is categorical, or
+     * neither if all the markers have the same color
+     */
+    private int[] colors;
+    private int[] colorIndices;
+    private int[] paletteColors;
+    private Color[] palette;
+    private int uniformColor;
+    /*
+     * The last sprite and symbol used, as consecutive markers usually share the same style
+     */
+    private MarkerSprites.Sprite lastSprite;
+    private MarkerSymbol lastSymbol;
+    /*
+     * The normalizer of aggregated tiles, computed from all the markers at the scale of the last aggregation (or null
+     * if the markers are not aggregated at that scale)
+     */
+    private double aggregateScaleX = Double.NaN, aggregateScaleY = Double.NaN;
+    private DensityGrid.Normalizer aggregateNormalizer;
+
+    /**
+     * Create the markers for a trace
+     *
+     * @param parent the trace
+     * @param x      the x coordinates
+     * @param y      the y coordinates
+     */
+    PlotMarkers(final PlotData<?, XYLayout> parent, double[] x, double[] y) {
+        this.parent = parent;
+        this.size = x.length;
+        this.index = new PackedPointIndex(x, y);
+    }
+
+    /**
+     * Visit the rows of the markers whose positions are in the given bounds
+     *
+     * @param minX    the min x of the bounds
+     * @param minY    the min y of the bounds
+     * @param maxX    the max x of the bounds
+     * @param maxY    the max y of the bounds
+     * @param visitor the function to apply to each row
+     */
+    public void search(double minX, double minY, double maxX, double maxY, final IntConsumer visitor) {
+        index.search(minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * Visit the markers whose positions are in the given bounds, along with their positions
+     *
+     * @param minX    the min x of the bounds
+     * @param minY    the min y of the bounds
+     * @param maxX    the max x of the bounds
+     * @param maxY    the max y of the bounds
+     * @param visitor the function to apply to each marker
+     */
+    public void search(double minX, double minY, double maxX, double maxY, final PackedPointIndex.PointConsumer visitor) {
+        index.search(minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * @param minX the min x of the bounds
+     * @param minY the min y of the bounds
+     * @param maxX the max x of the bounds
+     * @param maxY the max y of the bounds
+     * @return whether any markers are positioned in the given bounds
+     */
+    public boolean collides(double minX, double minY, double maxX, double maxY) {
+        return index.collides(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param i the row
+     * @return the x position of the marker
+     */
+    public double getX(int i) {
+        return index.getX(i);
+    }
+
+    /**
+     * @param i the row
+     * @return the y position of the marker
+     */
+    public double getY(int i) {
+        return index.getY(i);
+    }
+
+    /**
+     * @param i the row
+     * @return the size of the marker
+     */
+    double getSize(int i) {
+        validateStyles();
+        return sizes == null ? uniformSize : sizes[i];
+    }
+
+    /**
+     * @param i the row
+     * @return the color of the marker, as packed ARGB
+     */
+    int getColor(int i) {
+        validateStyles();
+        if (colors != null) {
+            return colors[i];
+        }
+        return paletteColors == null ? uniformColor : paletteColors[colorIndices[i]];
+    }
+
+    /**
+     * @param argb the packed ARGB color
+     * @return the color with its alpha reduced, for markers that are not selected
+     */
+    static int dim(int argb) {
+        return (((argb >>> 24) + 2 >>> 2) << 24) | (argb & 0xFFFFFF);
+    }
+
+    /**
+     * Clear the style columns so they are recalculated when next used
+     */
+    synchronized void invalidate() {
+        stylesValid = false;
+        aggregateScaleX = Double.NaN;
+        aggregateScaleY = Double.NaN;
+        aggregateNormalizer = null;
+    }
+
+    /**
+     * Calculate the style columns if they are not valid. The columns may be used by several drawing threads at once
+     * (e.g. the bands of an export), so they are all calculated under the lock before they are published
+     */
+    private void validateStyles() {
+        if (stylesValid) {
+            return;
+        }
+        synchronized (this) {
+            if (stylesValid) {
+                return;
+            }
+            float[] sizes = null;
+            double uniformSize = 0;
+            int[] colors = null, colorIndices = null, paletteColors = null;
+            Color[] palette = null;
+            int uniformColor = 0;
+            if (parent.getAttribute(PlotDataAttribute.Type.SIZE) instanceof PlotDataAttribute.Numeric) {
+                sizes = new float[size];
+                for (int i = 0; i < size; ++i) {
+                    sizes[i] = (float) parent.getSize(i);
+                }
+            } else {
+                uniformSize = size == 0 ? 0 : parent.getSize(0);
+            }
+            final PlotDataAttribute color = parent.getAttribute(PlotDataAttribute.Type.COLOR);
+            if (color instanceof PlotDataAttribute.Categorical && parent.getAttribute(PlotDataAttribute.Type.GROUP) == null) {
+                //the color only depends on the category, so use the color of the first row of each category
+                colorIndices = ((PlotDataAttribute.Categorical) color).indices;
+                palette = new Color[((PlotDataAttribute.Categorical) color).numCategories()];
+                paletteColors = new int[palette.length];
+                for (int i = 0; i < colorIndices.length; ++i) {
+                    if (palette[colorIndices[i]] == null) {
+                        palette[colorIndices[i]] = parent.getColor(i);
+                        paletteColors[colorIndices[i]] = palette[colorIndices[i]].getRGB();
+                    }
+                }
+            } else if (color != null || parent.getAttribute(PlotDataAttribute.Type.OPACITY) != null) {
+                colors = new int[size];
+                parent.calculateColors(colors);
+            } else {
+                uniformColor = size == 0 ? 0 : parent.getColor(0).getRGB();
+            }
+            this.sizes = sizes;
+            this.uniformSize = uniformSize;
+            this.colors = colors;
+            this.colorIndices = colorIndices;
+            this.paletteColors = paletteColors;
+            this.palette = palette;
+            this.uniformColor = uniformColor;
+            stylesValid = true;
+        }
+    }
+
+    /**
+     * Draw a marker. On raster canvases, pixel markers are written directly and markers small enough are drawn from a
+     * pre-rasterized sprite
+     *
+     * @param plotLayout the layout
+     * @param renderer   the renderer, which holds the sprites
+     * @param canvas     the canvas to draw on
+     * @param i          the row
+     * @param x          the x position of the marker
+     * @param y          the y position of the marker
+     * @param fill       the fill color of the marker, as packed ARGB
+     * @param edge       the edge color of the marker, as packed ARGB (ignored if the data does not show edges)
+     */
+    void draw(final XYLayout plotLayout, final Renderer renderer, final GraphicsBuffer canvas, int i, double x, double y, int fill, int edge) {
+        final double size = getSize(i);
+        final MarkerShape shape = parent.getShape(i);
+        final double px = plotLayout.getXAxis().getPositionFromValue(x),
+                py = plotLayout.getYAxis().getPositionFromValue(y);
+        final boolean showEdges = parent.showEdges();
+        if (canvas.isRaster() && (shape == MarkerShape.PIXEL || (shape == MarkerShape.POINT && size <= 1))) {
+            //single pixel markers are blended directly into the canvas. Sub-pixel points use their area as coverage
+            if (shape == MarkerShape.POINT) {
+                final int alpha = (int) Math.round((fill >>> 24) * Math.PI * .25 * size * size);
+                canvas.fillPixel(px, py, (alpha << 24) | (fill & 0xFFFFFF));
+            } else {
+                canvas.fillPixel(px, py, fill);
+            }
+            return;
+        }
+        if (MarkerSprites.canUseSprite(canvas, size)) {
+            MarkerSprites.Sprite sprite = lastSprite;
+            final int edgeRGB = showEdges ? edge : 0;
+            final double scale = canvas.getDeviceScale();
+            if (sprite == null || !sprite.matches(shape, size, scale, fill, edgeRGB)) {
+                lastSprite = sprite = MarkerSprites.of(renderer).get(shape, size, scale, fill, edgeRGB);
+            }
+            sprite.draw(canvas, px, py);
+            return;
+        }
+        MarkerSymbol symbol = lastSymbol;
+        final int edgeRGB = showEdges ? edge : 0;
+        if (symbol == null || !symbol.matches(shape, size, fill, edgeRGB)) {
+            lastSymbol = symbol = new MarkerSymbol(shape, size, fill, edgeRGB);
+        }
+        canvas.setFill(symbol.fillColor);
+        if (symbol.edgeColor != null) {
+            canvas.setStroke(symbol.edgeColor);
+        }
+        canvas.drawSymbol(symbol, px, py);
+    }
+
+    /**
+     * Draw the visible markers in the bounds. If the markers have more than one style, they are grouped by style
+     * first, so the state of the canvas changes once per style rather than per marker. Markers of the same trace are
+     * already drawn in spatial (rather than data) order, so grouping does not change any ordering guarantees
+     *
+     * @param plotLayout the layout
+     * @param renderer   the renderer
+     * @param canvas     the canvas to draw on
+     * @param filter     the filter of the rows to draw
+     * @param colors     the function to get the fill color (as packed ARGB) of a row
+     * @param edge       the edge color, as packed ARGB
+     * @param minX       the min x of the bounds
+     * @param minY       the min y of the bounds
+     * @param maxX       the max x of the bounds
+     * @param maxY       the max y of the bounds
+     */
+    void drawAll(final XYLayout plotLayout, final Renderer renderer, final GraphicsBuffer canvas, final IntPredicate filter, final IntUnaryOperator colors, int edge, double minX, double minY, double maxX, double maxY) {
+        validateStyles();
+        if (this.colors == null && paletteColors == null && parent.selected == null) {
+            //all the markers have the same color
+            index.search(minX, minY, maxX, maxY, (i, x, y) -> {
+                if (filter.test(i)) {
+                    draw(plotLayout, renderer, canvas, i, x, y, colors.applyAsInt(i), edge);
+                }
+            });
+            return;
+        }
+        final Batch batch = new Batch();
+        index.search(minX, minY, maxX, maxY, (i, x, y) -> {
+            if (!filter.test(i)) {
+                return;
+            }
+            final int color = colors.applyAsInt(i);
+            final int shape = parent.getShape(i).ordinal();
+            if (!batch.add(i, x, y, shape, color)) {
+                //too many styles, so draw the markers so far before starting a new batch
+                drawBatch(plotLayout, renderer, canvas, batch, edge);
+                batch.clear();
+                batch.add(i, x, y, shape, color);
+            }
+        });
+        drawBatch(plotLayout, renderer, canvas, batch, edge);
+    }
+
+    /**
+     * Draw the markers of a batch, grouped by style
+     */
+    private void drawBatch(final XYLayout plotLayout, final Renderer renderer, final GraphicsBuffer canvas, final Batch batch, int edge) {
+        for (final int k : batch.order()) {
+            draw(plotLayout, renderer, canvas, batch.ids[k], batch.xs[k], batch.ys[k], batch.colors[k], edge);
+        }
+    }
+
+    /**
+     * Get the normalizer for aggregating the markers at the current scale. The decision of whether to aggregate, and
+     * the normalization, are made from all the markers at the scale, rather than from the current view, so that tiles
+     * at the same scale are shaded consistently wherever they are (tiles are cached by their scale and position)
+     *
+     * @param plotLayout the layout
+     * @param filter     the filter of the rows to include
+     * @return the normalizer, or {@code null} if the markers should not be aggregated
+     */
+    private synchronized DensityGrid.Normalizer getAggregateNormalizer(final XYLayout plotLayout, final IntPredicate filter) {
+        final double scaleX = plotLayout.getXAxis().scale, scaleY = plotLayout.getYAxis().scale;
+        if (scaleX == aggregateScaleX && scaleY == aggregateScaleY) {
+            return aggregateNormalizer;
+        }
+        aggregateScaleX = scaleX;
+        aggregateScaleY = scaleY;
+        aggregateNormalizer = null;
+        if (index.size() == 0 || !(scaleX > 0 && scaleY > 0)) {
+            return null;
+        }
+        //the area covered by the markers, at least a pixel in each direction
+        final double minX = index.getMinX(), minY = index.getMinY(),
+                maxX = Math.max(index.getMaxX(), minX + 1 / scaleX), maxY = Math.max(index.getMaxY(), minY + 1 / scaleY);
+        final double pixelsX = (maxX - minX) * scaleX, pixelsY = (maxY - minY) * scaleY;
+        if (!(index.size() >= parent.getAggregateDensity() * pixelsX * pixelsY)) {
+            return null;
+        }
+        //if the markers cover too many pixels, the distribution is calculated from the mean count of larger cells
+        final int cellSize = (int) Math.max(1, Math.ceil(Math.sqrt(pixelsX * pixelsY / MAX_NORMALIZER_CELLS)));
+        final int width = (int) Math.ceil(pixelsX / cellSize), height = (int) Math.ceil(pixelsY / cellSize);
+        validateStyles();
+        return aggregateNormalizer = DensityGrid.aggregate(index, filter, colorIndices, palette == null ? 1 : palette.length, minX, minY, maxX, maxY, width, height)
+                .createNormalizer(parent.getAggregateNormalization(), cellSize * cellSize);
+    }
+
+    /**
+     * Draw the markers in the bounds as an image of the number of markers in each pixel, if the markers are dense
+     * enough at the current scale. Markers are only aggregated on raster canvases, so that vector exports contain the
+     * individual markers rather than an embedded image, and are not aggregated while there is a selection, so that
+     * the markers that are not selected are dimmed
+     *
+     * @param plotLayout the layout
+     * @param canvas     the canvas to draw on
+     * @param filter     the filter of the rows to include
+     * @param minX       the min x of the bounds
+     * @param minY       the min y of the bounds
+     * @param maxX       the max x of the bounds
+     * @param maxY       the max y of the bounds
+     * @return whether the markers were aggregated
+     */
+    boolean drawAggregated(final XYLayout plotLayout, final GraphicsBuffer canvas, final IntPredicate filter, double minX, double minY, double maxX, double maxY) {
+        if (!canvas.isRaster() || parent.selected != null) {
+            return false;
+        }
+        final DensityGrid.Normalizer normalizer = getAggregateNormalizer(plotLayout, filter);
+        if (normalizer == null) {
+            return false;
+        }
+        final double left = plotLayout.getXAxis().getPositionFromValue(minX), right = plotLayout.getXAxis().getPositionFromValue(maxX),
+                bottom = plotLayout.getYAxis().getPositionFromValue(minY), top = plotLayout.getYAxis().getPositionFromValue(maxY);
+        final int width = (int) Math.round(Math.abs(right - left)), height = (int) Math.round(Math.abs(bottom - top));
+        if (width <= 0 || height <= 0) {
+            return true;
+        }
+        final DensityGrid grid = DensityGrid.aggregate(index, filter, colorIndices, palette == null ? 1 : palette.length, minX, minY, maxX, maxY, width, height);
+        final boolean flipX = right < left, flipY = top > bottom;
+        canvas.drawImage(
+                palette == null ? grid.shade(normalizer, parent.getSequentialColormap(), flipX, flipY) : grid.shade(normalizer, palette, flipX, flipY),
+                Math.min(left, right), Math.min(top, bottom)
+        );
+        return true;
+    }
+
+    /**
+     * @param plotLayout the layout
+     * @param i          the row
+     * @param x          the x position of the marker
+     * @param y          the y position of the marker
+     * @param minX       the min x of the bounds
+     * @param minY       the min y of the bounds
+     * @param maxX       the max x of the bounds
+     * @param maxY       the max y of the bounds
+     * @return whether the extent of the marker intersects the bounds
+     */
+    boolean intersects(final XYLayout plotLayout, int i, double x, double y, double minX, double minY, double maxX, double maxY) {
+        final double w = getSize(i) * .5 / plotLayout.getXAxis().scale;
+        final double h = getSize(i) * .5 / plotLayout.getYAxis().scale;
+        return x - w <= maxX && y - h <= maxY && x + w >= minX && y + h >= minY;
+    }
+
+    /**
+     * Create a temporary shape for a row (e.g. for hover)
+     *
+     * @param i the row
+     * @return a shape representing the marker
+     */
+    PlotShape<XYLayout> get(int i) {
+        return new PlotShape.PlotMarker(parent, i, index.getX(i), index.getY(i));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PlotMarkers {size: %d, bounds: %s}", size(), Arrays.toString(new double[]{index.getMinX(), index.getMinY(), index.getMaxX(), index.getMaxY()}));
+    }
+}
@@ -116,6 +116,15 @@ public abstract class PlotSelection<PL extends PlotLayout<PL>> {
                         }
                     }
                 }
+                final PlotMarkers markers = t.markers;
+                if (markers != null) {
+                    markers.search(layout.getXAxis().getMin(), layout.getYAxis().getMin(), layout.getXAxis().getMax(), layout.getYAxis().getMax(), (i, mx, my) -> {
+                        final int windingNumber = windingNumber(x, y, mx, my, isClosed);
+                        if (useNonZero ? (windingNumber != 0) : ((windingNumber & 1) == 1)) {
+                            t.selected.set(i, true);
+                        }
+                    });
+                }
             }
         }
 
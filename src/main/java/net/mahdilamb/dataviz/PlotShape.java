@@ -5,52 +5,133 @@ import net.mahdilamb.dataviz.data.RelationalData;
 import net.mahdilamb.dataviz.figure.Renderer;
 import net.mahdilamb.dataviz.figure.Tooltip;
 import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
+import net.mahdilamb.dataviz.layouts.XAxis;
+import net.mahdilamb.dataviz.layouts.YAxis;
 import net.mahdilamb.dataviz.layouts.XYLayout;
+import net.mahdilamb.dataviz.utils.Downsampling;
+import net.mahdilamb.dataviz.utils.Numbers;
 import net.mahdilamb.dataviz.utils.rtree.Node2D;
 import net.mahdilamb.dataviz.utils.rtree.RectangularNode;
 
 import java.awt.*;
+import java.util.function.IntConsumer;
 
 public abstract class PlotShape<PL extends PlotLayout<PL>> extends Node2D {
     static final class PolyLine extends PlotShape<XYLayout> {
-
-        protected static final class Segment extends Node2D {
-            PolyLine line;
-            double startX, startY, endX, endY;
-
-            private Segment(double startX, double startY, double endX, double endY) {
-                this.startX = startX;
-                this.startY = startY;
-                this.endX = endX;
-                this.endY = endY;
+        /**
+         * The padding (in pixels) added to the clip bounds, so that the stroke of segments just outside the bounds is
+         * still drawn
+         */
+        private static final double CLIP_PADDING = 4;
+
+        /**
+         * A path that clips each segment of the line to the bounds (using Liang-Barsky) before adding it to the
+         * canvas. Each vertex is transformed to pixel space at most once, and segments outside the bounds are skipped
+         * without being transformed
+         */
+        private static final class ClippedPath implements IntConsumer {
+            private final double[] xs, ys;
+            private final XAxis xAxis;
+            private final YAxis yAxis;
+            private final GraphicsBuffer canvas;
+            private final double minX, minY, maxX, maxY;
+            private int previous = -1;
+            /*
+             * Whether the end of the path is at the previous vertex
+             */
+            private boolean connected = false;
+            private int segments = 0;
+            private double t0, t1;
+
+            ClippedPath(final double[] xs, final double[] ys, final XYLayout plotLayout, final GraphicsBuffer canvas, double minX, double minY, double maxX, double maxY) {
+                this.xs = xs;
+                this.ys = ys;
+                this.xAxis = plotLayout.getXAxis();
+                this.yAxis = plotLayout.getYAxis();
+                this.canvas = canvas;
+                final double padX = CLIP_PADDING / xAxis.scale, padY = CLIP_PADDING / yAxis.scale;
+                this.minX = minX - padX;
+                this.minY = minY - padY;
+                this.maxX = maxX + padX;
+                this.maxY = maxY + padY;
             }
 
             @Override
-            public double getMinX() {
-                return Math.min(startX, endX);
-            }
-
-            @Override
-            public double getMinY() {
-                return Math.min(startY, endY);
+            public void accept(int i) {
+                final int h = previous;
+                previous = i;
+                if (h == -1) {
+                    return;
+                }
+                final double x0 = xs[h], y0 = ys[h], dx = xs[i] - x0, dy = ys[i] - y0;
+                t0 = 0;
+                t1 = 1;
+                if (!Double.isFinite(dx) || !Double.isFinite(dy)
+                        || !clip(-dx, x0 - minX) || !clip(dx, maxX - x0)
+                        || !clip(-dy, y0 - minY) || !clip(dy, maxY - y0)) {
+                    connected = false;
+                    return;
+                }
+                if (!connected || t0 > 0) {
+                    canvas.moveTo(xAxis.getPositionFromValue(x0 + t0 * dx), yAxis.getPositionFromValue(y0 + t0 * dy));
+                }
+                if (t1 < 1) {
+                    canvas.lineTo(xAxis.getPositionFromValue(x0 + t1 * dx), yAxis.getPositionFromValue(y0 + t1 * dy));
+                    connected = false;
+                } else {
+                    canvas.lineTo(xAxis.getPositionFromValue(xs[i]), yAxis.getPositionFromValue(ys[i]));
+                    connected = true;
+                }
+                ++segments;
             }
 
-            @Override
-            public double getMaxX() {
-                return Math.max(startX, endX);
+            /**
+             * Clip the parametric range of the current segment against one edge
+             *
+             * @param p the negative of the rate of change of the distance inside the edge
+             * @param q the distance of the start of the segment inside the edge
+             * @return whether any of the segment remains
+             */
+            private boolean clip(double p, double q) {
+                if (p == 0) {
+                    return q >= 0;
+                }
+                final double r = q / p;
+                if (p < 0) {
+                    if (r > t1) {
+                        return false;
+                    }
+                    if (r > t0) {
+                        t0 = r;
+                    }
+                } else {
+                    if (r < t0) {
+                        return false;
+                    }
+                    if (r < t1) {
+                        t1 = r;
+                    }
+                }
+                return true;
             }
 
-            @Override
-            public double getMaxY() {
-                return Math.max(startY, endY);
+            /**
+             * Stroke the path, if any of it is visible
+             */
+            void stroke() {
+                if (segments > 0) {
+                    canvas.stroke();
+                }
             }
         }
 
         double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
         IntArrayList ids;
-        private Segment[] segs;
         double[] xs;
         double[] ys;
+        private volatile boolean pointsValid = false;
+        private int sorted = -1;
+        private final Downsampling.Cache downsampled = new Downsampling.Cache();
 
         public PolyLine(RelationalData<?> parent, IntArrayList ids) {
             this(parent, ids.size() == 0 ? -1 : ids.get(0), ids);
@@ -75,85 +156,117 @@ public abstract class PlotShape<PL extends PlotLayout<PL>> extends Node2D {
             return parent.getColor(i);
         }
 
-        Segment[] getSegments() {
-            if (segs == null) {
-                minX = Double.POSITIVE_INFINITY;
-                minY = Double.POSITIVE_INFINITY;
-                maxX = Double.NEGATIVE_INFINITY;
-                maxY = Double.NEGATIVE_INFINITY;
-                if (xs != null) {
-                    segs = new Segment[xs.length - 1];
-                    for (int i = 1, h = 0; i < xs.length; h = i++) {
-                        segs[h] = new Segment(xs[h], ys[h], xs[i], ys[i]);
-                        segs[h].line = this;
-                        minX = Math.min(minX, segs[h].getMinX());
-                        minY = Math.min(minY, segs[h].getMinY());
-                        maxX = Math.max(maxX, segs[h].getMaxX());
-                        maxY = Math.max(maxY, segs[h].getMaxY());
-                    }
-                } else {
-                    if (ids.size() < 2) {
-                        segs = new Segment[0];
-                    } else {
-                        segs = new Segment[ids.size() - 1];
-                        for (int i = 1, h = 0; i < ids.size(); h = i++) {
-                            segs[h] = new Segment(((RelationalData<?>) parent).getX(ids.get(h)), ((RelationalData<?>) parent).getY(ids.get(h)), ((RelationalData<?>) parent).getX(ids.get(i)), ((RelationalData<?>) parent).getY(ids.get(i)));
-                            segs[h].line = this;
-                            minX = Math.min(minX, segs[h].getMinX());
-                            minY = Math.min(minY, segs[h].getMinY());
-                            maxX = Math.max(maxX, segs[h].getMaxX());
-                            maxY = Math.max(maxY, segs[h].getMaxY());
-                        }
-                    }
+        /**
+         * Copy the coordinates of the line into primitive arrays (if created from ids) and calculate the bounds
+         */
+        private void validatePoints() {
+            if (pointsValid) {
+                return;
+            }
+            if (xs == null) {
+                xs = new double[ids.size()];
+                ys = new double[ids.size()];
+                for (int i = 0; i < xs.length; ++i) {
+                    xs[i] = ((RelationalData<?>) parent).getX(ids.get(i));
+                    ys[i] = ((RelationalData<?>) parent).getY(ids.get(i));
                 }
             }
-            return segs;
+            minX = Double.POSITIVE_INFINITY;
+            minY = Double.POSITIVE_INFINITY;
+            maxX = Double.NEGATIVE_INFINITY;
+            maxY = Double.NEGATIVE_INFINITY;
+            if (xs.length > 1) {
+                for (int i = 0; i < xs.length; ++i) {
+                    minX = Math.min(minX, xs[i]);
+                    minY = Math.min(minY, ys[i]);
+                    maxX = Math.max(maxX, xs[i]);
+                    maxY = Math.max(maxY, ys[i]);
+                }
+            }
+            pointsValid = true;
         }
 
         @Override
         public double getMinX() {
-            getSegments();
+            validatePoints();
             return minX;
         }
 
         @Override
         public double getMinY() {
-            getSegments();
+            validatePoints();
             return minY;
         }
 
         @Override
         public double getMaxX() {
-            getSegments();
+            validatePoints();
             return maxX;
         }
 
         @Override
         public double getMaxY() {
-            getSegments();
+            validatePoints();
             return maxY;
         }
 
-
         @Override
         void draw(XYLayout plotLayout, Renderer renderer, GraphicsBuffer canvas) {
+            validatePoints();
             canvas.setStroke(getColor());
-            if (getSegments().length == 1) {
-                canvas.strokeLine(plotLayout.getXAxis().getPositionFromValue(getSegments()[0].startX), plotLayout.getYAxis().getPositionFromValue(getSegments()[0].startY), plotLayout.getXAxis().getPositionFromValue(getSegments()[0].endX), plotLayout.getYAxis().getPositionFromValue(getSegments()[0].endY));
-                return;
+            canvas.beginPath();
+            final ClippedPath path = new ClippedPath(xs, ys, plotLayout, canvas, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY);
+            for (int i = 0; i < xs.length; ++i) {
+                path.accept(i);
             }
+            path.stroke();
+        }
+
+        @Override
+        void draw(XYLayout plotLayout, Renderer renderer, GraphicsBuffer canvas, double minX, double minY, double maxX, double maxY) {
+            validatePoints();
+            canvas.setStroke(getColor());
             canvas.beginPath();
-            canvas.moveTo(plotLayout.getXAxis().getPositionFromValue(getSegments()[0].startX), plotLayout.getYAxis().getPositionFromValue(getSegments()[0].startY));
-            for (int i = 1; i < getSegments().length; ++i) {
-                canvas.lineTo(plotLayout.getXAxis().getPositionFromValue(getSegments()[i].endX), plotLayout.getYAxis().getPositionFromValue(getSegments()[i].endY));
+            final ClippedPath path = new ClippedPath(xs, ys, plotLayout, canvas, minX, minY, maxX, maxY);
+            if (isSorted()) {
+                final Downsampling.Mode mode = parent instanceof RelationalData ? ((RelationalData<?>) parent).getDownsampling() : Downsampling.Mode.NONE;
+                //align the pixel columns to the pixels of the canvas
+                final double origin = plotLayout.getXAxis().getPositionFromValue(0);
+                downsampled.forEach(xs, ys, mode, plotLayout.getXAxis().scale, origin - Math.floor(origin), minX, maxX, path);
+            } else {
+                for (int i = 0; i < xs.length; ++i) {
+                    path.accept(i);
+                }
             }
-            canvas.stroke();
+            path.stroke();
+        }
+
+        /**
+         * @return whether the x values of the line are finite and sorted, in which case the line can be downsampled
+         */
+        private boolean isSorted() {
+            if (sorted == -1) {
+                validatePoints();
+                sorted = Downsampling.isSorted(xs) ? 1 : 0;
+            }
+            return sorted == 1;
         }
 
         Tooltip createTooltip(Renderer renderer) {
             //TODO
             return null;
         }
+
+        @Override
+        long fingerprint(long hash) {
+            validatePoints();
+            hash = Numbers.hashCombine(super.fingerprint(hash), xs.length);
+            for (int i = 0; i < xs.length; ++i) {
+                hash = Numbers.hashCombine(hash, xs[i]);
+                hash = Numbers.hashCombine(hash, ys[i]);
+            }
+            return Numbers.hashCombine(hash, getColor().getRGB());
+        }
     }
 
     static final class Rectangle extends PlotShape<XYLayout> {
@@ -302,6 +415,44 @@ public abstract class PlotShape<PL extends PlotLayout<PL>> extends Node2D {
 
     abstract void draw(PL plotLayout, Renderer renderer, GraphicsBuffer canvas);
 
+    /**
+     * Draw the part of the shape in the given bounds. By default, this draws the whole shape
+     *
+     * @param plotLayout the layout
+     * @param renderer   the renderer
+     * @param canvas     the canvas to draw on
+     * @param minX       the min x of the bounds
+     * @param minY       the min y of the bounds
+     * @param maxX       the max x of the bounds
+     * @param maxY       the max y of the bounds
+     */
+    void draw(PL plotLayout, Renderer renderer, GraphicsBuffer canvas, double minX, double minY, double maxX, double maxY) {
+        draw(plotLayout, renderer, canvas);
+    }
+
     abstract Tooltip createTooltip(final Renderer renderer);
 
+    /**
+     * @param other the other shape
+     * @return whether the shapes are the same element of the data (i.e. the same type of element, from the same data
+     * and row). Hovered markers are created on demand, so are compared this way rather than by identity
+     */
+    boolean isSameElement(final PlotShape<?> other) {
+        return other != null && getClass() == other.getClass() && parent == other.parent && i == other.i;
+    }
+
+    /**
+     * Add the geometry of the shape to a fingerprint. By default, this is the index and bounds of the shape
+     *
+     * @param hash the fingerprint so far
+     * @return the fingerprint including this shape
+     */
+    long fingerprint(long hash) {
+        hash = Numbers.hashCombine(hash, i);
+        hash = Numbers.hashCombine(hash, getMinX());
+        hash = Numbers.hashCombine(hash, getMinY());
+        hash = Numbers.hashCombine(hash, getMaxX());
+        return Numbers.hashCombine(hash, getMaxY());
+    }
+
 }
@@ -14,8 +14,10 @@ import net.mahdilamb.dataviz.layouts.XAxis;
 import net.mahdilamb.dataviz.layouts.XYLayout;
 import net.mahdilamb.dataviz.layouts.YAxis;
 import net.mahdilamb.dataviz.plots.ScatterMode;
+import net.mahdilamb.dataviz.utils.Downsampling;
 import net.mahdilamb.stats.ArrayUtils;
 
+import java.util.Objects;
 import java.util.function.DoubleUnaryOperator;
 
 /**
@@ -29,6 +31,8 @@ public abstract class RelationalData<PD extends RelationalData<PD>> extends Plot
 
     protected ScatterMode markerMode = ScatterMode.MARKER_ONLY;
 
+    protected Downsampling.Mode downsampling = Downsampling.Mode.NONE;
+
     protected RelationalData(final DataFrame dataFrame, final String xAxis, final String yAxis) {
         super(dataFrame);
 
@@ -112,6 +116,18 @@ public abstract class RelationalData<PD extends RelationalData<PD>> extends Plot
         return markerMode;
     }
 
+    /**
+     * @return the method used to downsample lines to the pixel columns of the plot area
+     */
+    public Downsampling.Mode getDownsampling() {
+        return downsampling;
+    }
+
+    protected PD setDownsampling(final Downsampling.Mode downsampling) {
+        this.downsampling = Objects.requireNonNull(downsampling);
+        return refresh();
+    }
+
     protected PD setMarkerMode(final String markerMode) {
         return setMarkerMode(ScatterMode.from(markerMode));
     }
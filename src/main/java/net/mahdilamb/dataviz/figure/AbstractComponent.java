@@ -44,6 +44,13 @@ public abstract class AbstractComponent {
 
     protected abstract void markDrawAsOldQuietly();
 
+    /**
+     * Add the area that this component draws to a region that needs to be redrawn
+     *
+     * @param region the region
+     */
+    abstract void addDirtyRegion(DirtyRegion region);
+
     protected GraphicsContext getContext() {
         return  context;
     }
@@ -66,9 +73,13 @@ public abstract class AbstractComponent {
         }
         final GraphicsContext context = getContext();
         if (context == context.getRenderer().getFigureContext()) {
-            context.getRenderer().getFigure().update();
+            final FigureBase<?> figure = context.getRenderer().getFigure();
+            figure.dirtyRegion.add(this);
+            context.getRenderer().invalidateFigure();
+        } else if (context == context.getRenderer().getOverlayContext()) {
+            context.getRenderer().getOverlay().dirtyRegion.add(this);
         }
-        context.getRenderer().getOverlay().draw(context.getRenderer());
+        context.getRenderer().invalidateOverlay();
 
     }
 
@@ -107,6 +118,10 @@ public abstract class AbstractComponent {
             return;
         }
         if (layoutNeedsRefresh || hasChildren()) {
+            if (layoutNeedsRefresh && !hasChildren() && Renderer.isFigureContext(renderer, context)) {
+                //the bounds of the component may change, which may move other components
+                renderer.getFigure().redrawAll = true;
+            }
             layoutComponent(renderer, minX, minY, maxX, maxY);
         }
         layoutNeedsRefresh = false;
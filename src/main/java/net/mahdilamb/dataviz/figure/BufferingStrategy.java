@@ -2,13 +2,11 @@ package net.mahdilamb.dataviz.figure;
 
 import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
 import net.mahdilamb.dataviz.swing.BufferedImageExtended;
-import net.mahdilamb.dataviz.swing.SwingPainter;
 
 /**
  * Buffering strategies for drawing components
  */
 public abstract class BufferingStrategy<C extends Component> {
-    static final SwingPainter BUFFERING_PAINTER = new SwingPainter();
     /**
      * A "no buffering strategy" - the content is drawn directly on the canvas
      */
@@ -196,7 +194,7 @@ public abstract class BufferingStrategy<C extends Component> {
      * @return a new buffer
      */
     protected static GraphicsBuffer createBufferNonMain(double width, double height, double translateX, double translateY, int overflowTop, int overflowLeft, int overflowBottom, int overflowRight) {
-        return new BufferedImageExtended(BUFFERING_PAINTER, width, height, translateX, translateY, overflowTop, overflowLeft, overflowBottom, overflowRight);
+        return new BufferedImageExtended(width, height, translateX, translateY, overflowTop, overflowLeft, overflowBottom, overflowRight);
 
     }
 
@@ -138,8 +138,9 @@ public abstract class Component extends AbstractComponent {
     public final void setTooltip(final Tooltip tooltip) {
         if (tooltip == null) {
             if (context.getRenderer().lastHover == this) {
+                //the tooltip is only drawn in the overlay
                 context.getRenderer().getOverlay().clearTooltip();
-                redraw();
+                context.getRenderer().invalidateOverlay();
             }
         } else {
             tooltip.component = this;
@@ -147,7 +148,7 @@ public abstract class Component extends AbstractComponent {
             if (context != null) {
                 if (context.getRenderer().lastHover == this) {
                     context.getRenderer().getOverlay().showTooltip(tooltip);
-                    redraw();
+                    context.getRenderer().invalidateOverlay();
                 }
             }
         }
@@ -170,6 +171,22 @@ public abstract class Component extends AbstractComponent {
         }
     }
 
+    @Override
+    void addDirtyRegion(DirtyRegion region) {
+        region.add(posX - overflowLeft, posY - overflowTop, posX + sizeX + overflowRight, posY + sizeY + overflowBottom);
+    }
+
+    /**
+     * @param minX the min x of the region
+     * @param minY the min y of the region
+     * @param maxX the max x of the region
+     * @param maxY the max y of the region
+     * @return whether the area that this component draws to intersects the region
+     */
+    final boolean intersects(double minX, double minY, double maxX, double maxY) {
+        return posX - overflowLeft < maxX && posY - overflowTop < maxY && posX + sizeX + overflowRight > minX && posY + sizeY + overflowBottom > minY;
+    }
+
     @Override
     protected final void draw(Renderer renderer, GraphicsBuffer context) {
         if (!visible) {
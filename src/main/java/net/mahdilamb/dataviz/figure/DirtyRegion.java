@@ -0,0 +1,97 @@
+package net.mahdilamb.dataviz.figure;
+
+/**
+ * The rectangular region of a canvas that needs to be redrawn. Regions are merged into their bounding rectangle
+ */
+final class DirtyRegion {
+    double minX, minY, maxX, maxY;
+
+    DirtyRegion() {
+        clear();
+    }
+
+    /**
+     * Add a region
+     *
+     * @param minX the min x of the region
+     * @param minY the min y of the region
+     * @param maxX the max x of the region
+     * @param maxY the max y of the region
+     */
+    void add(double minX, double minY, double maxX, double maxY) {
+        this.minX = Math.min(this.minX, minX);
+        this.minY = Math.min(this.minY, minY);
+        this.maxX = Math.max(this.maxX, maxX);
+        this.maxY = Math.max(this.maxY, maxY);
+    }
+
+    /**
+     * Add another region
+     *
+     * @param other the other region
+     */
+    void add(final DirtyRegion other) {
+        if (!other.isEmpty()) {
+            add(other.minX, other.minY, other.maxX, other.maxY);
+        }
+    }
+
+    /**
+     * Add the bounds of a component, including any overflow
+     *
+     * @param component the component
+     */
+    void add(final AbstractComponent component) {
+        component.addDirtyRegion(this);
+    }
+
+    /**
+     * Limit the region to the given canvas size and round it outwards to whole pixels
+     *
+     * @param width  the width of the canvas
+     * @param height the height of the canvas
+     * @return whether the region is not empty
+     */
+    boolean snap(double width, double height) {
+        minX = Math.max(0, Math.floor(minX));
+        minY = Math.max(0, Math.floor(minY));
+        maxX = Math.min(Math.ceil(width), Math.ceil(maxX));
+        maxY = Math.min(Math.ceil(height), Math.ceil(maxY));
+        return maxX > minX && maxY > minY;
+    }
+
+    /**
+     * @param component the component
+     * @return whether the area that the component draws to intersects this region
+     */
+    boolean intersects(final Component component) {
+        return component.intersects(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * @return whether the region is empty
+     */
+    boolean isEmpty() {
+        return !(maxX > minX && maxY > minY);
+    }
+
+    /**
+     * Empty the region
+     */
+    void clear() {
+        minX = minY = Double.POSITIVE_INFINITY;
+        maxX = maxY = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Copy another region into this one
+     *
+     * @param other the other region
+     */
+    void set(final DirtyRegion other) {
+        minX = other.minX;
+        minY = other.minY;
+        maxX = other.maxX;
+        maxY = other.maxY;
+    }
+}
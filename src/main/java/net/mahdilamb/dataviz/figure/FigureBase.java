@@ -2,6 +2,7 @@ package net.mahdilamb.dataviz.figure;
 
 import net.mahdilamb.colormap.Colors;
 import net.mahdilamb.dataviz.graphics.Font;
+import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
 import net.mahdilamb.dataviz.graphics.GraphicsContext;
 import net.mahdilamb.dataviz.swing.SwingRenderer;
 import net.mahdilamb.dataviz.ui.Label;
@@ -41,6 +42,17 @@ public abstract class FigureBase<C extends FigureBase<C>> extends Group {
      * Whether to draw with a buffer. The default should be false as there will be no buffer
      */
     boolean drawDirect = false;
+    /*
+     * The region of the figure that needs to be redrawn, and whether the layout of a component has changed since the
+     * figure was last drawn (in which case the whole figure is redrawn)
+     */
+    final DirtyRegion dirtyRegion = new DirtyRegion();
+    boolean redrawAll = true;
+    /*
+     * The canvas and region currently being redrawn
+     */
+    private GraphicsContext regionCanvas;
+    private final DirtyRegion region = new DirtyRegion();
 
     /**
      * Create content
@@ -175,14 +187,38 @@ public abstract class FigureBase<C extends FigureBase<C>> extends Group {
     }
 
     /**
-     * Update the figure locally
+     * Set the dimensions of the figure
+     *
+     * @param width  the width of the figure
+     * @param height the height of the figure
+     * @return this figure
+     * @throws IllegalArgumentException if the width or height is not positive
+     */
+    @SuppressWarnings("unchecked")
+    public final C setSize(double width, double height) {
+        if (!(width > 0) || !(height > 0)) {
+            throw new IllegalArgumentException("The width and height of the figure must be positive");
+        }
+        if (width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            markLayoutAsOldQuietly();
+            markDrawAsOldQuietly();
+            update();
+        }
+        return (C) this;
+    }
+
+    /**
+     * Update the figure locally, through its renderer (so renderers that only draw when exporting, such as the
+     * headless renderer, are not redrawn)
      */
     protected final void update() {
-        if (context == null) {
-            //not ready yet
+        if (context == null || context.getRenderer().getFigure() != this) {
+            //not ready yet, or moved to another renderer
             return;
         }
-        update(context, false);
+        context.getRenderer().refresh();
     }
 
     final void update(final GraphicsContext canvas, boolean drawDirect) {
@@ -194,6 +230,9 @@ public abstract class FigureBase<C extends FigureBase<C>> extends Group {
             layout(context.getRenderer(), 0, 0, width, height);
             draw(context.getRenderer(), canvas);
             canvas.done();
+            if (canvas == context) {
+                clearDirtyRegion();
+            }
             context.getRenderer().done();
             this.drawDirect = oldDrawDirect;
             return;
@@ -201,6 +240,53 @@ public abstract class FigureBase<C extends FigureBase<C>> extends Group {
         System.err.println("No renderer");
     }
 
+    private void clearDirtyRegion() {
+        dirtyRegion.clear();
+        redrawAll = false;
+    }
+
+    /**
+     * Redraw the region of the figure that needs to be redrawn. Only the components that intersect the region are
+     * drawn, and they are clipped to the region. If the layout of a component has changed, or the canvas does not
+     * support partial resets, the whole figure is redrawn
+     */
+    final void updateDirtyRegion() {
+        final GraphicsContext context = getContext();
+        if (context == null) {
+            return;
+        }
+        final Renderer renderer = context.getRenderer();
+        layout(renderer, 0, 0, width, height);
+        region.set(dirtyRegion);
+        if (!region.snap(width, height) && !redrawAll) {
+            //nothing visible has changed
+            clearDirtyRegion();
+            return;
+        }
+        if (redrawAll || !context.reset(region.minX, region.minY, region.maxX - region.minX, region.maxY - region.minY)) {
+            update(context, false);
+            return;
+        }
+        regionCanvas = context;
+        try {
+            draw(renderer, context);
+        } finally {
+            regionCanvas = null;
+        }
+        context.done();
+        clearDirtyRegion();
+        renderer.done(region.minX, region.minY, region.maxX - region.minX, region.maxY - region.minY);
+    }
+
+    /**
+     * @param canvas    the canvas being drawn on
+     * @param component the component
+     * @return whether the component can be skipped as it is outside the region of the canvas being redrawn
+     */
+    final boolean isOutsideDirtyRegion(final GraphicsBuffer canvas, final Component component) {
+        return canvas == regionCanvas && !region.intersects(component);
+    }
+
     protected static void markComponentLayoutAsOld(final AbstractComponent component) {
         component.markLayoutAsOldQuietly();
     }
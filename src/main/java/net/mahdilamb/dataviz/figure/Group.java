@@ -157,7 +157,11 @@ public class Group extends AbstractComponent {
         if (children == null) {
             return;
         }
+        final FigureBase<?> figure = renderer.getFigure();
         for (final AbstractComponent c : children) {
+            if (c instanceof Component && figure != null && figure.isOutsideDirtyRegion(canvas, (Component) c)) {
+                continue;
+            }
             c.draw(renderer, canvas);
         }
     }
@@ -171,6 +175,15 @@ public class Group extends AbstractComponent {
         }
     }
 
+    @Override
+    final void addDirtyRegion(DirtyRegion region) {
+        if (children != null) {
+            for (final AbstractComponent c : children) {
+                c.addDirtyRegion(region);
+            }
+        }
+    }
+
     @Override
     protected final void markDrawAsOldQuietly() {
         if (children != null) {
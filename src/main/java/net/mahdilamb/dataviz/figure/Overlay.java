@@ -21,41 +21,123 @@ public final class Overlay extends Group {
 
     boolean contentVisible = true;
 
+    /*
+     * The region of the overlay that needs to be redrawn, and the regions covered by the content and the tooltip when
+     * the overlay was last drawn
+     */
+    final DirtyRegion dirtyRegion = new DirtyRegion();
+    private final DirtyRegion drawnContent = new DirtyRegion(),
+            drawnTooltip = new DirtyRegion(),
+            bounds = new DirtyRegion();
+    private boolean toolbarDrawn = false;
+    private boolean redrawAll = true;
+    private double drawnWidth = Double.NaN, drawnHeight = Double.NaN;
+
     Overlay(FigureBase<?> figure) {
         this.figure = figure;
     }
 
+    /**
+     * Draw the parts of the overlay that have changed since the last draw. The layouts of the content, toolbar and
+     * tooltip are kept until they change, and the pass is skipped entirely if nothing has changed
+     *
+     * @param renderer the renderer
+     */
     void draw(final Renderer renderer) {
         final GraphicsContext canvas = renderer.getOverlayContext();
-        canvas.reset();
+        final double width = figure.getWidth(), height = figure.getHeight();
+        if (width != drawnWidth || height != drawnHeight) {
+            drawnWidth = width;
+            drawnHeight = height;
+            redrawAll = true;
+        }
+        updateContent(renderer, width, height);
+        updateToolbar(renderer, width, height);
+        updateTooltip(renderer, width, height);
+        if (redrawAll) {
+            canvas.reset();
+        } else if (!dirtyRegion.snap(width, height)) {
+            dirtyRegion.clear();
+            return;
+        } else if (!canvas.reset(dirtyRegion.minX, dirtyRegion.minY, dirtyRegion.maxX - dirtyRegion.minX, dirtyRegion.maxY - dirtyRegion.minY)) {
+            redrawAll = true;
+            canvas.reset();
+        }
         if (contentVisible) {
             for (final AbstractComponent component : getChildren()) {
-                component.markLayoutAsOldQuietly();
-                component.layout(renderer, 0, 0, figure.getWidth(), figure.getHeight());
-                component.draw(renderer, canvas);
+                if (redrawAll || !(component instanceof Component) || dirtyRegion.intersects((Component) component)) {
+                    component.draw(renderer, canvas);
+                }
             }
-            contentHasChanges = false;
         }
+        if (toolbarDrawn) {
+            toolbar.draw(renderer, canvas);
+        }
+        if (tooltip != null && (redrawAll || dirtyRegion.intersects(tooltip))) {
+            tooltip.draw(renderer, canvas);
+        }
+        canvas.done();
+        if (redrawAll) {
+            renderer.done();
+        } else {
+            renderer.done(dirtyRegion.minX, dirtyRegion.minY, dirtyRegion.maxX - dirtyRegion.minX, dirtyRegion.maxY - dirtyRegion.minY);
+        }
+        dirtyRegion.clear();
+        redrawAll = false;
+    }
 
-        if (toolbarEnabled && (toolbarAlwaysShown || toolbarVisible)) {
-            if (toolbar != null) {
-                if (tooltipHasChanges) {
-                    getToolbar().layout(renderer, 0, 0, figure.getWidth(), figure.getHeight());
-                    toolbarHasChanges = false;
-                }
-                getToolbar().draw(renderer, canvas);
+    /**
+     * Lay out the content if it has changed, and mark the old and new bounds of the content as dirty if they differ
+     */
+    private void updateContent(final Renderer renderer, double width, double height) {
+        bounds.clear();
+        for (final AbstractComponent component : getChildren()) {
+            if (contentHasChanges) {
+                component.markLayoutAsOldQuietly();
+            }
+            component.layout(renderer, 0, 0, width, height);
+            if (contentVisible) {
+                bounds.add(component);
             }
         }
+        if (contentHasChanges || bounds.minX != drawnContent.minX || bounds.minY != drawnContent.minY || bounds.maxX != drawnContent.maxX || bounds.maxY != drawnContent.maxY) {
+            dirtyRegion.add(drawnContent);
+            dirtyRegion.add(bounds);
+            drawnContent.set(bounds);
+        }
+        contentHasChanges = false;
+    }
+
+    /**
+     * Mark the toolbar as dirty if it has been shown or hidden
+     */
+    private void updateToolbar(final Renderer renderer, double width, double height) {
+        final boolean shown = toolbarEnabled && (toolbarAlwaysShown || toolbarVisible) && toolbar != null;
+        if (toolbarHasChanges && shown) {
+            toolbar.layout(renderer, 0, 0, width, height);
+        }
+        if (shown != toolbarDrawn || (toolbarHasChanges && shown)) {
+            dirtyRegion.add(toolbar);
+        }
+        toolbarDrawn = shown;
+        toolbarHasChanges = false;
+    }
 
+    /**
+     * Lay out the tooltip if it has changed, and mark its old and new bounds as dirty
+     */
+    private void updateTooltip(final Renderer renderer, double width, double height) {
+        if (!tooltipHasChanges) {
+            return;
+        }
+        dirtyRegion.add(drawnTooltip);
+        drawnTooltip.clear();
         if (tooltip != null) {
-            if (tooltipHasChanges) {
-                tooltip.layout(renderer, 0, 0, figure.getWidth(), figure.getHeight());
-                tooltipHasChanges = false;
-            }
-            tooltip.draw(renderer, canvas);
+            tooltip.layout(renderer, 0, 0, width, height);
+            drawnTooltip.add(tooltip);
+            dirtyRegion.add(drawnTooltip);
         }
-        canvas.done();
-        renderer.done();
+        tooltipHasChanges = false;
     }
 
     private Toolbar getToolbar() {
@@ -78,6 +160,7 @@ public final class Overlay extends Group {
 
     void setVisible(final boolean visible) {
         if (contentVisible != (contentVisible = visible)) {
+            contentHasChanges = true;
             redraw();
         }
     }
@@ -9,9 +9,15 @@ import net.mahdilamb.dataviz.ui.IconStore;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 import static net.mahdilamb.dataviz.figure.AbstractComponent.print;
 
@@ -27,6 +33,22 @@ public abstract class Renderer {
     Component lastFocus;
     Component lastHover;
 
+    /*
+     * Frame scheduling. Invalidating the figure or overlay requests a frame, and the invalidations made before the frame
+     * is drawn are coalesced into it
+     */
+    private double frameRate = 60;
+    private long lastFrame;
+    private boolean frameRequested;
+    //the invalidations may be posted from other threads while a frame is being drawn, so are cleared atomically
+    private final AtomicBoolean figureInvalid = new AtomicBoolean(), overlayInvalid = new AtomicBoolean();
+    private final Set<Runnable> frameActions = new LinkedHashSet<>();
+    /*
+     * Caches of device-dependent resources (e.g. rasterized markers). These belong to the renderer, rather than being
+     * shared, so that renderers on separate threads do not contend for them
+     */
+    private final Map<Class<?>, Object> caches = new ConcurrentHashMap<>();
+
     /**
      * Create a renderer
      */
@@ -71,6 +93,110 @@ public abstract class Renderer {
         figure.update(getFigureContext(), false);
     }
 
+    /* Frames */
+
+    /**
+     * Set the target number of frames drawn per second. Changes to the figure are coalesced so that at most one frame
+     * is drawn in each period
+     *
+     * @param frameRate the target frame rate, in Hz
+     * @return this renderer
+     * @throws IllegalArgumentException if the frame rate is not positive
+     */
+    public Renderer setFrameRate(double frameRate) {
+        if (!(frameRate > 0)) {
+            throw new IllegalArgumentException("The frame rate must be positive");
+        }
+        this.frameRate = frameRate;
+        return this;
+    }
+
+    /**
+     * @return the target number of frames drawn per second
+     */
+    public double getFrameRate() {
+        return frameRate;
+    }
+
+    /**
+     * Run an action at the start of the next frame, before anything is drawn (e.g. to apply the pan accumulated since
+     * the last frame). Adding the same action again before the frame is drawn has no effect
+     *
+     * @param action the action to run
+     */
+    public final void runBeforeNextFrame(final Runnable action) {
+        synchronized (frameActions) {
+            frameActions.add(action);
+        }
+        requestFrame();
+    }
+
+    /**
+     * Mark the dirty region of the figure as needing to be redrawn in the next frame
+     */
+    final void invalidateFigure() {
+        figureInvalid.set(true);
+        requestFrame();
+    }
+
+    /**
+     * Mark the overlay as needing to be redrawn in the next frame
+     */
+    final void invalidateOverlay() {
+        overlayInvalid.set(true);
+        requestFrame();
+    }
+
+    private void requestFrame() {
+        final long delay;
+        synchronized (frameActions) {
+            if (frameRequested) {
+                return;
+            }
+            frameRequested = true;
+            delay = Math.max(0, lastFrame + Math.round(1e9 / frameRate) - System.nanoTime());
+        }
+        scheduleFrame(delay);
+    }
+
+    /**
+     * Schedule {@link #drawFrame()} to be called after a delay. This is called at most once before each frame is drawn.
+     * By default, the frame is drawn immediately on the calling thread
+     *
+     * @param delay the time until the next frame is due, in nanoseconds
+     */
+    protected void scheduleFrame(long delay) {
+        drawFrame();
+    }
+
+    /**
+     * Draw a frame. This runs the actions added since the last frame, then redraws the parts of the figure and overlay
+     * that were invalidated
+     */
+    protected final void drawFrame() {
+        final List<Runnable> actions;
+        synchronized (frameActions) {
+            frameRequested = false;
+            lastFrame = System.nanoTime();
+            actions = frameActions.isEmpty() ? null : new ArrayList<>(frameActions);
+            frameActions.clear();
+        }
+        if (actions != null) {
+            for (final Runnable action : actions) {
+                action.run();
+            }
+        }
+        if (figure == null) {
+            return;
+        }
+        if (figureInvalid.getAndSet(false)) {
+            figure.updateDirtyRegion();
+        }
+        if (overlayInvalid.getAndSet(false)) {
+            overlay.draw(this);
+        }
+    }
+
     /* Canvas helper methods */
 
     /**
@@ -119,6 +245,19 @@ public abstract class Renderer {
      */
     protected abstract void done();
 
+    /**
+     * This method is called by a figure when a rendering pass that only redrew part of the figure has finished. By
+     * default, this is treated as a full rendering pass
+     *
+     * @param x      the x position of the region that was redrawn
+     * @param y      the y position of the region that was redrawn
+     * @param width  the width of the region that was redrawn
+     * @param height the height of the region that was redrawn
+     */
+    protected void done(double x, double y, double width, double height) {
+        done();
+    }
+
     /**
      * @param fileTypes the supported filetypes
      * @return a file path
@@ -134,6 +273,19 @@ public abstract class Renderer {
         return figure;
     }
 
+    /**
+     * Get a cache that belongs to this renderer, creating it if needed. The cache may be used by several drawing
+     * threads at once
+     *
+     * @param type    the type of the cache
+     * @param factory the function to create the cache
+     * @param <T>     the type of the cache
+     * @return the cache of the given type
+     */
+    public final <T> T getCache(final Class<T> type, final Supplier<? extends T> factory) {
+        return type.cast(caches.computeIfAbsent(type, key -> factory.get()));
+    }
+
     /**
      * @return the main canvas in the renderer
      */
@@ -178,6 +330,7 @@ public abstract class Renderer {
      */
     protected <AC extends AbstractComponent> void addToOverlay(final AC component) {
         getOverlay().contentVisible = true;
+        getOverlay().contentHasChanges = true;
         getOverlay().add(component);
     }
 
@@ -187,6 +340,7 @@ public abstract class Renderer {
      * @param component the component to remove
      */
     protected <AC extends AbstractComponent> void removeFromOverlay(final AC component) {
+        getOverlay().contentHasChanges = true;
         getOverlay().remove(component);
     }
 
@@ -194,6 +348,7 @@ public abstract class Renderer {
      * Clear the content in the overlay
      */
     protected void clearOverlay() {
+        getOverlay().contentHasChanges = true;
         getOverlay().clear();
     }
 
@@ -271,7 +426,7 @@ public abstract class Renderer {
             setToolbarVisibility(false);
         }
         getOverlay().setVisible(true);
-        getOverlay().draw(this);
+        invalidateOverlay();
 
     }
 
@@ -347,7 +502,7 @@ public abstract class Renderer {
             lastHover = null;
         }
         getOverlay().clearTooltip();
-        getOverlay().draw(this);
+        invalidateOverlay();
     }
 
     /**
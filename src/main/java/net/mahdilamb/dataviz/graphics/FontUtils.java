@@ -3,14 +3,86 @@ package net.mahdilamb.dataviz.graphics;
 import net.mahdilamb.dataviz.swing.SwingUtils;
 
 import java.awt.*;
+import java.util.Collections;
 import java.util.Map;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public final class FontUtils {
+    /**
+     * The maximum number of fonts to cache the text widths of
+     */
+    private static final int MAX_MEASURED_FONTS = 64;
+    /**
+     * The maximum number of text widths to cache for each font
+     */
+    private static final int MAX_MEASURED_TEXT = 1024;
+
     private FontUtils() {
 
     }
-    static final Map<Font, java.awt.Font> fontsToAWT = new WeakHashMap<>();
+    static final Map<Font, java.awt.Font> fontsToAWT = Collections.synchronizedMap(new WeakHashMap<>());
+    /*
+     * The text width caches, keyed by the font metrics (i.e. the font and how it is rendered). Text is measured by
+     * several renderers and drawing threads at once, so the caches are concurrent rather than locked
+     */
+    private static final Map<FontMetrics, TextMeasurer> textMeasurers = new ConcurrentHashMap<>();
+
+    /**
+     * Measures the width of text for a single font, caching the widths of recently measured text
+     */
+    private static final class TextMeasurer {
+        private final FontMetrics fontMetrics;
+        /*
+         * The advance of each of the first 256 characters, or null if the advances cannot be summed (e.g. with
+         * fractional metrics or kerning)
+         */
+        private final int[] advances;
+        private final Map<String, Double> widths = new ConcurrentHashMap<>();
+
+        TextMeasurer(final FontMetrics fontMetrics) {
+            this.fontMetrics = fontMetrics;
+            this.advances = fontMetrics.getFontRenderContext().usesFractionalMetrics() || fontMetrics.getFont().hasLayoutAttributes() ? null : fontMetrics.getWidths();
+        }
+
+        double getWidth(final String text) {
+            final Double cached = widths.get(text);
+            if (cached != null) {
+                return cached;
+            }
+            double maxWidth = 0;
+            int lineStart = 0;
+            for (int i = 0; i <= text.length(); ++i) {
+                if (i == text.length() || text.charAt(i) == '\n') {
+                    if (i > lineStart) {
+                        maxWidth = Math.max(maxWidth, getLineWidth(text, lineStart, i));
+                    }
+                    lineStart = i + 1;
+                }
+            }
+            if (widths.size() >= MAX_MEASURED_TEXT) {
+                //too much text, so start again rather than tracking the least recently used
+                widths.clear();
+            }
+            widths.put(text, maxWidth);
+            return maxWidth;
+        }
+
+        private int getLineWidth(final String text, int start, int end) {
+            if (advances != null) {
+                int width = 0;
+                for (int i = start; i < end; ++i) {
+                    final char c = text.charAt(i);
+                    if (c >= advances.length) {
+                        return fontMetrics.stringWidth(text.substring(start, end));
+                    }
+                    width += advances[c];
+                }
+                return width;
+            }
+            return fontMetrics.stringWidth(text.substring(start, end));
+        }
+    }
 
     /**
      * Convert generic font to AWY font
@@ -43,24 +115,28 @@ public final class FontUtils {
         if (font.getWeight() == net.mahdilamb.dataviz.graphics.Font.Weight.BOLD) {
             style |= java.awt.Font.BOLD;
         }
-        return new java.awt.Font(family, style, SwingUtils.convert(font.getSize()));
+        final java.awt.Font awtFont = new java.awt.Font(family, style, SwingUtils.convert(font.getSize()));
+        fontsToAWT.put(font, awtFont);
+        return awtFont;
     }
 
+    /**
+     * Get the width of the widest line of some text. The widths are cached for each font, and the widths of lines of
+     * Latin-1 text are summed from a table of character advances where the font has no kerning or fractional metrics
+     *
+     * @param fontMetrics the metrics of the font
+     * @param text        the text
+     * @return the width of the text
+     */
     public static double getTextWidth(final FontMetrics fontMetrics, String text) {
-        double maxWidth = 0;
-        int i = 0;
-        int lineStart = 0;
-        while (i < text.length()) {
-            char c = text.charAt(i++);
-            if (c == '\n') {
-                maxWidth = Math.max(fontMetrics.stringWidth(text.substring(lineStart, i)), maxWidth);
-                lineStart = i;
+        TextMeasurer measurer = textMeasurers.get(fontMetrics);
+        if (measurer == null) {
+            if (textMeasurers.size() >= MAX_MEASURED_FONTS) {
+                textMeasurers.clear();
             }
+            measurer = textMeasurers.computeIfAbsent(fontMetrics, TextMeasurer::new);
         }
-        if (lineStart < text.length()) {
-            maxWidth = Math.max(fontMetrics.stringWidth(text.substring(lineStart)), maxWidth);
-        }
-        return maxWidth;
+        return measurer.getWidth(text);
     }
 
     public static double drawMultilineTextLeft(final Graphics2D g, String text, double x, double y, double lineSpacing, double width) {
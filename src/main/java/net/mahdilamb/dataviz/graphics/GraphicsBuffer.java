@@ -10,6 +10,22 @@ import java.awt.image.BufferedImage;
  */
 public interface GraphicsBuffer {
 
+    /**
+     * A symbol that may be drawn many times with the same geometry (e.g. a marker). Symbols are painted with the
+     * current fill and stroke colors of the canvas, and symbols that are equal must paint the same geometry, relative
+     * to their position
+     */
+    interface Symbol {
+        /**
+         * Paint the symbol, without changing the fill or stroke colors of the canvas
+         *
+         * @param canvas the canvas to paint on
+         * @param x      the x position of the symbol
+         * @param y      the y position of the symbol
+         */
+        void paint(GraphicsBuffer canvas, double x, double y);
+    }
+
     /**
      * Called before the canvas is laid out. I.e. clears everything
      */
@@ -244,6 +260,18 @@ public interface GraphicsBuffer {
         fill();
     }
 
+    /**
+     * Fill the single pixel containing the given position. Note that this may change the fill of the canvas
+     *
+     * @param x    the x position
+     * @param y    the y position
+     * @param argb the non-premultiplied ARGB color of the pixel
+     */
+    default void fillPixel(double x, double y, int argb) {
+        setFill(new Color(argb, true));
+        fillRect(Math.floor(x), Math.floor(y), 1, 1);
+    }
+
     /**
      * Draw the given text at the default position (i.e. x minus baseline)
      *
@@ -253,6 +281,30 @@ public interface GraphicsBuffer {
      */
     void fillText(String text, double x, double y);
 
+    /**
+     * Draw text that is likely to be drawn again unchanged (e.g. tick labels). Raster canvases may cache the rasterized
+     * text. By default, this is the same as {@link #fillText(String, double, double)}
+     *
+     * @param text the text to draw
+     * @param x    the x position
+     * @param y    the y position
+     */
+    default void fillCachedText(String text, double x, double y) {
+        fillText(text, x, y);
+    }
+
+    /**
+     * Draw a symbol with the current fill and stroke colors. Vector canvases may define the geometry of the symbol once
+     * and then refer to it, with its colors, each time it is drawn. By default, the symbol is painted directly
+     *
+     * @param symbol the symbol
+     * @param x      the x position of the symbol
+     * @param y      the y position of the symbol
+     */
+    default void drawSymbol(Symbol symbol, double x, double y) {
+        symbol.paint(this, x, y);
+    }
+
     /**
      * Draw the given text at the position, rotated at a pivot
      *
@@ -297,6 +349,17 @@ public interface GraphicsBuffer {
      */
     void drawImage(BufferedImage image, double x, double y);
 
+    /**
+     * Draw an image on the canvas, scaled to the given size
+     *
+     * @param image  the image
+     * @param x      the top-left x
+     * @param y      the top-left y
+     * @param width  the width to draw the image
+     * @param height the height to draw the image
+     */
+    void drawImage(BufferedImage image, double x, double y, double width, double height);
+
     /**
      * Set the global canvas alpha
      *
@@ -311,4 +374,20 @@ public interface GraphicsBuffer {
         setGlobalAlpha(1.);
     }
 
+    /**
+     * @return whether the canvas is backed by pixels at device resolution, in which case pre-rasterized images may be
+     * drawn in place of geometry
+     */
+    default boolean isRaster() {
+        return false;
+    }
+
+    /**
+     * @return the number of device pixels in each unit of the canvas (e.g. 2 when a raster canvas is exported at
+     * twice its size), or {@code NaN} if the canvas is not uniformly scaled
+     */
+    default double getDeviceScale() {
+        return 1;
+    }
+
 }
@@ -11,4 +11,17 @@ public interface GraphicsContext extends GraphicsBuffer {
      */
     Renderer getRenderer();
 
+    /**
+     * Reset a region of the canvas, and restrict drawing to that region until the canvas is done
+     *
+     * @param x      the x position of the region
+     * @param y      the y position of the region
+     * @param width  the width of the region
+     * @param height the height of the region
+     * @return whether the canvas supports partial resets. If not, the canvas is unchanged and should be reset entirely
+     */
+    default boolean reset(double x, double y, double width, double height) {
+        return false;
+    }
+
 }
@@ -6,11 +6,13 @@ import net.mahdilamb.dataviz.graphics.Font;
 import net.mahdilamb.dataviz.graphics.Stroke;
 import net.mahdilamb.dataviz.graphics.*;
 import net.mahdilamb.dataviz.swing.SwingUtils;
+import net.mahdilamb.dataviz.utils.ColorUtils;
 import net.mahdilamb.dataviz.utils.Variant;
 
 import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 import static net.mahdilamb.dataviz.swing.SwingUtils.computeArc;
 import static net.mahdilamb.dataviz.swing.SwingUtils.convert;
@@ -36,11 +38,26 @@ class ImageExporter extends FigureExporter {
         private Color currentStrokeColor = Color.BLACK;
         boolean usingFill = true;
         private final AffineTransform affineTransform = new AffineTransform();
-
-        ImageExporterCanvas(boolean fillWhite, Renderer chart, Graphics2D graphics) {
+        /*
+         * The image being drawn to, and its pixels if they are stored as packed ints
+         */
+        private final BufferedImage image;
+        private final int[] pixels;
+        /*
+         * The device bounds of the clip and the translation of the graphics, used when pixels are written directly.
+         * The bounds are empty if the graphics are transformed other than by a translation
+         */
+        private boolean clipValid = false;
+        private int clipMinX, clipMinY, clipMaxX, clipMaxY;
+        private double translateX, translateY;
+        private Shape clipShape;
+
+        ImageExporterCanvas(boolean fillWhite, Renderer chart, BufferedImage image, Graphics2D graphics) {
             this.g = graphics;
             this.chart = chart;
             this.fillWhite = fillWhite;
+            this.image = image;
+            this.pixels = image.getType() == BufferedImage.TYPE_INT_ARGB || image.getType() == BufferedImage.TYPE_INT_RGB ? ((DataBufferInt) image.getRaster().getDataBuffer()).getData() : null;
         }
 
 
@@ -257,11 +274,13 @@ class ImageExporter extends FigureExporter {
                 default:
                     throw new UnsupportedOperationException();
             }
+            clipValid = false;
         }
 
         @Override
         public void clearClip() {
             g.setClip(null);
+            clipValid = false;
         }
 
         @Override
@@ -269,17 +288,121 @@ class ImageExporter extends FigureExporter {
             g.drawImage(bufferedImage, convert(x), convert(y), null);
         }
 
+        @Override
+        public void drawImage(BufferedImage bufferedImage, double x, double y, double width, double height) {
+            affineTransform.setToTranslation(x, y);
+            affineTransform.scale(width / bufferedImage.getWidth(), height / bufferedImage.getHeight());
+            g.drawImage(bufferedImage, affineTransform, null);
+            affineTransform.setToIdentity();
+        }
+
         @Override
         public void setGlobalAlpha(double alpha) {
             g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) alpha));
         }
 
+        @Override
+        public boolean isRaster() {
+            return true;
+        }
+
+        @Override
+        public double getDeviceScale() {
+            final AffineTransform transform = g.getTransform();
+            if ((transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0 || transform.getScaleX() <= 0) {
+                return Double.NaN;
+            }
+            return transform.getScaleX();
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The pixel is blended directly into the image using source-over compositing, bypassing {@link Graphics2D}.
+         * The clip and global alpha of the graphics are respected.
+         */
+        @Override
+        public void fillPixel(double x, double y, int argb) {
+            if (!clipValid) {
+                validateClip();
+            }
+            final int px = (int) Math.floor(x + translateX), py = (int) Math.floor(y + translateY);
+            if (px < clipMinX || py < clipMinY || px >= clipMaxX || py >= clipMaxY || (clipShape != null && !clipShape.contains(px + .5, py + .5))) {
+                return;
+            }
+            final Composite composite = g.getComposite();
+            if (composite != AlphaComposite.SrcOver) {
+                if (!(composite instanceof AlphaComposite) || ((AlphaComposite) composite).getRule() != AlphaComposite.SRC_OVER) {
+                    GraphicsContext.super.fillPixel(x, y, argb);
+                    return;
+                }
+                argb = (Math.round((argb >>> 24) * ((AlphaComposite) composite).getAlpha()) << 24) | (argb & 0xFFFFFF);
+            }
+            if (pixels == null) {
+                image.setRGB(px, py, ColorUtils.sourceOver(argb, image.getRGB(px, py)));
+                return;
+            }
+            final int i = py * image.getWidth() + px;
+            //opaque images ignore the alpha of the stored pixels
+            pixels[i] = ColorUtils.sourceOver(argb, image.getType() == BufferedImage.TYPE_INT_RGB ? pixels[i] | 0xFF000000 : pixels[i]);
+        }
+
+        private void validateClip() {
+            final AffineTransform transform = g.getTransform();
+            clipMinX = 0;
+            clipMinY = 0;
+            clipMaxX = image.getWidth();
+            clipMaxY = image.getHeight();
+            clipShape = null;
+            translateX = transform.getTranslateX();
+            translateY = transform.getTranslateY();
+            if ((transform.getType() & ~AffineTransform.TYPE_TRANSLATION) != 0) {
+                clipMaxX = clipMaxY = 0;
+            } else {
+                final Shape clip = g.getClip();
+                if (clip != null) {
+                    final Shape deviceClip = transform.createTransformedShape(clip);
+                    final Rectangle2D bounds = deviceClip.getBounds2D();
+                    //a pixel is in the clip if its center is
+                    clipMinX = Math.max(clipMinX, (int) Math.ceil(bounds.getMinX() - .5));
+                    clipMinY = Math.max(clipMinY, (int) Math.ceil(bounds.getMinY() - .5));
+                    clipMaxX = Math.min(clipMaxX, (int) Math.ceil(bounds.getMaxX() - .5));
+                    clipMaxY = Math.min(clipMaxY, (int) Math.ceil(bounds.getMaxY() - .5));
+                    if (!(clip instanceof Rectangle2D)) {
+                        clipShape = deviceClip;
+                    }
+                }
+            }
+            clipValid = true;
+        }
+
     }
 
     static <T> BufferedImage toBufferedImage(int encoding, final Renderer renderer) {
         final BufferedImage image = new BufferedImage((int) renderer.getFigure().getWidth(), (int) renderer.getFigure().getHeight(), encoding);
-        drawContent(new ImageExporterCanvas(encoding != BufferedImage.TYPE_INT_ARGB, renderer, (Graphics2D) image.getGraphics()), renderer);
+        drawContent(new ImageExporterCanvas(encoding != BufferedImage.TYPE_INT_ARGB, renderer, image, (Graphics2D) image.getGraphics()), renderer);
         return image;
     }
 
+    /**
+     * Draw a figure into an existing image, so that the image can be reused between figures
+     *
+     * @param image    the image to draw into. Must be at least as large as the figure
+     * @param renderer the renderer
+     * @return the part of the image containing the figure
+     */
+    static BufferedImage toBufferedImage(final BufferedImage image, final Renderer renderer) {
+        final int width = (int) renderer.getFigure().getWidth(), height = (int) renderer.getFigure().getHeight();
+        final Graphics2D g = image.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, width, height);
+            g.setComposite(AlphaComposite.SrcOver);
+            drawContent(new ImageExporterCanvas(image.getType() != BufferedImage.TYPE_INT_ARGB, renderer, image, g), renderer);
+        } finally {
+            g.dispose();
+        }
+        return image.getWidth() == width && image.getHeight() == height ? image : image.getSubimage(0, 0, width, height);
+    }
+
 }
@@ -0,0 +1,205 @@
+package net.mahdilamb.dataviz.io;
+
+import net.mahdilamb.dataviz.figure.FigureBase;
+import net.mahdilamb.dataviz.swing.HeadlessRenderer;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of threads for rendering figures without a display, e.g. in a server. Each thread has its own
+ * {@link HeadlessRenderer} and its own image and output buffers, which are reused between figures, so figures can be
+ * rendered concurrently without contention.
+ * <p>
+ * A figure is laid out and drawn by the thread that renders it, so it must not be modified, or rendered again, until
+ * its render has completed.
+ */
+public final class RendererPool implements AutoCloseable {
+    /**
+     * The formats that figures can be rendered to
+     */
+    public enum Format {
+        /**
+         * Portable network graphics
+         */
+        PNG("png", BufferedImage.TYPE_INT_ARGB),
+        /**
+         * JPEG (without transparency)
+         */
+        JPEG("jpeg", BufferedImage.TYPE_INT_RGB),
+        /**
+         * Bitmap (without transparency)
+         */
+        BMP("bmp", BufferedImage.TYPE_INT_RGB),
+        /**
+         * Tagged image file format
+         */
+        TIFF("tiff", BufferedImage.TYPE_INT_ARGB),
+        /**
+         * Scalable vector graphics
+         */
+        SVG(null, 0),
+        /**
+         * Compressed scalable vector graphics
+         */
+        SVGZ(null, 0);
+
+        final String formatName;
+        final int imageType;
+
+        Format(final String formatName, int imageType) {
+            this.formatName = formatName;
+            this.imageType = imageType;
+        }
+    }
+
+    /**
+     * The renderer and buffers used by a single thread
+     */
+    private static final class Worker {
+        final HeadlessRenderer renderer = new HeadlessRenderer();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private BufferedImage argb, rgb;
+
+        /**
+         * @return an image of the given type that is at least as large as the dimensions
+         */
+        BufferedImage getImage(int type, int width, int height) {
+            BufferedImage image = type == BufferedImage.TYPE_INT_ARGB ? argb : rgb;
+            if (image == null || image.getWidth() < width || image.getHeight() < height) {
+                image = new BufferedImage(
+                        Math.max(width, image == null ? 0 : image.getWidth()),
+                        Math.max(height, image == null ? 0 : image.getHeight()),
+                        type
+                );
+                if (type == BufferedImage.TYPE_INT_ARGB) {
+                    argb = image;
+                } else {
+                    rgb = image;
+                }
+            }
+            return image;
+        }
+
+        byte[] render(final FigureBase<?> figure, int width, int height, final Format format) throws IOException {
+            //attach the figure first, so resizing it does not redraw it in its previous renderer
+            renderer.setFigure(figure);
+            figure.setSize(width, height);
+            bytes.reset();
+            switch (format) {
+                case SVG:
+                case SVGZ:
+                    try {
+                        new SVGExporter.SVGWriter(bytes, renderer, format == Format.SVGZ);
+                    } catch (UncheckedIOException e) {
+                        throw e.getCause();
+                    }
+                    break;
+                default:
+                    final BufferedImage image = ImageExporter.toBufferedImage(getImage(format.imageType, width, height), renderer);
+                    try (final ImageOutputStream stream = new MemoryCacheImageOutputStream(bytes)) {
+                        if (!ImageIO.write(image, format.formatName, stream)) {
+                            throw new IOException(String.format("No image writer available for %s", format));
+                        }
+                    }
+                    break;
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    private final ExecutorService executor;
+    private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+    /**
+     * Create a pool with a thread for each available processor
+     */
+    public RendererPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a pool with the given number of threads
+     *
+     * @param threads the number of threads
+     * @throws IllegalArgumentException if the number of threads is not positive
+     */
+    public RendererPool(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("The number of threads must be positive");
+        }
+        final AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            final Thread thread = new Thread(runnable, "dataviz-renderer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Render a figure on one of the threads of the pool
+     *
+     * @param figure the figure
+     * @param width  the width of the output
+     * @param height the height of the output
+     * @param format the format of the output
+     * @return the future result, containing the bytes of the encoded figure
+     * @throws IllegalArgumentException if the width or height is not positive
+     */
+    public Future<byte[]> submit(final FigureBase<?> figure, int width, int height, final Format format) {
+        Objects.requireNonNull(figure);
+        Objects.requireNonNull(format);
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The width and height of the output must be positive");
+        }
+        return executor.submit(() -> workers.get().render(figure, width, height, format));
+    }
+
+    /**
+     * Render a figure on one of the threads of the pool, and wait for the result
+     *
+     * @param figure the figure
+     * @param width  the width of the output
+     * @param height the height of the output
+     * @param format the format of the output
+     * @return the bytes of the encoded figure
+     * @throws IOException              if the figure could not be encoded, or the thread was interrupted while waiting
+     * @throws IllegalArgumentException if the width or height is not positive
+     */
+    public byte[] render(final FigureBase<?> figure, int width, int height, final Format format) throws IOException {
+        try {
+            return submit(figure, width, height, format).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Stop the threads of the pool once the submitted figures have been rendered
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -26,31 +26,107 @@ import static net.mahdilamb.dataviz.utils.StringUtils.EMPTY_STRING;
  */
 class SVGExporter extends FigureExporter {
 
+    /**
+     * A graphics context that writes the figure as an SVG.
+     * <p>
+     * In streaming mode, elements are written to the output as they are drawn, through a small buffer, and the
+     * definitions are written in a trailing {@code <defs>} element, so the size of the document does not affect the
+     * memory used to export it. Otherwise, the whole document is held in memory and written with the definitions first.
+     * <p>
+     * Consecutive stroked paths, lines and polylines with the same opaque style are merged into a single path, and
+     * lines that continue in the same direction are joined.
+     */
     static final class SVGWriter implements GraphicsContext {
+        /**
+         * The number of characters held before they are written to the output, in streaming mode
+         */
+        private static final int FLUSH_SIZE = 1 << 14;
+
         boolean done = false;
         String header;
         final StringBuilder out = new StringBuilder();
+        /*
+         * The builder that elements are added to. This is the document, other than when a symbol is being defined
+         */
+        private StringBuilder target = out;
+        /*
+         * The last symbol drawn, as consecutive symbols are usually the same
+         */
+        private Symbol lastSymbol;
+        private Stroke lastSymbolStroke;
+        private String lastSymbolId;
         final StringBuilder indent = new StringBuilder("\t");
         SVGDefinitions defs;
         final Renderer renderer;
         private final File output;
+        private final OutputStream stream;
+        private final boolean streaming;
+        private Writer writer;
+        private GZIPOutputStream gzip;
 
         boolean isClipped = false;
         final Variant<Color, Gradient> fill = Variant.ofA(Color.BLACK);
         Color strokeColor = Color.BLACK;
         Stroke stroke = Stroke.SOLID;
 
-        private static final StringBuilder pathD = new StringBuilder();
+        private final SVGPath path = new SVGPath();
+        /*
+         * Consecutive stroked paths and lines with the same style are merged into a single path, which is written when
+         * an element with a different style is drawn (or the path grows too long)
+         */
+        private final SVGPath pending = new SVGPath(), line = new SVGPath();
+        private final StringBuilder pendingAttributes = new StringBuilder(), attributes = new StringBuilder();
         private Font font = new Font(Font.Family.SANS_SERIF, 12);
         boolean compressed;
         double globalAlpha = 1;
 
-        SVGWriter(File output, Renderer renderer, boolean compressed) {
+        /**
+         * Write the SVG to a file. Errors are printed rather than thrown
+         *
+         * @param output     the file to write to
+         * @param renderer   the renderer
+         * @param compressed whether to compress the output
+         * @param streaming  whether to write the elements as they are drawn
+         */
+        SVGWriter(File output, Renderer renderer, boolean compressed, boolean streaming) {
             this.compressed = compressed;
             this.renderer = renderer;
             this.output = output;
+            this.stream = null;
+            this.streaming = streaming;
+            try {
+                drawContent(this, renderer);
+            } catch (UncheckedIOException e) {
+                e.printStackTrace();
+            } finally {
+                closeFile();
+            }
+        }
+
+        SVGWriter(File output, Renderer renderer, boolean compressed) {
+            this(output, renderer, compressed, true);
+        }
+
+        /**
+         * Write the SVG to a stream. The stream is not closed
+         *
+         * @param stream     the stream to write to
+         * @param renderer   the renderer
+         * @param compressed whether to compress the output
+         * @param streaming  whether to write the elements as they are drawn
+         * @throws UncheckedIOException if the SVG could not be written to the stream
+         */
+        SVGWriter(OutputStream stream, Renderer renderer, boolean compressed, boolean streaming) {
+            this.compressed = compressed;
+            this.renderer = renderer;
+            this.output = null;
+            this.stream = stream;
+            this.streaming = streaming;
             drawContent(this, renderer);
+        }
 
+        SVGWriter(OutputStream stream, Renderer renderer, boolean compressed) {
+            this(stream, renderer, compressed, true);
         }
 
         SVGWriter(File output, Renderer renderer) {
@@ -70,68 +146,204 @@ class SVGExporter extends FigureExporter {
             stroke = Stroke.SOLID;
             isClipped = false;
             out.setLength(0);
+            target = out;
+            pending.clear();
             indent.setLength(0);
             indent.append('\t');
             defs = new SVGDefinitions();
-            final String backgroundColor = renderer.getFigure().getBackgroundColor() == null ? EMPTY_STRING : String.format("style=\"background-color:%s\" ", convertToString(renderer.getFigure().getBackgroundColor()));
-            header = String.format(
-                    "<svg version=\"1.1\" baseProfile=\"full\" width=\"%s\" height=\"%s\" %sxmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">%n",
-                    convertToString(renderer.getFigure().getWidth()),
-                    convertToString(renderer.getFigure().getHeight()),
-                    backgroundColor
-            );
+            //the last symbol was defined in the previous definitions
+            lastSymbol = null;
+            lastSymbolStroke = null;
+            lastSymbolId = null;
+            final StringBuilder header = new StringBuilder("<svg version=\"1.1\" baseProfile=\"full\" ");
+            appendAttribute(header, "width", renderer.getFigure().getWidth());
+            appendAttribute(header, "height", renderer.getFigure().getHeight());
+            if (renderer.getFigure().getBackgroundColor() != null) {
+                appendColor(header.append("style=\"background-color:"), renderer.getFigure().getBackgroundColor()).append("\" ");
+            }
+            this.header = header.append("xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n").toString();
+            if (streaming && writer == null) {
+                //the canvas may be reset more than once before it is drawn to
+                try {
+                    open();
+                    writer.write(this.header);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        /**
+         * Open the writer for the output
+         */
+        private void open() throws IOException {
+            final OutputStream os = stream == null ? new FileOutputStream(output) : stream;
+            gzip = compressed ? new GZIPOutputStream(os, FLUSH_SIZE) : null;
+            writer = new BufferedWriter(new OutputStreamWriter(gzip == null ? os : gzip, StandardCharsets.UTF_8), FLUSH_SIZE);
+        }
 
+        /**
+         * Close the file that was written to, if any
+         */
+        private void closeFile() {
+            if (output == null || writer == null) {
+                return;
+            }
+            try {
+                writer.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            writer = null;
+        }
+
+        /**
+         * The maximum number of commands in a merged path
+         */
+        private static final int MAX_MERGED_COMMANDS = 4096;
+
+        /**
+         * @return the builder to add an element to, after any pending path has been added
+         */
+        private StringBuilder element() {
+            if (!pending.isEmpty()) {
+                target.append(indent).append("<path d=\"");
+                pending.appendTo(target).append("\" ").append(pendingAttributes).append("/>\n");
+                pending.clear();
+            }
+            return target;
+        }
+
+        /**
+         * Stroke a path, merging it into the pending path if possible. A path can only be merged if its stroke is
+         * opaque and not dashed, so that drawing it as part of another path looks the same
+         *
+         * @param path the path to stroke
+         */
+        private void strokePath(final SVGPath path) {
+            if (strokeColor == null || strokeColor.getAlpha() != 255 || globalAlpha != 1 || stroke.numDashes() != 0) {
+                appendPath(element(), path, defs, indent, stroke, null, strokeColor, globalAlpha);
+                written();
+                return;
+            }
+            attributes.setLength(0);
+            appendStyle(attributes, defs, null, stroke, strokeColor, globalAlpha);
+            if (pending.size() >= MAX_MERGED_COMMANDS || CharSequence.compare(attributes, pendingAttributes) != 0) {
+                element();
+                written();
+                pendingAttributes.setLength(0);
+                pendingAttributes.append(attributes);
+            }
+            pending.append(path);
+        }
+
+        /**
+         * Write the elements that have been drawn, if streaming and enough have accumulated
+         */
+        private void written() {
+            if (streaming && target == out && out.length() >= FLUSH_SIZE) {
+                flushElements();
+            }
+        }
+
+        private void flushElements() {
+            try {
+                writer.append(out);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            out.setLength(0);
         }
 
         @Override
         public void beginPath() {
-            pathD.setLength(0);
+            path.clear();
         }
 
         @Override
         public void moveTo(double endX, double endY) {
-            pathD.append(String.format("M %s %s ", convertToString(endX), convertToString(endY)));
+            path.moveTo(endX, endY);
         }
 
         @Override
         public void lineTo(double endX, double endY) {
-            pathD.append(String.format("L %s %s ", convertToString(endX), convertToString(endY)));
-
+            path.lineTo(endX, endY);
         }
 
         @Override
         public void quadTo(double cpX, double cpY, double endX, double endY) {
-            pathD.append(String.format("Q %s %s, %s %s ", convertToString(cpX), convertToString(cpY), convertToString(endX), convertToString(endY)));
-
+            path.quadTo(cpX, cpY, endX, endY);
         }
 
         @Override
         public void strokePolygon(double[] xPoints, double[] yPoints, int numPoints) {
-            out.append(polygonToString(xPoints, yPoints, numPoints, defs, indent, stroke, null, strokeColor, globalAlpha));
+            appendPolygon(element(), xPoints, yPoints, numPoints, defs, indent, stroke, null, strokeColor, globalAlpha);
+            written();
         }
 
 
         @Override
         public void strokePolyline(double[] xPoints, double[] yPoints, int numPoints) {
-            out.append(polylineToString(xPoints, yPoints, numPoints, defs, indent, stroke, strokeColor, globalAlpha));
-
+            line.clear();
+            for (int i = 0; i < numPoints; ++i) {
+                line.lineTo(xPoints[i], yPoints[i]);
+            }
+            strokePath(line);
         }
 
         @Override
         public void fillPolygon(double[] xPoints, double[] yPoints, int numPoints) {
-            out.append(polygonToString(xPoints, yPoints, numPoints, defs, indent, null, fill, null, globalAlpha));
-
+            appendPolygon(element(), xPoints, yPoints, numPoints, defs, indent, null, fill, null, globalAlpha);
+            written();
         }
 
         @Override
         public void fillText(String text, double x, double y) {
-            out.append(textToString(text, x, y, font, defs, indent, null, fill, null, globalAlpha));
+            appendText(element(), text, x, y, font, defs, indent, null, fill, null, globalAlpha);
+            written();
         }
 
         @Override
         public void fillText(String text, double x, double y, double rotationDegrees, double pivotX, double pivotY) {
-            out.append(rotatedTextToString(text, x, y, rotationDegrees, pivotX, pivotY, font, defs, indent, null, fill, null, globalAlpha));
+            appendRotatedText(element(), text, x, y, rotationDegrees, pivotX, pivotY, font, defs, indent, null, fill, null, globalAlpha);
+            written();
+        }
 
+        @Override
+        public void drawSymbol(Symbol symbol, double x, double y) {
+            if (symbol.equals(lastSymbol) && stroke == lastSymbolStroke) {
+                useSymbol(lastSymbolId, x, y);
+                return;
+            }
+            lastSymbolId = defs.addSymbol(new SymbolKey(symbol, stroke), () -> {
+                //paint the symbol at the origin into its own builder, with the colors inherited from where it is used
+                final StringBuilder document = element();
+                final int depth = indent.length();
+                target = new StringBuilder();
+                indent.setLength(0);
+                indent.append("\t\t\t");
+                defs.inheritColors = true;
+                symbol.paint(this, 0, 0);
+                defs.inheritColors = false;
+                final String content = element().toString();
+                target = document;
+                indent.setLength(0);
+                for (int i = 0; i < depth; ++i) {
+                    indent.append('\t');
+                }
+                return content;
+            });
+            lastSymbol = symbol;
+            lastSymbolStroke = stroke;
+            useSymbol(lastSymbolId, x, y);
+        }
+
+        private void useSymbol(final String id, double x, double y) {
+            element().append(indent).append("<use xlink:href=\"#").append(id).append("\" ");
+            appendStyle(target, defs, fill, null, strokeColor, globalAlpha);
+            appendCoordinate(target, "x", x);
+            appendCoordinate(target, "y", y).append("/>\n");
+            written();
         }
 
         @Override
@@ -141,7 +353,7 @@ class SVGExporter extends FigureExporter {
 
         @Override
         public void setClip(ClipShape shape, double x, double y, double width, double height) {
-            out.append(String.format("%s<g clip-path=\"url(#%s)\">%n", indent, defs.addClip(shape, x, y, width, height)));
+            element().append(indent).append("<g clip-path=\"url(#").append(defs.addClip(shape, x, y, width, height)).append(")\">\n");
             indent.append('\t');
             isClipped = true;
         }
@@ -152,13 +364,20 @@ class SVGExporter extends FigureExporter {
                 return;
             }
             indent.deleteCharAt(indent.length() - 1);
-            out.append(String.format("%s</g>%n", indent));
+            element().append(indent).append("</g>\n");
             isClipped = false;
+            written();
         }
 
         @Override
         public void drawImage(BufferedImage o, double x, double y) {
-            out.append(imageToString(imageToBytes(o), x, y, o.getWidth(), o.getHeight(), indent));
+            drawImage(o, x, y, o.getWidth(), o.getHeight());
+        }
+
+        @Override
+        public void drawImage(BufferedImage o, double x, double y, double width, double height) {
+            appendImage(element(), imageToBytes(o), x, y, width, height, indent);
+            written();
         }
 
         @Override
@@ -168,92 +387,80 @@ class SVGExporter extends FigureExporter {
 
         @Override
         public void curveTo(double cp1X, double cp1Y, double cp2X, double cp2Y, double endX, double endY) {
-            pathD.append(String.format(
-                    "C %s %s, %s %s, %s %s ",
-                    convertToString(cp1X),
-                    convertToString(cp1Y),
-                    convertToString(cp2X),
-                    convertToString(cp2Y),
-                    convertToString(endX),
-                    convertToString(endY)
-                    )
-            );
+            path.curveTo(cp1X, cp1Y, cp2X, cp2Y, endX, endY);
         }
 
         @Override
         public void arcTo(double rx, double ry, double xAxisRotationDegrees, boolean largeArc, boolean sweepFlag, double endX, double endY) {
-            pathD.append(String.format(
-                    "A %s %s %s %d %d %s %s ",
-                    convertToString(rx),
-                    convertToString(ry),
-                    convertToString(xAxisRotationDegrees),
-                    convertToString(largeArc),
-                    convertToString(sweepFlag),
-                    convertToString(endX),
-                    convertToString(endY)
-                    )
-            );
+            path.arcTo(rx, ry, xAxisRotationDegrees, largeArc, sweepFlag, endX, endY);
         }
 
         @Override
         public void closePath() {
-            pathD.append("Z ");
-
+            path.closePath();
         }
 
         @Override
         public void fill() {
-            out.append(pathToString(pathD.toString(), defs, indent, null, fill, null, globalAlpha));
-
+            appendPath(element(), path, defs, indent, null, fill, null, globalAlpha);
+            written();
         }
 
         @Override
         public void stroke() {
-            out.append(pathToString(pathD.toString(), defs, indent, stroke, null, strokeColor, globalAlpha));
-
+            strokePath(path);
         }
 
         @Override
         public void strokeRect(double x, double y, double width, double height) {
-            out.append(rectangleToString(x, y, width, height, defs, indent, stroke, null, strokeColor, globalAlpha));
+            appendRectangle(element(), x, y, width, height, defs, indent, stroke, null, strokeColor, globalAlpha);
+            written();
         }
 
         @Override
         public void fillRect(double x, double y, double width, double height) {
-            out.append(rectangleToString(x, y, width, height, defs, indent, null, fill, null, globalAlpha));
+            appendRectangle(element(), x, y, width, height, defs, indent, null, fill, null, globalAlpha);
+            written();
         }
 
         @Override
         public void strokeRoundRect(double x, double y, double width, double height, double arcWidth, double arcHeight) {
-            out.append(roundedRectangleToString(x, y, width, height, arcWidth, arcHeight, defs, indent, stroke, null, strokeColor, globalAlpha));
+            appendRoundedRectangle(element(), x, y, width, height, arcWidth, arcHeight, defs, indent, stroke, null, strokeColor, globalAlpha);
+            written();
         }
 
         @Override
         public void fillRoundRect(double x, double y, double width, double height, double arcWidth, double arcHeight) {
-            out.append(roundedRectangleToString(x, y, width, height, arcWidth, arcHeight, defs, indent, null, fill, null, globalAlpha));
+            appendRoundedRectangle(element(), x, y, width, height, arcWidth, arcHeight, defs, indent, null, fill, null, globalAlpha);
+            written();
         }
 
         @Override
         public void strokeOval(double x, double y, double width, double height) {
             if (width == height) {
-                out.append(circleToString(x, y, width * .5, defs, indent, stroke, null, strokeColor, globalAlpha));
+                appendCircle(element(), x, y, width * .5, defs, indent, stroke, null, strokeColor, globalAlpha);
             } else {
-                out.append(ellipseToString(x, y, width, height, defs, indent, stroke, null, strokeColor, globalAlpha));
+                appendEllipse(element(), x, y, width, height, defs, indent, stroke, null, strokeColor, globalAlpha);
             }
+            written();
         }
 
         @Override
         public void fillOval(double x, double y, double width, double height) {
             if (width == height) {
-                out.append(circleToString(x, y, width * .5, defs, indent, null, fill, null, globalAlpha));
+                appendCircle(element(), x, y, width * .5, defs, indent, null, fill, null, globalAlpha);
             } else {
-                out.append(ellipseToString(x, y, width, height, defs, indent, null, fill, null, globalAlpha));
+                appendEllipse(element(), x, y, width, height, defs, indent, null, fill, null, globalAlpha);
             }
+            written();
         }
 
         @Override
         public void strokeLine(double x0, double y0, double x1, double y1) {
-            out.append(lineToString(x0, y0, x1, y1, defs, indent, stroke, strokeColor, globalAlpha));
+            line.clear();
+            line.moveTo(x0, y0);
+            line.lineTo(x1, y1);
+            strokePath(line);
         }
 
         @Override
@@ -278,27 +485,70 @@ class SVGExporter extends FigureExporter {
 
         @Override
         public void done() {
-            if (!done) {
-                if (isClipped) {
-                    clearClip();
-                }
-                out.append("</svg>");
-                cleanup(out);
+            if (done) {
+                return;
+            }
+            if (isClipped) {
+                clearClip();
             }
             done = true;
-            try (final Writer writer = compressed ? new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(output)), StandardCharsets.UTF_8) : new FileWriter(output)) {
-                writer.write(header);
-                writer.write(defs.get());
-                writer.write(out.toString());
+            element();
+            try {
+                if (streaming) {
+                    //the definitions are only complete once everything has been drawn, so they are written last
+                    flushElements();
+                    writer.write(defs.get());
+                    writer.write("</svg>");
+                } else {
+                    out.append("</svg>");
+                    open();
+                    writer.write(header);
+                    writer.write(defs.get());
+                    writer.append(out);
+                }
+                writer.flush();
+                if (gzip != null) {
+                    gzip.finish();
+                }
             } catch (IOException e) {
-                e.printStackTrace();
+                throw new UncheckedIOException(e);
             }
-
         }
 
     }
 
 
+    /**
+     * The key of a symbol definition. The geometry of a symbol also depends on the stroke of the canvas, whereas its
+     * colors and alpha are set where it is used
+     */
+    private static final class SymbolKey {
+        final GraphicsBuffer.Symbol symbol;
+        final Stroke stroke;
+
+        SymbolKey(GraphicsBuffer.Symbol symbol, Stroke stroke) {
+            this.symbol = symbol;
+            this.stroke = stroke;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SymbolKey)) {
+                return false;
+            }
+            final SymbolKey other = (SymbolKey) o;
+            return symbol.equals(other.symbol) && Objects.equals(stroke, other.stroke);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(symbol, stroke);
+        }
+    }
+
     /**
      * A class to store the definitions used by an SVG file.
      *
@@ -307,6 +557,21 @@ class SVGExporter extends FigureExporter {
      */
     static final class SVGDefinitions {
         private final StringBuilder buffer = new StringBuilder();
+        /*
+         * The rules of the style classes, and the class of the last style used, as consecutive elements usually share
+         * the same style
+         */
+        private final StringBuilder styles = new StringBuilder();
+        private final Map<String, String> styleClasses = new HashMap<>();
+        private String lastStyle, lastStyleClass;
+        /*
+         * The builder used for the style of each element
+         */
+        final StringBuilder style = new StringBuilder();
+        /*
+         * Whether a symbol is being defined, in which case the elements inherit their colors from where the symbol is used
+         */
+        boolean inheritColors = false;
         private final Map<Object, String> currentDefinitions = new HashMap<>();
         private final Map<String, Integer> prefixCounter = new HashMap<>();
         private boolean isClosed = false;
@@ -321,11 +586,11 @@ class SVGExporter extends FigureExporter {
             final Integer count = prefixCounter.get(prefix);
             if (count == null) {
                 prefixCounter.put(prefix, 0);
-                return String.format("%s%d", prefix, 0);
+                return prefix + 0;
             }
             final Integer incremented = count + 1;
             prefixCounter.put(prefix, incremented);
-            return String.format("%s%s", prefix, incremented);
+            return prefix + incremented;
 
         }
 
@@ -339,18 +604,10 @@ class SVGExporter extends FigureExporter {
          * @return the id of the definition
          */
         private String add(final String prefix, final String type, final String content, final String attributes) {
-            if (buffer.length() == 0) {
-                buffer.append("\t<defs>\n");
-            }
             final String prefixId = putPrefix(prefix);
-            buffer.append(String.format(
-                    "\t\t<%s %sid=\"%s\">%n%s\t\t</%s>%n",
-                    type,
-                    attributes,
-                    prefixId,
-                    content,
-                    type
-            ));
+            buffer.append("\t\t<").append(type).append(' ').append(attributes).append("id=\"").append(prefixId).append("\">\n")
+                    .append(content)
+                    .append("\t\t</").append(type).append(">\n");
             return prefixId;
         }
 
@@ -384,36 +641,34 @@ class SVGExporter extends FigureExporter {
             return add(gradient, () -> {
                 final StringBuilder stops = new StringBuilder();
                 for (final Map.Entry<Float, Color> entry : gradient.getColorMap().entrySet()) {
-                    stops.append(String.format(
-                            "\t\t\t<stop offset=\"%s\" stop-color=\"%s\"%s />%n",
-                            convertToString(entry.getKey()),
-                            convertToString(entry.getValue()),
-                            entry.getValue().getAlpha() == 255 ? EMPTY_STRING : String.format(" stop-opacity=\"%s\"", convertToString(entry.getValue().getAlpha()*alpha / 255f))
-                    ));
+                    appendAttribute(stops.append("\t\t\t<stop "), "offset", entry.getKey());
+                    appendColor(stops.append("stop-color=\""), entry.getValue()).append('"');
+                    if (entry.getValue().getAlpha() != 255) {
+                        append(stops.append(" stop-opacity=\""), entry.getValue().getAlpha() * alpha / 255f).append('"');
+                    }
+                    stops.append(" />\n");
                 }
                 if (gradient.getType() == Gradient.GradientType.LINEAR) {
                     return add(
                             "linear-gradient-",
                             "linearGradient",
                             stops.toString(),
-                            String.format(
-                                    "gradientUnits=\"userSpaceOnUse\" x1=\"%s\" y1=\"%s\" x2=\"%s\" y2=\"%s\" ",
-                                    convertToString(gradient.getStartX()),
-                                    convertToString(gradient.getStartY()),
-                                    convertToString(gradient.getEndX()),
-                                    convertToString(gradient.getEndY())
-                            )
+                            appendAttribute(appendAttribute(appendAttribute(appendAttribute(new StringBuilder("gradientUnits=\"userSpaceOnUse\" "),
+                                    "x1", gradient.getStartX()),
+                                    "y1", gradient.getStartY()),
+                                    "x2", gradient.getEndX()),
+                                    "y2", gradient.getEndY())
+                                    .toString()
                     );
                 } else {
                     return add("radial-gradient-",
                             "radialGradient",
                             stops.toString(),
-                            String.format(
-                                    "gradientUnits=\"userSpaceOnUse\" cx=\"%s\" cy=\"%s\" r=\"%s\" ",
-                                    convertToString(gradient.getStartX()),
-                                    convertToString(gradient.getStartY()),
-                                    convertToString(Numbers.distance(gradient.getStartX(), gradient.getStartY(), gradient.getEndX(), gradient.getEndY()))
-                            )
+                            appendAttribute(appendAttribute(appendAttribute(new StringBuilder("gradientUnits=\"userSpaceOnUse\" "),
+                                    "cx", gradient.getStartX()),
+                                    "cy", gradient.getStartY()),
+                                    "r", Numbers.distance(gradient.getStartX(), gradient.getStartY(), gradient.getEndX(), gradient.getEndY()))
+                                    .toString()
                     );
                 }
             });
@@ -421,18 +676,54 @@ class SVGExporter extends FigureExporter {
         }
 
 
+        /**
+         * Get the class of a style, adding it if it is new
+         *
+         * @param style the style, as CSS declarations
+         * @return the name of the class
+         */
+        final String addStyleClass(final CharSequence style) {
+            if (lastStyle != null && lastStyle.contentEquals(style)) {
+                return lastStyleClass;
+            }
+            final String key = style.toString();
+            String styleClass = styleClasses.get(key);
+            if (styleClass == null) {
+                if (isClosed) {
+                    throw new UnsupportedOperationException("Definitions are closed. No more can be added to the store.");
+                }
+                styleClasses.put(key, styleClass = "s" + styleClasses.size());
+                styles.append("\t\t\t.").append(styleClass).append(" {").append(key).append("}\n");
+            }
+            lastStyle = key;
+            return lastStyleClass = styleClass;
+        }
+
+        /**
+         * Add a symbol and return the id
+         *
+         * @param key     the key of the symbol
+         * @param content the function used to generate the elements of the symbol, if it is absent
+         * @return the id of the symbol
+         */
+        final String addSymbol(final Object key, final Supplier<String> content) {
+            return add(key, () -> add("symbol-", "symbol", content.get(), "overflow=\"visible\" "));
+        }
+
         /**
          * @return the SVG definitions as a string
          */
         final String get() {
-            if (buffer.length() == 0) {
-                return buffer.toString();
-            }
-            if (isClosed) {
-                return buffer.toString();
+            if (!isClosed) {
+                isClosed = true;
+                if (styles.length() != 0) {
+                    buffer.insert(0, styles.insert(0, "\t\t<style>\n").append("\t\t</style>\n"));
+                }
+                if (buffer.length() != 0) {
+                    buffer.insert(0, "\t<defs>\n").append("\t</defs>\n");
+                }
             }
-            isClosed = true;
-            return buffer.append("\t</defs>\n").toString();
+            return buffer.toString();
         }
 
 
@@ -445,12 +736,12 @@ class SVGExporter extends FigureExporter {
                     return add(hash, () -> add(
                             "clipping-path-",
                             "clipPath",
-                            String.format("\t\t\t<ellipse cx=\"%s\" cy=\"%s\" rx=\"%s\" ry=\"%s\" />\n",
-                                    convertToString(x + rx),
-                                    convertToString(y + ry),
-                                    convertToString(rx),
-                                    convertToString(ry)
-                            ),
+                            appendAttribute(appendAttribute(appendAttribute(appendAttribute(new StringBuilder("\t\t\t<ellipse "),
+                                    "cx", x + rx),
+                                    "cy", y + ry),
+                                    "rx", rx),
+                                    "ry", ry)
+                                    .append("/>\n").toString(),
                             EMPTY_STRING
                             )
                     );
@@ -458,12 +749,12 @@ class SVGExporter extends FigureExporter {
                     return add(hash, () -> add(
                             "clipping-path-",
                             "clipPath",
-                            String.format("\t\t\t<rect x=\"%s\" y=\"%s\" width=\"%s\" height=\"%s\" />\n",
-                                    convertToString(x),
-                                    convertToString(y),
-                                    convertToString(width),
-                                    convertToString(height)
-                            ),
+                            appendAttribute(appendAttribute(appendAttribute(appendAttribute(new StringBuilder("\t\t\t<rect "),
+                                    "x", x),
+                                    "y", y),
+                                    "width", width),
+                                    "height", height)
+                                    .append("/>\n").toString(),
                             EMPTY_STRING
                             )
                     );
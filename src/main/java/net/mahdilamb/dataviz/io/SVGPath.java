@@ -0,0 +1,209 @@
+package net.mahdilamb.dataviz.io;
+
+import java.util.Arrays;
+
+import static net.mahdilamb.dataviz.io.SVGUtils.appendPoint;
+
+/**
+ * The commands of an SVG path, stored as primitives until the path is written. A line that continues the previous line
+ * in the same direction extends that line rather than adding a segment, as the stroke of both is the same. When paths
+ * are appended to each other, a line also extends the previous line across a move to its end. This restarts the dash
+ * pattern, so paths should only be appended when their stroke is not dashed
+ */
+final class SVGPath {
+    private static final byte MOVE = 0, LINE = 1, QUAD = 2, CUBIC = 3, ARC = 4, CLOSE = 5;
+
+    private byte[] ops = new byte[16];
+    //the index of the first coordinate of each command, with the end of the coordinates after the last command
+    private int[] starts = new int[17];
+    private double[] coords = new double[64];
+    private int numOps = 0;
+
+    /**
+     * @return whether the path has no commands
+     */
+    boolean isEmpty() {
+        return numOps == 0;
+    }
+
+    /**
+     * @return the number of commands in the path
+     */
+    int size() {
+        return numOps;
+    }
+
+    /**
+     * Remove all the commands
+     */
+    void clear() {
+        numOps = 0;
+    }
+
+    private void add(byte op, double... values) {
+        if (numOps == ops.length) {
+            ops = Arrays.copyOf(ops, numOps << 1);
+            starts = Arrays.copyOf(starts, (numOps << 1) + 1);
+        }
+        final int start = starts[numOps];
+        if (start + values.length > coords.length) {
+            coords = Arrays.copyOf(coords, Math.max(coords.length << 1, start + values.length));
+        }
+        System.arraycopy(values, 0, coords, start, values.length);
+        ops[numOps++] = op;
+        starts[numOps] = start + values.length;
+    }
+
+    private void add(byte op, double x, double y) {
+        if (numOps == ops.length) {
+            ops = Arrays.copyOf(ops, numOps << 1);
+            starts = Arrays.copyOf(starts, (numOps << 1) + 1);
+        }
+        final int start = starts[numOps];
+        if (start + 2 > coords.length) {
+            coords = Arrays.copyOf(coords, coords.length << 1);
+        }
+        coords[start] = x;
+        coords[start + 1] = y;
+        ops[numOps++] = op;
+        starts[numOps] = start + 2;
+    }
+
+    /**
+     * @return the index of the x coordinate of the end point of a command
+     */
+    private int end(int op) {
+        return starts[op + 1] - 2;
+    }
+
+    void moveTo(double x, double y) {
+        if (numOps > 0 && ops[numOps - 1] == MOVE) {
+            //only the last of consecutive moves has an effect
+            coords[end(numOps - 1)] = x;
+            coords[end(numOps - 1) + 1] = y;
+            return;
+        }
+        add(MOVE, x, y);
+    }
+
+    void lineTo(double x, double y) {
+        lineTo(x, y, false);
+    }
+
+    /**
+     * @param x           the x position of the end of the line
+     * @param y           the y position of the end of the line
+     * @param acrossMoves whether the line can extend the previous line across a move to the end of that line
+     */
+    private void lineTo(double x, double y, boolean acrossMoves) {
+        if (numOps == 0) {
+            moveTo(x, y);
+            return;
+        }
+        //the line that this may extend, either the last command or the line before a move to its end
+        int line = numOps - 1;
+        boolean moved = false;
+        if (acrossMoves && ops[line] == MOVE && line > 0 && ops[line - 1] == LINE
+                && coords[end(line)] == coords[end(line - 1)] && coords[end(line) + 1] == coords[end(line - 1) + 1]) {
+            --line;
+            moved = true;
+        }
+        if (ops[line] == LINE && line > 0 && ops[line - 1] != CLOSE) {
+            final int e = end(line), s = end(line - 1);
+            final double x0 = coords[s], y0 = coords[s + 1],
+                    x1 = coords[e], y1 = coords[e + 1];
+            final double dx0 = x1 - x0, dy0 = y1 - y0,
+                    dx1 = x - x1, dy1 = y - y1;
+            if (dx0 * dy1 == dy0 * dx1 && dx0 * dx1 + dy0 * dy1 > 0) {
+                coords[e] = x;
+                coords[e + 1] = y;
+                if (moved) {
+                    --numOps;
+                }
+                return;
+            }
+        }
+        add(LINE, x, y);
+    }
+
+    void quadTo(double cpX, double cpY, double endX, double endY) {
+        add(QUAD, cpX, cpY, endX, endY);
+    }
+
+    void curveTo(double cp1X, double cp1Y, double cp2X, double cp2Y, double endX, double endY) {
+        add(CUBIC, cp1X, cp1Y, cp2X, cp2Y, endX, endY);
+    }
+
+    void arcTo(double rx, double ry, double xAxisRotationDegrees, boolean largeArc, boolean sweepFlag, double endX, double endY) {
+        add(ARC, rx, ry, xAxisRotationDegrees, largeArc ? 1 : 0, sweepFlag ? 1 : 0, endX, endY);
+    }
+
+    void closePath() {
+        add(CLOSE);
+    }
+
+    /**
+     * Add the commands of another path to the end of this path. The stroke of the paths must not be dashed
+     *
+     * @param other the other path
+     */
+    void append(final SVGPath other) {
+        for (int i = 0; i < other.numOps; ++i) {
+            final int s = other.starts[i];
+            final double[] c = other.coords;
+            switch (other.ops[i]) {
+                case MOVE:
+                    moveTo(c[s], c[s + 1]);
+                    break;
+                case LINE:
+                    lineTo(c[s], c[s + 1], true);
+                    break;
+                case CLOSE:
+                    closePath();
+                    break;
+                default:
+                    add(other.ops[i], Arrays.copyOfRange(c, s, other.starts[i + 1]));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Append the path as the value of a {@code d} attribute
+     *
+     * @param out the builder to append to
+     * @return the builder
+     */
+    StringBuilder appendTo(final StringBuilder out) {
+        for (int i = 0; i < numOps; ++i) {
+            final int s = starts[i];
+            switch (ops[i]) {
+                case MOVE:
+                    appendPoint(out.append("M "), coords[s], coords[s + 1]);
+                    break;
+                case LINE:
+                    appendPoint(out.append("L "), coords[s], coords[s + 1]);
+                    break;
+                case QUAD:
+                    appendPoint(appendPoint(out.append("Q "), coords[s], coords[s + 1]).append(", "), coords[s + 2], coords[s + 3]);
+                    break;
+                case CUBIC:
+                    appendPoint(out.append("C "), coords[s], coords[s + 1]).append(", ");
+                    appendPoint(out, coords[s + 2], coords[s + 3]).append(", ");
+                    appendPoint(out, coords[s + 4], coords[s + 5]);
+                    break;
+                case ARC:
+                    appendPoint(out.append("A "), coords[s], coords[s + 1]);
+                    SVGUtils.append(out, coords[s + 2]).append(' ')
+                            .append((int) coords[s + 3]).append(' ')
+                            .append((int) coords[s + 4]).append(' ');
+                    appendPoint(out, coords[s + 5], coords[s + 6]);
+                    break;
+                default:
+                    out.append("Z ");
+                    break;
+            }
+        }
+        return out;
+    }
+}
@@ -5,12 +5,11 @@ import net.mahdilamb.dataviz.graphics.Font;
 import net.mahdilamb.dataviz.graphics.Gradient;
 import net.mahdilamb.dataviz.graphics.Stroke;
 import net.mahdilamb.dataviz.utils.ColorUtils;
+import net.mahdilamb.dataviz.utils.Ryu;
 import net.mahdilamb.dataviz.utils.Variant;
 
 import java.awt.*;
-import java.text.DecimalFormat;
 import java.util.Base64;
-import java.util.Stack;
 
 import static net.mahdilamb.dataviz.utils.StringUtils.EMPTY_STRING;
 
@@ -23,7 +22,10 @@ final class SVGUtils {
 
     }
 
-    static final DecimalFormat DECIMAL_FORMAT = new DecimalFormat("0.000000");
+    /**
+     * The maximum number of decimal places of the numbers in the SVG
+     */
+    private static final int DECIMAL_PLACES = 6;
 
     /**
      * Convert color to CSS compatible format
@@ -32,11 +34,22 @@ final class SVGUtils {
      * @return CSS compatible representation
      */
     static String convertToString(final Color color) {
+        return appendColor(new StringBuilder(24), color).toString();
+    }
+
+    /**
+     * Append a color in a CSS compatible format
+     *
+     * @param out   the builder to append to
+     * @param color color to convert
+     * @return the builder
+     */
+    static StringBuilder appendColor(final StringBuilder out, final Color color) {
         if (color.getAlpha() == 255) {
-            return String.format("rgb(%d,%d,%d)", color.getRed(), color.getGreen(), color.getBlue());
+            return out.append("rgb(").append(color.getRed()).append(',').append(color.getGreen()).append(',').append(color.getBlue()).append(')');
         }
-        return String.format("rgba(%d,%d,%d,%s)", color.getRed(), color.getGreen(), color.getBlue(), convertToString(color.getAlpha() / 255f));
-
+        out.append("rgba(").append(color.getRed()).append(',').append(color.getGreen()).append(',').append(color.getBlue()).append(',');
+        return append(out, color.getAlpha() / 255f).append(')');
     }
 
     /**
@@ -46,110 +59,159 @@ final class SVGUtils {
      * @return shortest representation
      */
     static String convertToString(final double v) {
-        if (v == ((long) v)) {
-            return Long.toString(Math.round(v));
-        }
-        String r = DECIMAL_FORMAT.format(v);
-        final int dot = r.indexOf('.');
+        return Ryu.toFixedString(v, DECIMAL_PLACES);
+    }
 
-        char z = '0';
-        int zero = r.lastIndexOf(z);
-        if (zero <= 0 || zero != r.length() - 1) {
-            return r;
-        }
-        //noinspection StatementWithEmptyBody
-        while (r.charAt(--zero) == z && zero >= dot) ;
-        return r.substring(0, zero + 1);
+    /**
+     * Append the shortest representation of a double
+     *
+     * @param out the builder to append to
+     * @param v   double to convert
+     * @return the builder
+     */
+    static StringBuilder append(final StringBuilder out, final double v) {
+        return Ryu.appendFixed(out, v, DECIMAL_PLACES);
     }
 
-    static int convertToString(final boolean val) {
-        return val ? 1 : 0;
+    /**
+     * Append a pair of coordinates, followed by a space
+     *
+     * @param out the builder to append to
+     * @param x   the x coordinate
+     * @param y   the y coordinate
+     * @return the builder
+     */
+    static StringBuilder appendPoint(final StringBuilder out, final double x, final double y) {
+        return append(append(out, x).append(' '), y).append(' ');
     }
 
     /**
-     * Convert fill to css style
+     * Append an attribute with a numeric value, followed by a space
      *
+     * @param out   the builder to append to
+     * @param name  the name of the attribute
+     * @param value the value of the attribute
+     * @return the builder
+     */
+    static StringBuilder appendAttribute(final StringBuilder out, final String name, final double value) {
+        return append(out.append(name).append("=\""), value).append("\" ");
+    }
+
+    /**
+     * Append a coordinate attribute, followed by a space. The attribute is omitted if the value is 0, as that is the
+     * default
+     *
+     * @param out   the builder to append to
+     * @param name  the name of the attribute
+     * @param value the value of the attribute
+     * @return the builder
+     */
+    static StringBuilder appendCoordinate(final StringBuilder out, final String name, final double value) {
+        return value == 0 ? out : appendAttribute(out, name, value);
+    }
+
+    /**
+     * Append a fill as css style
+     *
+     * @param out  the builder to append to
      * @param defs the svg definition
      * @param fill fill to convert
-     * @return SVG representation of the fill
+     * @return the builder
      */
-    static String convertToString(final SVGExporter.SVGDefinitions defs, final Variant<Color, Gradient> fill, double alpha) {
+    static StringBuilder appendFill(final StringBuilder out, final SVGExporter.SVGDefinitions defs, final Variant<Color, Gradient> fill, double alpha) {
         if (fill == null) {
-            return "fill:none; ";
+            return out.append("fill:none; ");
         }
         if (fill.isB()) {
-            return String.format("fill:url('#%s'); ", defs.addGradient(fill.asB(), alpha));
-        } else {
-            return String.format("fill:%s; ", convertToString(alpha==1?fill.asA():ColorUtils.applyAlpha(fill.asA(),(float)alpha)));
+            return out.append("fill:url('#").append(defs.addGradient(fill.asB(), alpha)).append("'); ");
         }
+        return appendColor(out.append("fill:"), alpha == 1 ? fill.asA() : ColorUtils.applyAlpha(fill.asA(), (float) alpha)).append("; ");
     }
 
     private static String convertToString(Stroke.LineJoin join) {
-        if (join == Stroke.LineJoin.MITER) {
-            return EMPTY_STRING;
+        switch (join) {
+            case MITER:
+                return EMPTY_STRING;
+            case BEVEL:
+                return "stroke-linejoin=\"bevel\" ";
+            default:
+                return "stroke-linejoin=\"round\" ";
         }
-        return String.format("stroke-linejoin=\"%s\" ", join == Stroke.LineJoin.BEVEL ? "bevel" : "round");
     }
 
     private static String convertToString(Stroke.EndCap endCap) {
-        if (endCap == Stroke.EndCap.BUTT) {
-            return EMPTY_STRING;
-        }
-        return String.format("stroke-linecap=\"%s\" ", endCap == Stroke.EndCap.ROUND ? "round" : "square");
-    }
-
-    private static String convertToString(final String open, double[] arr, final String close) {
-        if (arr == null || arr.length == 0) {
-            return EMPTY_STRING;
-        }
-        if (arr.length == 1) {
-            return convertToString(arr[0]);
-        }
-        final StringBuilder sb = new StringBuilder(open);
-        for (double v : arr) {
-            sb.append(convertToString(v)).append(' ');
+        switch (endCap) {
+            case BUTT:
+                return EMPTY_STRING;
+            case ROUND:
+                return "stroke-linecap=\"round\" ";
+            default:
+                return "stroke-linecap=\"square\" ";
         }
-        return sb.append(close).toString();
-
     }
 
     /**
-     * Convert stroke to css style
+     * Append the attributes of a stroke
      *
+     * @param out    the builder to append to
      * @param stroke stroke to convert
-     * @return SVG representation of the stroke
+     * @return the builder
      */
-    static String convertToString(final Stroke stroke) {
+    static StringBuilder appendStroke(final StringBuilder out, final Stroke stroke) {
         if (stroke == null) {
-            return EMPTY_STRING;
+            return out;
+        }
+        if (stroke.getWidth() != 1) {
+            //1 is the default width
+            appendAttribute(out, "stroke-width", stroke.getWidth());
+        }
+        out.append(convertToString(stroke.getEndCap()))
+                .append(convertToString(stroke.getLineJoin()));
+        if (Double.compare(stroke.getMiterLimit(), 4) != 0) {
+            appendAttribute(out, "stroke-miterlimit", stroke.getMiterLimit());
         }
-        return String.format("stroke-width=\"%s\" %s%s%s%s%s",
-                convertToString(stroke.getWidth()),
-                convertToString(stroke.getEndCap()),
-                convertToString(stroke.getLineJoin()),
-                Double.compare(stroke.getMiterLimit(), 4) == 0 ? EMPTY_STRING : String.format("stroke-miterlimit=\"%s\" ", convertToString(stroke.getMiterLimit())),
-                Double.compare(stroke.getDashOffset(), 0) == 0 ? EMPTY_STRING : String.format("stroke-dashoffset=\"%s\" ", convertToString(stroke.getDashOffset())),
-                stroke.numDashes() == 0 ? EMPTY_STRING : convertToString("stroke-dasharray=\"", stroke.getDashes(), "\" ")
-
-        );
+        if (Double.compare(stroke.getDashOffset(), 0) != 0) {
+            appendAttribute(out, "stroke-dashoffset", stroke.getDashOffset());
+        }
+        if (stroke.numDashes() != 0) {
+            out.append("stroke-dasharray=\"");
+            for (final double dash : stroke.getDashes()) {
+                append(out, dash).append(' ');
+            }
+            out.append("\" ");
+        }
+        return out;
     }
 
     /**
-     * Convert a style to svg-compatible, adding to definitions if needs be
+     * Append a style, adding to definitions if needs be. The fill and stroke color are set through a class that is
+     * shared by all the elements with the same fill and stroke color
      *
+     * @param out    the builder to append to
      * @param defs   svg definitions
      * @param fill   fill
      * @param stroke stroke
-     * @return style string representing the style
+     * @return the builder
      */
-    static String convertToString(final SVGExporter.SVGDefinitions defs, final Variant<Color, Gradient> fill, final Stroke stroke, Color strokeColor, double globalAlpha) {
+    static StringBuilder appendStyle(final StringBuilder out, final SVGExporter.SVGDefinitions defs, final Variant<Color, Gradient> fill, final Stroke stroke, Color strokeColor, double globalAlpha) {
+        if (defs.inheritColors) {
+            //the element of a symbol is either filled or stroked, with the color set where the symbol is used
+            out.append(strokeColor == null ? "stroke=\"none\" " : "fill=\"none\" ");
+            return appendStroke(out, stroke);
+        }
         if (globalAlpha != 1) {
             if (strokeColor != null) {
                 strokeColor = ColorUtils.applyAlpha(strokeColor, (float) globalAlpha);
             }
         }
-
-        return String.format("style=\"%s%s\" %s", convertToString(defs, fill,globalAlpha), strokeColor == null ? EMPTY_STRING : String.format("stroke:%s", convertToString(strokeColor)), convertToString(stroke));
+        final StringBuilder style = defs.style;
+        style.setLength(0);
+        appendFill(style, defs, fill, globalAlpha);
+        if (strokeColor != null) {
+            appendColor(style.append("stroke:"), strokeColor);
+        }
+        out.append("class=\"").append(defs.addStyleClass(style)).append("\" ");
+        return appendStroke(out, stroke);
     }
 
     /**
@@ -196,8 +258,9 @@ final class SVGUtils {
     }
 
     /**
-     * Convert a rectangle to an SVG element representation
+     * Append a rectangle as an SVG element
      *
+     * @param out    the builder to append to
      * @param x      top-left x of rectangle
      * @param y      top-left y of rectangle
      * @param width  width of rectangle
@@ -206,23 +269,21 @@ final class SVGUtils {
      * @param indent the current indent
      * @param stroke the stroke of the rectangle
      * @param fill   the fill of the rectangle
-     * @return the SVG element of the rectangle
+     * @return the builder
      */
-    static String rectangleToString(double x, double y, double width, double height, final SVGExporter.SVGDefinitions defs, final StringBuilder indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
-        return String.format(
-                "%s<rect x=\"%s\" y=\"%s\" width=\"%s\" height=\"%s\" %s/>%n",
-                indent.toString(),
-                convertToString(x),
-                convertToString(y),
-                convertToString(width),
-                convertToString(height),
-                convertToString(defs, fill, stroke, strokeColor, globalAlpha)
-        );
+    static StringBuilder appendRectangle(final StringBuilder out, double x, double y, double width, double height, final SVGExporter.SVGDefinitions defs, final CharSequence indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+        out.append(indent).append("<rect ");
+        appendCoordinate(out, "x", x);
+        appendCoordinate(out, "y", y);
+        appendAttribute(out, "width", width);
+        appendAttribute(out, "height", height);
+        return appendStyle(out, defs, fill, stroke, strokeColor, globalAlpha).append("/>\n");
     }
 
     /**
-     * Convert an ellipse to an SVG element
+     * Append an ellipse as an SVG element
      *
+     * @param out    the builder to append to
      * @param x      top-left x of ellipse
      * @param y      top-left y of ellipse
      * @param width  width of ellipse
@@ -231,25 +292,23 @@ final class SVGUtils {
      * @param indent the current indent
      * @param stroke the stroke of the ellipse
      * @param fill   the fill of the ellipse
-     * @return the SVG element of the ellipse
+     * @return the builder
      */
-    static String ellipseToString(double x, double y, double width, double height, final SVGExporter.SVGDefinitions defs, final StringBuilder indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+    static StringBuilder appendEllipse(final StringBuilder out, double x, double y, double width, double height, final SVGExporter.SVGDefinitions defs, final CharSequence indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
         final double rx = width * .5;
         final double ry = height * .5;
-        return String.format(
-                "%s<ellipse cx=\"%s\" cy=\"%s\" rx=\"%s\" ry=\"%s\" %s/>%n",
-                indent.toString(),
-                convertToString(x + rx),
-                convertToString(y + ry),
-                convertToString(rx),
-                convertToString(ry),
-                convertToString(defs, fill, stroke, strokeColor, globalAlpha)
-        );
+        out.append(indent).append("<ellipse ");
+        appendCoordinate(out, "cx", x + rx);
+        appendCoordinate(out, "cy", y + ry);
+        appendAttribute(out, "rx", rx);
+        appendAttribute(out, "ry", ry);
+        return appendStyle(out, defs, fill, stroke, strokeColor, globalAlpha).append("/>\n");
     }
 
     /**
-     * Convert a rounded rectangle to an SVG element representation
+     * Append a rounded rectangle as an SVG element
      *
+     * @param out       the builder to append to
      * @param x         top-left x of rounded rectangle
      * @param y         top-left y of rounded rectangle
      * @param width     width of rounded rectangle
@@ -260,50 +319,24 @@ final class SVGUtils {
      * @param indent    the current indent
      * @param stroke    the stroke of the rounded rectangle
      * @param fill      the fill of the rounded rectangle
-     * @return the SVG element of the rounded rectangle
-     */
-    static String roundedRectangleToString(double x, double y, double width, double height,
-                                           double arcWidth, double arcHeight, final SVGExporter.SVGDefinitions defs, final StringBuilder indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
-        return String.format(
-                "%s<rect x=\"%s\" y=\"%s\" rx=\"%s\" ry=\"%s\" width=\"%s\" height=\"%s\" %s/>%n",
-                indent.toString(),
-                convertToString(x),
-                convertToString(y),
-                convertToString(arcWidth * .5),
-                convertToString(arcHeight * .5),
-                convertToString(width),
-                convertToString(height),
-                convertToString(defs, fill, stroke, strokeColor, globalAlpha)
-        );
-    }
-
-    /**
-     * Convert a line to an SVG element
-     *
-     * @param x0     the start x
-     * @param y0     the start y
-     * @param x1     the end x
-     * @param y1     the end y
-     * @param defs   the SVG definitions to add to, if required
-     * @param indent the current indent
-     * @param stroke the stroke of the rounded rectangle
-     * @return an SVG element representation of the line
+     * @return the builder
      */
-    static String lineToString(double x0, double y0, double x1, double y1, final SVGExporter.SVGDefinitions defs, final StringBuilder indent, final Stroke stroke, final Color strokeColor, double globalAlpha) {
-        return String.format(
-                "%s<line x1=\"%s\" y1=\"%s\" x2=\"%s\" y2=\"%s\" %s/>%n",
-                indent.toString(),
-                convertToString(x0),
-                convertToString(y0),
-                convertToString(x1),
-                convertToString(y1),
-                convertToString(defs, null, stroke, strokeColor, globalAlpha)
-        );
+    static StringBuilder appendRoundedRectangle(final StringBuilder out, double x, double y, double width, double height,
+                                                double arcWidth, double arcHeight, final SVGExporter.SVGDefinitions defs, final CharSequence indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+        out.append(indent).append("<rect ");
+        appendCoordinate(out, "x", x);
+        appendCoordinate(out, "y", y);
+        appendAttribute(out, "rx", arcWidth * .5);
+        appendAttribute(out, "ry", arcHeight * .5);
+        appendAttribute(out, "width", width);
+        appendAttribute(out, "height", height);
+        return appendStyle(out, defs, fill, stroke, strokeColor, globalAlpha).append("/>\n");
     }
 
     /**
-     * Convert a circle to an SVG representation
+     * Append a circle as an SVG element
      *
+     * @param out    the builder to append to
      * @param x      the top-left x
      * @param y      the top-left x
      * @param r      the radius
@@ -311,152 +344,64 @@ final class SVGUtils {
      * @param indent the current indent
      * @param stroke the stroke of the rounded rectangle
      * @param fill   the fill of the rounded rectangle
-     * @return an SVG element representation of a circle
+     * @return the builder
      */
-    static String circleToString(double x, double y, double r, final SVGExporter.SVGDefinitions defs, final StringBuilder indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
-        return String.format(
-                "%s<circle cx=\"%s\" cy=\"%s\" r=\"%s\" %s/>%n",
-                indent.toString(),
-                convertToString(x + r),
-                convertToString(y + r),
-                convertToString(r),
-                convertToString(defs, fill, stroke, strokeColor, globalAlpha)
-        );
+    static StringBuilder appendCircle(final StringBuilder out, double x, double y, double r, final SVGExporter.SVGDefinitions defs, final CharSequence indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+        out.append(indent).append("<circle ");
+        appendCoordinate(out, "cx", x + r);
+        appendCoordinate(out, "cy", y + r);
+        appendAttribute(out, "r", r);
+        return appendStyle(out, defs, fill, stroke, strokeColor, globalAlpha).append("/>\n");
     }
 
-    static String pathToString(String pathD, final SVGExporter.SVGDefinitions defs, final StringBuilder indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
-        return String.format(
-                "%s<path d=\"%s\" %s/>%n",
-                indent.toString(),
-                pathD,
-                convertToString(defs, fill, stroke, strokeColor, globalAlpha));
+    static StringBuilder appendPath(final StringBuilder out, final SVGPath pathD, final SVGExporter.SVGDefinitions defs, final CharSequence indent, final Stroke stroke, final Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+        pathD.appendTo(out.append(indent).append("<path d=\"")).append("\" ");
+        return appendStyle(out, defs, fill, stroke, strokeColor, globalAlpha).append("/>\n");
     }
 
-    static String polygonToString(double[] xPoints, double[] yPoints, int numPoints, SVGExporter.SVGDefinitions defs, StringBuilder indent, Stroke stroke, Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
-        final StringBuilder points = new StringBuilder(indent.toString()).append("<polygon points=\"");
+    private static StringBuilder appendPoints(final StringBuilder out, double[] xPoints, double[] yPoints, int numPoints) {
+        out.append("points=\"");
         for (int i = 0; i < numPoints; ++i) {
-            points.append(String.format("%s,%s ", convertToString(xPoints[i]), convertToString(yPoints[i])));
+            append(append(out, xPoints[i]).append(','), yPoints[i]).append(' ');
         }
-        return points.append("\" ").append(convertToString(defs, fill, stroke, strokeColor, globalAlpha)).append("/>\n").toString();
+        return out.append("\" ");
     }
 
-    static String polylineToString(double[] xPoints, double[] yPoints, int numPoints, SVGExporter.SVGDefinitions defs, StringBuilder indent, Stroke stroke, final Color strokeColor, double globalAlpha) {
-        final StringBuilder points = new StringBuilder(indent.toString()).append("<polyline points=\"");
-        for (int i = 0; i < numPoints; ++i) {
-            points.append(String.format("%s,%s ", convertToString(xPoints[i]), convertToString(yPoints[i])));
-        }
-        return points.append("\" ").append(convertToString(defs, null, stroke, strokeColor, globalAlpha)).append("/>\n").toString();
+    static StringBuilder appendPolygon(final StringBuilder out, double[] xPoints, double[] yPoints, int numPoints, SVGExporter.SVGDefinitions defs, CharSequence indent, Stroke stroke, Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+        appendPoints(out.append(indent).append("<polygon "), xPoints, yPoints, numPoints);
+        return appendStyle(out, defs, fill, stroke, strokeColor, globalAlpha).append("/>\n");
     }
 
-    static String textToString(final String text, double x, double y, net.mahdilamb.dataviz.graphics.Font font, SVGExporter.SVGDefinitions defs, StringBuilder indent, Stroke stroke, Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
-        return String.format(
-                "%s<text x=\"%s\" y=\"%s\" %sfont-size=\"%s\" %s%s%s>%s</text>%n",
-                indent.toString(),
-                convertToString(x),
-                convertToString(y),
-                convertToString(font.getFamily()),
-                convertToString(font.getSize()),
-                convertToString(font.getWeight()),
-                convertToString(font.getStyle()),
-                convertToString(defs, fill, stroke, strokeColor, globalAlpha),
-                text
-        );
-
+    private static StringBuilder appendTextAttributes(final StringBuilder out, double x, double y, net.mahdilamb.dataviz.graphics.Font font, SVGExporter.SVGDefinitions defs, CharSequence indent, Stroke stroke, Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+        out.append(indent).append("<text ");
+        appendCoordinate(out, "x", x);
+        appendCoordinate(out, "y", y);
+        out.append(convertToString(font.getFamily()));
+        appendAttribute(out, "font-size", font.getSize())
+                .append(convertToString(font.getWeight()))
+                .append(convertToString(font.getStyle()));
+        return appendStyle(out, defs, fill, stroke, strokeColor, globalAlpha);
     }
 
-    static String rotatedTextToString(final String text, double x, double y, double rotationDegrees, double pivotX, double pivotY, net.mahdilamb.dataviz.graphics.Font font, SVGExporter.SVGDefinitions defs, StringBuilder indent, Stroke stroke, Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
-        return String.format(
-                "%s<text x=\"%s\" y=\"%s\" %sfont-size=\"%s\" %s%s%s transform=\"rotate(%s,%s,%s)\">%s</text>%n",
-                indent.toString(),
-                convertToString(x),
-                convertToString(y),
-                convertToString(font.getFamily()),
-                convertToString(font.getSize()),
-                convertToString(font.getWeight()),
-                convertToString(font.getStyle()),
-                convertToString(defs, fill, stroke, strokeColor, globalAlpha),
-                convertToString(rotationDegrees),
-                convertToString(pivotX),
-                convertToString(pivotY),
-                text
-        );
-
-    }
-
-    static String imageToString(final byte[] bytes, double x, double y, double width, double height, StringBuilder indent) {
-        return String.format("%s<image x=\"%s\" y=\"%s\" width=\"%s\" height=\"%s\" xlink:href=\"data:image/png;base64,%s\" />%n",
-                indent,
-                convertToString(x),
-                convertToString(y),
-                convertToString(width),
-                convertToString(height),
-                Base64.getMimeEncoder().encodeToString(bytes)
-        );
-    }
-
-    private static boolean compareRegions(final StringBuilder b, int aStart, int aEnd, int bStart, int bEnd) {
-        if ((aEnd - aStart) != (bEnd - bStart)) {
-            return false;
-        }
-        for (int i = aStart, j = bStart; i < aEnd; ++i, ++j) {
-            if (b.charAt(i) != b.charAt(j)) {
-                return false;
-            }
-        }
-        return true;
+    static StringBuilder appendText(final StringBuilder out, final String text, double x, double y, net.mahdilamb.dataviz.graphics.Font font, SVGExporter.SVGDefinitions defs, CharSequence indent, Stroke stroke, Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+        appendTextAttributes(out, x, y, font, defs, indent, stroke, fill, strokeColor, globalAlpha);
+        return out.append('>').append(text).append("</text>\n");
     }
 
-    private static int tryMerge(final StringBuilder b, int pos, Stack<Runnable> remove) {
-        int i = pos + 1;
-        while (i < b.length()) {
-            if (b.charAt(i) == '<') {
-                break;
-            }
-            ++i;
-        }
-        final String STYLE = "style";
-        final String FILL = "fill:";
-        int posEnd = b.indexOf(STYLE, pos);
-        int iEnd = b.indexOf(STYLE, i);
-        if (posEnd != -1 && iEnd != -1 && iEnd != posEnd && compareRegions(b, pos, posEnd, i, iEnd)) {
-            int c = b.indexOf(">", iEnd),
-                    d = b.indexOf(FILL, pos),
-                    e = b.indexOf(FILL, i),
-                    dEnd = b.indexOf(";", d),
-                    eEnd = b.indexOf(";", e);
-            if (!compareRegions(b, d, dEnd, e, eEnd)) {
-                int f = b.indexOf("fill:none", d);
-                if (f != -1 && f < eEnd) {
-                    if (f > dEnd) {
-                        remove.add(() -> b.delete(dEnd + 1, eEnd + 1)
-
-                        );
-                        return eEnd;
-                    } else {
-                        //TODO none is before
-                    }
-                }
-            }
-        }
-        return pos + 1;
+    static StringBuilder appendRotatedText(final StringBuilder out, final String text, double x, double y, double rotationDegrees, double pivotX, double pivotY, net.mahdilamb.dataviz.graphics.Font font, SVGExporter.SVGDefinitions defs, CharSequence indent, Stroke stroke, Variant<Color, Gradient> fill, final Color strokeColor, double globalAlpha) {
+        appendTextAttributes(out, x, y, font, defs, indent, stroke, fill, strokeColor, globalAlpha);
+        append(out.append("transform=\"rotate("), rotationDegrees).append(',');
+        append(out, pivotX).append(',');
+        append(out, pivotY).append(")\">");
+        return out.append(text).append("</text>\n");
     }
 
-    static void cleanup(final StringBuilder builder) {
-        final Stack<Runnable> delete = new Stack<>();
-        int i = 0;
-        while (i < builder.length()) {
-            final char c = builder.charAt(i);
-            if (c == '<') {
-                i = tryMerge(builder, i, delete);
-                continue;
-            }
-            ++i;
-        }
-        while (!delete.isEmpty()) {
-            final Runnable r = delete.pop();
-            r.run();
-        }
-        //TODO combine connecting lines
-        //TODO do this backwards so that we don't need a queue
+    static StringBuilder appendImage(final StringBuilder out, final byte[] bytes, double x, double y, double width, double height, CharSequence indent) {
+        out.append(indent).append("<image ");
+        appendCoordinate(out, "x", x);
+        appendCoordinate(out, "y", y);
+        appendAttribute(out, "width", width);
+        appendAttribute(out, "height", height);
+        return out.append("xlink:href=\"data:image/png;base64,").append(Base64.getMimeEncoder().encodeToString(bytes)).append("\" />\n");
     }
 }
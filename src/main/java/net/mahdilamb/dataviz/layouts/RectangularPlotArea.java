@@ -6,24 +6,52 @@ import net.mahdilamb.dataviz.figure.Renderer;
 import net.mahdilamb.dataviz.graphics.ClipShape;
 import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
 import net.mahdilamb.dataviz.graphics.Stroke;
+import net.mahdilamb.dataviz.swing.BufferedImageExtended;
+import net.mahdilamb.dataviz.swing.SwingPainter;
+import net.mahdilamb.dataviz.utils.DiskTileCache;
+import net.mahdilamb.dataviz.utils.HoverGrid;
 import net.mahdilamb.dataviz.utils.rtree.Node2D;
 import net.mahdilamb.dataviz.utils.rtree.RTree;
 import net.mahdilamb.dataviz.utils.SpatialCache;
 import net.mahdilamb.dataviz.utils.rtree.RectangularNode;
 
 import java.awt.*;
-import java.util.LinkedList;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class RectangularPlotArea extends PlotArea<XYLayout> {
+    /*
+     * The thread shared by all the plot areas for creating the tiles around the viewport
+     */
+    private static final class Prefetcher {
+        static final ExecutorService INSTANCE = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "dataviz-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * The number of bands per worker thread when drawing directly to a raster canvas (e.g. when exporting)
+     */
+    private static final int BANDS_PER_THREAD = 2;
+    /**
+     * The minimum height of a band, in pixels
+     */
+    private static final double MIN_BAND_HEIGHT = 64;
+
     /**
      * LRU based buffer for the plot area
      */
     static final class RectangularPlotAreaBufferStrategy extends BufferingStrategy.CustomBufferedStrategy<RectangularPlotArea, SpatialCache<GraphicsBuffer>> {
         static final RectangularPlotAreaBufferStrategy INSTANCE = new RectangularPlotAreaBufferStrategy();
-        private volatile ExecutorService background;
+
         private RectangularPlotAreaBufferStrategy() {
             super();
         }
@@ -38,6 +66,7 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
             }
             final GraphicsBuffer tile = createBuffer(width, height, minX + component.getX(), minY + component.getY(), 0, 0, 0, 0);
             component.drawShapes(renderer, tile, xMin, yMin, xMax, yMax);
+            component.hover.invalidate(minX, minY, minX + width, minY + height);
             return tile;
         }
         protected GraphicsBuffer createBackgroundTile(final RectangularPlotArea component, Renderer renderer, GraphicsBuffer context, double minX, double minY, long width, long height) {
@@ -50,8 +79,19 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
             }
             final GraphicsBuffer tile = createBufferNonMain(width, height, minX + component.getX(), minY + component.getY(), 0, 0, 0, 0);
             component.drawShapes(renderer, tile, xMin, yMin, xMax, yMax);
+            component.hover.invalidate(minX, minY, minX + width, minY + height);
+            return tile;
+        }
+        protected GraphicsBuffer loadTile(final RectangularPlotArea component, long key, double minX, double minY, int width, int height) {
+            final BufferedImage image = component.diskCache.load(key);
+            if (image == null || image.getWidth() != width || image.getHeight() != height) {
+                return null;
+            }
+            final BufferedImageExtended tile = (BufferedImageExtended) createBufferNonMain(width, height, minX + component.getX(), minY + component.getY(), 0, 0, 0, 0);
+            tile.setRGB(0, 0, width, height, image.getRGB(0, 0, width, height, null, 0, width), 0, width);
             return tile;
         }
+
         @Override
         protected void drawBuffered(final RectangularPlotArea plotArea, Renderer renderer, GraphicsBuffer context) {
             context.setClip(ClipShape.RECTANGLE, plotArea.getX(), plotArea.getY(), plotArea.getWidth(), plotArea.getHeight());
@@ -62,35 +102,56 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
                 cache = setBufferStore(plotArea, new SpatialCache<>(128, tileSize, tileSize,
                         (a, b, c, d) -> createTile(plotArea, renderer, context, a, b, c, d),
                         (a, b, c, d) -> createBackgroundTile(plotArea, renderer, context, a, b, c, d),
-                        (x, y, tile) -> drawBuffer(context, tile, plotArea.getX() + x, plotArea.getY() + y)
+                        (x, y, tile) -> drawBuffer(context, tile, plotArea.getX() + x, plotArea.getY() + y),
+                        RectangularPlotAreaBufferStrategy::getBytes,
+                        plotArea.cacheStatistics
                 ));
+                if (plotArea.diskCache != null) {
+                    cache.setPersistentTier(new SpatialCache.PersistentTier<>() {
+                        @Override
+                        public GraphicsBuffer load(long key, double x, double y, int width, int height) {
+                            return loadTile(plotArea, key, x, y, width, height);
+                        }
+
+                        @Override
+                        public void store(long key, GraphicsBuffer tile) {
+                            plotArea.diskCache.store(key, (BufferedImageExtended) tile);
+                        }
+                    }, plotArea::computeFingerprint);
+                }
             }
             cache.draw(
                     plotArea.getWidth(), plotArea.getHeight(),
                     plotArea.layout.getXAxis().reversed, plotArea.layout.getYAxis().reversed,
                     plotArea.layout.getXAxis().lower, plotArea.layout.getYAxis().lower, plotArea.layout.getXAxis().upper, plotArea.layout.getYAxis().upper
             );
-            if (background!=null){
-                background.shutdown();
-                background=null;
+            final Future<?> previous = plotArea.prefetch;
+            if (previous != null) {
+                //the viewport has moved, so the previous prefetch is stale
+                previous.cancel(false);
             }
-            background= Executors.newSingleThreadExecutor();
-            SpatialCache<GraphicsBuffer> finalCache = cache;
-            background.submit(()->{
-
-                finalCache.backgroundCreate(
-                        plotArea.getWidth(), plotArea.getHeight(),
-                        plotArea.layout.getXAxis().reversed, plotArea.layout.getYAxis().reversed,
-                        plotArea.layout.getXAxis().lower, plotArea.layout.getYAxis().lower,
-                        plotArea.layout.getXAxis().upper, plotArea.layout.getYAxis().upper,
-                        1,1
-                );
-            });
+            final SpatialCache<GraphicsBuffer> finalCache = cache;
+            plotArea.prefetch = Prefetcher.INSTANCE.submit(() -> finalCache.backgroundCreate(
+                    plotArea.getWidth(), plotArea.getHeight(),
+                    plotArea.layout.getXAxis().reversed, plotArea.layout.getYAxis().reversed,
+                    plotArea.layout.getXAxis().lower, plotArea.layout.getYAxis().lower,
+                    plotArea.layout.getXAxis().upper, plotArea.layout.getYAxis().upper,
+                    1, 1
+            ));
             plotArea.drawSelection(renderer, context);
             context.clearClip();
 
         }
 
+        /**
+         * @param tile the tile
+         * @return the number of bytes used by the pixels of the tile
+         */
+        private static long getBytes(final GraphicsBuffer tile) {
+            final BufferedImageExtended image = (BufferedImageExtended) tile;
+            return (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+        }
+
         @Override
         protected void clearBuffer(Renderer renderer, RectangularPlotArea component) {
             //TODO check if the change requires buffer change
@@ -108,18 +169,67 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
     }
 
 
+    private final SpatialCache.Statistics cacheStatistics = new SpatialCache.Statistics();
+    /*
+     * The shapes under each part of the viewport, for hovering
+     */
+    private final HoverGrid<PlotShape<XYLayout>> hover = new HoverGrid<>(new HoverGrid.Source<>() {
+        @Override
+        public void fill(HoverGrid.Block<PlotShape<XYLayout>> block, double minX, double minY, double maxX, double maxY) {
+            fillHoverBlock(block, minX, minY, maxX, maxY);
+        }
+
+        @Override
+        public PlotShape<XYLayout> get(int layer, int id) {
+            return getMarker(getMarkers(getData(layout).get(layer)), id);
+        }
+    });
+    //the viewport that the hover grid was filled for
+    private double hoverLowerX = Double.NaN, hoverLowerY = Double.NaN, hoverUpperX = Double.NaN, hoverUpperY = Double.NaN;
+    private DiskTileCache diskCache;
+    private volatile Future<?> prefetch;
+
     public RectangularPlotArea(XYLayout layout) {
         super(layout, RectangularPlotAreaBufferStrategy.INSTANCE);
 
     }
 
+    /**
+     * @return the statistics of the tile cache used to draw this plot area. The statistics persist when the cache is
+     * cleared
+     */
+    public SpatialCache.Statistics getCacheStatistics() {
+        return cacheStatistics;
+    }
+
+    /**
+     * Set the disk cache to use as a second tier below the in-memory tiles. Tiles are keyed by a fingerprint of the
+     * shapes and their styles, along with the scale and position of the tile, so a figure with the same data and view
+     * can reuse the tiles between JVMs
+     *
+     * @param diskCache the disk cache (may be {@code null} to stop using a disk cache)
+     * @return this plot area
+     */
+    public RectangularPlotArea setDiskCache(final DiskTileCache diskCache) {
+        this.diskCache = diskCache;
+        clearCache();
+        return this;
+    }
+
+    /**
+     * @return the disk cache used by this plot area, or {@code null} if not using a disk cache
+     */
+    public DiskTileCache getDiskCache() {
+        return diskCache;
+    }
+
     private boolean pointIntersectsPaddedNode(Node2D node, double x, double y, double w, double h) {
         return RectangularNode.intersects(x, y, x, y, node.getMinX() - w, node.getMinY() - h, node.getMaxX() + w, node.getMaxY() + h);
     }
 
     @Override
     protected List<? extends PlotShape<XYLayout>> contains(double x, double y) {
-        final List<PlotShape<XYLayout>> out = new LinkedList<>();
+        final List<PlotShape<XYLayout>> out = new ArrayList<>();
         for (final PlotData<?, XYLayout> data : getData(layout)) {
             final double searchX = getSearchPaddingX(data) / getScale(layout.getXAxis()),
                     searchY = getSearchPaddingY(data) / getScale(layout.getYAxis());
@@ -129,14 +239,87 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
                                 node2D -> pointIntersectsPaddedNode(node2D, _x, _y, searchX, searchY),
                                 node2D -> isVisible(node2D) && node2D.contains(_x, _y, _x, _y)));
             }
+            final PlotMarkers markers = getMarkers(data);
+            if (markers != null) {
+                layout.transformPositionToValue(x, y, (_x, _y) ->
+                        markers.search(_x - searchX, _y - searchY, _x + searchX, _y + searchY, (i, mx, my) -> {
+                            if (isVisible(data, i) && markerIntersects(layout, markers, i, mx, my, _x, _y, _x, _y)) {
+                                out.add(getMarker(markers, i));
+                            }
+                        }));
+            }
         }
         return out;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This uses a screen-space grid of the current viewport, so only the shapes near the position are checked. Of the
+     * shapes whose extent contains the position, the one whose center is nearest is used
+     */
+    @Override
+    protected PlotShape<XYLayout> getHoverShape(double x, double y) {
+        final XYAxis xAxis = layout.getXAxis(), yAxis = layout.getYAxis();
+        if (hover.getWidth() != getWidth() || hover.getHeight() != getHeight() || hoverLowerX != xAxis.lower || hoverLowerY != yAxis.lower || hoverUpperX != xAxis.upper || hoverUpperY != yAxis.upper) {
+            hover.reset(getWidth(), getHeight());
+            hoverLowerX = xAxis.lower;
+            hoverLowerY = yAxis.lower;
+            hoverUpperX = xAxis.upper;
+            hoverUpperY = yAxis.upper;
+        }
+        return hover.nearest(x - getX(), y - getY());
+    }
+
+    /**
+     * Add the visible shapes and markers that overlap part of the viewport to the hover grid
+     *
+     * @param block the block of the hover grid
+     * @param minX  the min x of the area, relative to the plot area
+     * @param minY  the min y of the area, relative to the plot area
+     * @param maxX  the max x of the area, relative to the plot area
+     * @param maxY  the max y of the area, relative to the plot area
+     */
+    private void fillHoverBlock(final HoverGrid.Block<PlotShape<XYLayout>> block, double minX, double minY, double maxX, double maxY) {
+        final XYAxis xAxis = layout.getXAxis(), yAxis = layout.getYAxis();
+        final double xMin = xAxis.getValueFromPosition(getX() + (xAxis.reversed ? maxX : minX)),
+                yMin = yAxis.getValueFromPosition(getY() + (yAxis.reversed ? maxY : minY)),
+                xMax = xAxis.getValueFromPosition(getX() + (xAxis.reversed ? minX : maxX)),
+                yMax = yAxis.getValueFromPosition(getY() + (yAxis.reversed ? minY : maxY));
+        final List<PlotData<?, XYLayout>> data = getData(layout);
+        for (int d = 0; d < data.size(); ++d) {
+            final PlotData<?, XYLayout> trace = data.get(d);
+            final double searchX = getSearchPaddingX(trace) / getScale(xAxis),
+                    searchY = getSearchPaddingY(trace) / getScale(yAxis);
+            for (final RTree<PlotShape<XYLayout>> shapes : getShapes(trace)) {
+                for (final PlotShape<XYLayout> shape : shapes.search(Math.min(xMin, xMax) - searchX, Math.min(yMin, yMax) - searchY, Math.max(xMin, xMax) + searchX, Math.max(yMin, yMax) + searchY)) {
+                    if (isVisible(shape)) {
+                        final double x0 = xAxis.getPositionFromValue(shape.getMinX()) - getX(),
+                                y0 = yAxis.getPositionFromValue(shape.getMinY()) - getY(),
+                                x1 = xAxis.getPositionFromValue(shape.getMaxX()) - getX(),
+                                y1 = yAxis.getPositionFromValue(shape.getMaxY()) - getY();
+                        //the shape is stored, so no id is needed to recreate it
+                        block.add(d, -1, shape, (x0 + x1) * .5, (y0 + y1) * .5, Math.abs(x1 - x0) * .5, Math.abs(y1 - y0) * .5);
+                    }
+                }
+            }
+            final PlotMarkers markers = getMarkers(trace);
+            if (markers != null) {
+                final int layer = d;
+                markers.search(Math.min(xMin, xMax) - searchX, Math.min(yMin, yMax) - searchY, Math.max(xMin, xMax) + searchX, Math.max(yMin, yMax) + searchY, (i, mx, my) -> {
+                    if (isVisible(trace, i)) {
+                        final double half = getMarkerSize(markers, i) * .5;
+                        block.add(layer, i, null, xAxis.getPositionFromValue(mx) - getX(), yAxis.getPositionFromValue(my) - getY(), half, half);
+                    }
+                });
+            }
+        }
+    }
+
     @Override
     protected List<? extends PlotShape<XYLayout>> contains(double x, double minY, double maxY) {
         //todo
-        final List<PlotShape<XYLayout>> out = new LinkedList<>();
+        final List<PlotShape<XYLayout>> out = new ArrayList<>();
         for (final PlotData<?, XYLayout> data : getData(layout)) {
             final double searchX = getSearchPaddingX(data) / getScale(layout.getXAxis()),
                     searchY = getSearchPaddingY(data) / getScale(layout.getYAxis());
@@ -150,6 +333,17 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
                         node2D -> Math.abs(node2D.getMidX() - _x) < 1 / getScale(layout.getXAxis())
                 );
             }
+            final PlotMarkers markers = getMarkers(data);
+            if (markers != null) {
+                final double _x = layout.getXAxis().getValueFromPosition(x);
+                final double _minY = layout.getYAxis().getValueFromPosition(minY);
+                final double _maxY = layout.getYAxis().getValueFromPosition(maxY);
+                markers.search(_x - searchX, Math.min(_minY, _maxY) - searchY, _x + searchX, Math.max(_minY, _maxY) + searchY, (i, mx, my) -> {
+                    if (Math.abs(mx - _x) < 1 / getScale(layout.getXAxis())) {
+                        out.add(getMarker(markers, i));
+                    }
+                });
+            }
         }
         return out;
     }
@@ -157,7 +351,12 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
 
     @Override
     protected void clearCache() {
+        final SpatialCache<GraphicsBuffer> cache = getCache();
+        if (cache != null) {
+            cache.clear();
+        }
         RectangularPlotAreaBufferStrategy.INSTANCE.setBufferStore(this, null);
+        hover.clear();
     }
 
     final SpatialCache<GraphicsBuffer> getCache() {
@@ -216,21 +415,33 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
                     searchYMax = yMax + getSearchPaddingY(data) / getScale(layout.getYAxis());
 
             canvas.setStroke(Color.white);
-            canvas.setStroke(Stroke.SOLID);
+            canvas.setStroke(SHAPE_STROKE);
             for (final RTree<PlotShape<XYLayout>> tree : getShapes(data)) {
                 for (final PlotShape<XYLayout> shape : tree.search(searchXMin, searchYMin, searchXMax, searchYMax)) {
                     if (isVisible(shape)) {
                         canvas.setFill(getColor(data, shape));
-                        draw(layout, shape, renderer, canvas);
+                        draw(layout, shape, renderer, canvas, searchXMin, searchYMin, searchXMax, searchYMax);
                     }
                 }
             }
+            final PlotMarkers markers = getMarkers(data);
+            if (markers != null && !drawAggregated(layout, markers, canvas, i -> isVisible(data, i), xMin, yMin, xMax, yMax)) {
+                drawMarkers(layout, markers, renderer, canvas, i -> isVisible(data, i), 0xFFFFFFFF, searchXMin, searchYMin, searchXMax, searchYMax);
+            }
 
         }
     }
 
     protected boolean containsShapes(double xMin, double yMin, double xMax, double yMax) {
         for (final PlotData<?, XYLayout> data : getData(layout)) {
+            final PlotMarkers markers = getMarkers(data);
+            if (markers != null && markers.collides(
+                    xMin - getSearchPaddingX(data) / getScale(layout.getXAxis()),
+                    yMin - getSearchPaddingY(data) / getScale(layout.getYAxis()),
+                    xMax + getSearchPaddingX(data) / getScale(layout.getXAxis()),
+                    yMax + getSearchPaddingY(data) / getScale(layout.getYAxis()))) {
+                return true;
+            }
             for (final RTree<PlotShape<XYLayout>> tree : getShapes(data)) {
                 final double searchXMin = xMin - getSearchPaddingX(data) / getScale(layout.getXAxis()),
                         searchYMin = yMin - getSearchPaddingY(data) / getScale(layout.getYAxis()),
@@ -248,11 +459,65 @@ public class RectangularPlotArea extends PlotArea<XYLayout> {
     protected void drawComponent(Renderer renderer, GraphicsBuffer canvas) {
         canvas.setClip(ClipShape.RECTANGLE, getX(), getY(), getWidth(), getHeight());
         drawGrid(renderer, canvas);
-        drawShapes(renderer, canvas, layout.getXAxis().lower, layout.getYAxis().lower, layout.getXAxis().upper, layout.getYAxis().upper);
+        if (!drawBanded(renderer, canvas)) {
+            drawShapes(renderer, canvas, layout.getXAxis().lower, layout.getYAxis().lower, layout.getXAxis().upper, layout.getYAxis().upper);
+        }
         drawSelection(renderer, canvas);
         canvas.clearClip();
     }
 
+    /**
+     * Draw the shapes on a raster canvas in horizontal bands. Each band is drawn into its own image on a worker thread,
+     * and drawn onto the canvas as soon as it completes, so only the bands being drawn are held in memory. The bands
+     * do not overlap, so the order they are drawn onto the canvas does not matter
+     *
+     * @param renderer the renderer
+     * @param canvas   the canvas
+     * @return whether the shapes were drawn in bands (false if the canvas is not a raster, the plot area is too small or
+     * there is only one worker thread)
+     */
+    private boolean drawBanded(final Renderer renderer, final GraphicsBuffer canvas) {
+        final int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        final int numBands = (int) Math.min(BANDS_PER_THREAD * parallelism, Math.floor(getHeight() / MIN_BAND_HEIGHT));
+        if (!canvas.isRaster() || parallelism < 2 || numBands < 2) {
+            return false;
+        }
+        final double bandHeight = Math.ceil(getHeight() / numBands);
+        IntStream.range(0, numBands)
+                .parallel()
+                .forEach(b -> {
+                    final BufferedImageExtended image = createBand(renderer, b * bandHeight, Math.min(bandHeight, getHeight() - b * bandHeight));
+                    if (image != null) {
+                        //the canvas is not thread-safe
+                        synchronized (canvas) {
+                            canvas.drawImage(image, getX(), getY() + b * bandHeight);
+                        }
+                    }
+                });
+        return true;
+    }
+
+    /**
+     * @param renderer the renderer
+     * @param top      the position of the top of the band, relative to the plot area
+     * @param height   the height of the band
+     * @return an image of the shapes in the band, or {@code null} if there are none
+     */
+    private BufferedImageExtended createBand(final Renderer renderer, double top, double height) {
+        final double xMin = layout.getXAxis().getValueFromPosition(getX() + (layout.getXAxis().reversed ? getWidth() : 0)),
+                yMin = layout.getYAxis().getValueFromPosition(getY() + top + (layout.getYAxis().reversed ? height : 0)),
+                xMax = layout.getXAxis().getValueFromPosition(getX() + (layout.getXAxis().reversed ? 0 : getWidth())),
+                yMax = layout.getYAxis().getValueFromPosition(getY() + top + (layout.getYAxis().reversed ? 0 : height));
+        if (height <= 0 || !containsShapes(xMin, yMin, xMax, yMax)) {
+            return null;
+        }
+        //each band has its own painter, as painters are not thread-safe
+        final BufferedImageExtended image = new BufferedImageExtended(new SwingPainter(), getWidth(), height, getX(), getY() + top, 0, 0, 0, 0);
+        drawShapes(renderer, image, xMin, yMin, xMax, yMax);
+        image.done();
+        return image;
+    }
+
     @Override
     protected void onMouseClick(boolean ctrlDown, boolean shiftDown, double x, double y) {
         if (getInputMode() == InputMode.State.POLYGON_SELECT) {
@@ -96,7 +96,7 @@ public class XAxis extends XYAxis {
                 if (hLabelAlignment != HAlign.LEFT) {
                     e -= getTextWidth(renderer, labelFont, label) * (hLabelAlignment == HAlign.CENTER ? 0.5 : 1);
                 }
-                canvas.fillText(label, e, yLabel);
+                canvas.fillCachedText(label, e, yLabel);
             }
         }
         if (title.isVisible()) {
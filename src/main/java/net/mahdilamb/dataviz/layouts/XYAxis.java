@@ -7,6 +7,7 @@ import net.mahdilamb.dataviz.graphics.*;
 import net.mahdilamb.dataviz.graphics.Font;
 import net.mahdilamb.dataviz.graphics.Stroke;
 import net.mahdilamb.dataviz.utils.Numbers;
+import net.mahdilamb.dataviz.utils.Ryu;
 
 import java.awt.*;
 import java.text.DecimalFormat;
@@ -88,12 +89,14 @@ abstract class XYAxis extends PlotAxis<XYLayout> {
         if (format != null) {
             return String.format(format, value);
         }
-        return Double.toString(Numbers.approximateDouble(value));
+        return Ryu.toString(Numbers.approximateDouble(value));
     }
 
     protected double roundToMajorTick(double value) {
-        final int dp = Double.toString(majorTickSpacing).indexOf('.');
-        return Double.parseDouble(String.format("%." + dp + "f", value));
+        final double scale = Math.pow(10, Math.min(Ryu.MAX_DECIMALS, Ryu.decimalPlaces(majorTickSpacing)));
+        final double scaled = value * scale;
+        //beyond 1e15, a double has no digits left to round at this scale
+        return Math.abs(scaled) < 1e15 ? Math.round(scaled) / scale : value;
     }
 
     public void setFormat(String s) {
@@ -2,9 +2,13 @@ package net.mahdilamb.dataviz.layouts;
 
 import net.mahdilamb.dataviz.*;
 import net.mahdilamb.dataviz.figure.Renderer;
+import net.mahdilamb.dataviz.utils.Animator;
+import net.mahdilamb.dataviz.utils.Interpolations;
 import net.mahdilamb.dataviz.utils.functions.BiDoubleConsumer;
 import net.mahdilamb.dataviz.utils.functions.QuadDoubleConsumer;
 
+import java.awt.EventQueue;
+
 /**
  * An XY or "rectangular" layout
  */
@@ -25,6 +29,16 @@ public final class XYLayout extends PlotLayout<XYLayout> {
      * The maximum allowed bounds
      */
     double minX = Double.NEGATIVE_INFINITY, minY = Double.NEGATIVE_INFINITY, maxX = Double.POSITIVE_INFINITY, maxY = Double.POSITIVE_INFINITY;
+    /*
+     * The range of the current step of an animated range transition, applied at the start of the next frame
+     */
+    private final double[] animatedRange = new double[4];
+    private final Runnable applyAnimatedRange = this::applyAnimatedRange;
+    /*
+     * The animator of range transitions. Each layout has its own, so the settings of one layout's transitions do not
+     * affect another's
+     */
+    private final Animator rangeAnimator = new Animator(60);
 
 
     public XYLayout(final XAxis xAxis, final YAxis yAxis) {
@@ -88,6 +102,53 @@ public final class XYLayout extends PlotLayout<XYLayout> {
         relayout();
     }
 
+    /**
+     * Move the visible range to a new range, over the duration of the range animator of this layout. A new transition
+     * replaces the running transition. Each step of the transition is applied on the event dispatch thread before the
+     * next frame is drawn. If the layout is not in a figure that is being drawn, the range is set immediately
+     *
+     * @param minX the min x of the new range
+     * @param minY the min y of the new range
+     * @param maxX the max x of the new range
+     * @param maxY the max y of the new range
+     */
+    public void animateRange(double minX, double minY, double maxX, double maxY) {
+        if (getContext() == null) {
+            applyRange(minX, minY, maxX, maxY);
+            return;
+        }
+        final Renderer renderer = getContext().getRenderer();
+        final Runnable requestFrame = () -> renderer.runBeforeNextFrame(applyAnimatedRange);
+        final double fromMinX = getXAxis().lower, fromMinY = getYAxis().lower, fromMaxX = getXAxis().upper, fromMaxY = getYAxis().upper;
+        rangeAnimator.animate(this, t -> {
+            synchronized (animatedRange) {
+                animatedRange[0] = Interpolations.lerp(fromMinX, minX, t);
+                animatedRange[1] = Interpolations.lerp(fromMinY, minY, t);
+                animatedRange[2] = Interpolations.lerp(fromMaxX, maxX, t);
+                animatedRange[3] = Interpolations.lerp(fromMaxY, maxY, t);
+            }
+            //this is called on the animator thread, which must not change the range or draw the figure
+            EventQueue.invokeLater(requestFrame);
+        });
+    }
+
+    private void applyAnimatedRange() {
+        final double minX, minY, maxX, maxY;
+        synchronized (animatedRange) {
+            minX = animatedRange[0];
+            minY = animatedRange[1];
+            maxX = animatedRange[2];
+            maxY = animatedRange[3];
+        }
+        applyRange(minX, minY, maxX, maxY);
+    }
+
+    private void applyRange(double minX, double minY, double maxX, double maxY) {
+        clearTooltip(plotArea);
+        clearCache();
+        setRange(minX, minY, maxX, maxY);
+    }
+
     @Override
     protected void panPlotArea(double dx, double dy) {
         final double xMin = getXAxis().lower - dx / getScale(getXAxis()),
@@ -100,6 +161,23 @@ public final class XYLayout extends PlotLayout<XYLayout> {
 
     @Override
     protected void zoomPlotArea(double ex, double ey, double zoom) {
+        zoomedRange(ex, ey, zoom, (minX, minY, maxX, maxY) -> {
+            setRange(minX, minY, maxX, maxY);
+            clearTooltip(plotArea);
+            clearCache();
+            redraw();
+        });
+    }
+
+    /**
+     * Calculate the range after zooming around a position
+     *
+     * @param ex    the x position to zoom around
+     * @param ey    the y position to zoom around
+     * @param zoom  the amount to zoom by (negative to zoom in)
+     * @param range the consumer of the min x, min y, max x and max y of the zoomed range
+     */
+    private void zoomedRange(double ex, double ey, double zoom, final QuadDoubleConsumer range) {
         final double scaleFactor = 1 + zoom;
         //zoom into current mouse position by the an amount proportionate to the scroll amount
         double minX = getXAxis().lower;
@@ -120,10 +198,7 @@ public final class XYLayout extends PlotLayout<XYLayout> {
             minY = top + py - newYRange;
             maxY = top + py;
         }
-        setRange(minX, minY, maxX, maxY);
-        clearTooltip(plotArea);
-        clearCache();
-        redraw();
+        range.accept(minX, minY, maxX, maxY);
     }
 
     @Override
@@ -169,12 +244,12 @@ public final class XYLayout extends PlotLayout<XYLayout> {
 
     @Override
     public void increaseZoom() {
-        zoomPlotArea(plotArea.getX() + plotArea.getWidth() * .5, plotArea.getY() + plotArea.getHeight() * .5, -.25);
+        zoomedRange(plotArea.getX() + plotArea.getWidth() * .5, plotArea.getY() + plotArea.getHeight() * .5, -.25, this::animateRange);
     }
 
     @Override
     public void decreaseZoom() {
-        zoomPlotArea(plotArea.getX() + plotArea.getWidth() * .5, plotArea.getY() + plotArea.getHeight() * .5, 1d / 3);
+        zoomedRange(plotArea.getX() + plotArea.getWidth() * .5, plotArea.getY() + plotArea.getHeight() * .5, 1d / 3, this::animateRange);
 
     }
 
@@ -53,7 +53,7 @@ public class YAxis extends XYAxis {
                 double e = posY + (dRev * sizeY);
                 final String label = getLabel(roundToMajorTick(d));
                 double width = getTextWidth(renderer, labelFont, label);
-                canvas.fillText(label, xLabel - width, e - yOff);
+                canvas.fillCachedText(label, xLabel - width, e - yOff);
             }
         }
         if (title.isVisible()) {
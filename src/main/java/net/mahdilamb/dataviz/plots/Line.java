@@ -8,6 +8,7 @@ import net.mahdilamb.dataviz.PlotDataAttribute;
 import net.mahdilamb.dataviz.PlotShape;
 import net.mahdilamb.dataviz.data.RelationalData;
 import net.mahdilamb.dataviz.layouts.XYLayout;
+import net.mahdilamb.dataviz.utils.Downsampling;
 import net.mahdilamb.stats.ArrayUtils;
 
 import java.util.function.DoubleUnaryOperator;
@@ -61,6 +62,19 @@ public class Line extends RelationalData<Line> {
     }
 
 
+    /**
+     * Set the method used to reduce the number of points drawn when there are many points per pixel column. The
+     * default is {@link Downsampling.Mode#NONE}, which draws every point. {@link Downsampling.Mode#M4} is visually
+     * identical to drawing every point, and is much faster for long lines
+     *
+     * @param downsampling the downsampling method
+     * @return this line
+     */
+    @Override
+    public Line setDownsampling(final Downsampling.Mode downsampling) {
+        return super.setDownsampling(downsampling);
+    }
+
     public Line setColors(String seriesName) throws DataFrameOnlyMethodException {
         addAttribute(seriesName, PlotDataAttribute.Type.COLOR,
                 (attr, series) -> {
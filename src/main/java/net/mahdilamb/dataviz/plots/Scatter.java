@@ -8,11 +8,13 @@ import net.mahdilamb.dataviz.*;
 import net.mahdilamb.dataviz.data.RelationalData;
 import net.mahdilamb.dataviz.layouts.XYLayout;
 import net.mahdilamb.dataviz.utils.ColorUtils;
+import net.mahdilamb.dataviz.utils.DensityGrid;
 import net.mahdilamb.dataviz.utils.Numbers;
 
 import java.awt.*;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.DoubleUnaryOperator;
 import java.util.function.IntFunction;
 
@@ -31,10 +33,14 @@ public class Scatter extends RelationalData<Scatter> {
 
     private final static double DEFAULT_MULTICOLOR_OPACITY = 0.8;
 
+    private final static double DEFAULT_AGGREGATE_DENSITY = 4;
+
     double markerSize = DEFAULT_MARKER_SIZE;
     Color markerColor = Colors.deepskyblue;
     double markerOpacity = 1.0;
     MarkerShape shape = null;
+    double aggregateDensity = DEFAULT_AGGREGATE_DENSITY;
+    DensityGrid.Normalization aggregateNormalization = DensityGrid.Normalization.EQ_HIST;
 
     public Scatter(DataFrame dataFrame, String xAxis, String yAxis) {
         super(dataFrame, xAxis, yAxis);
@@ -51,11 +57,12 @@ public class Scatter extends RelationalData<Scatter> {
     @Override
     protected void init() {
         if (markerMode != ScatterMode.LINE_ONLY) {
-            @SuppressWarnings("unchecked") final PlotShape<XYLayout>[] shapes = new PlotShape[x.size()];
-            for (int i = 0; i < shapes.length; ++i) {
-                shapes[i] = createMarker(this, i, x.getDouble(i), y.getDouble(i));
+            final double[] xs = new double[x.size()], ys = new double[y.size()];
+            for (int i = 0; i < xs.length; ++i) {
+                xs[i] = x.getDouble(i);
+                ys[i] = y.getDouble(i);
             }
-            addShapes(shapes, true);
+            setMarkers(this, xs, ys);
         }
         if (markerMode != ScatterMode.MARKER_ONLY) {
             addShapes(createLines(), true);
@@ -84,6 +91,19 @@ public class Scatter extends RelationalData<Scatter> {
         return ColorUtils.applyAlpha(baseColor, (float) getOpacity(i));
     }
 
+    @Override
+    protected void calculateColors(final int[] out) {
+        if (!calculateNumericColors(out)) {
+            super.calculateColors(out);
+            return;
+        }
+        if (markerOpacity != 1.0) {
+            for (int i = 0; i < out.length; ++i) {
+                out[i] = ColorUtils.applyAlpha(out[i], (float) getOpacity(i));
+            }
+        }
+    }
+
     @Override
     protected MarkerShape getShape(int i) {
         final PlotDataAttribute attribute;
@@ -191,6 +211,44 @@ public class Scatter extends RelationalData<Scatter> {
         return setSizes(seriesName, DEFAULT_MARKER_SIZE, DEFAULT_MAX_MARKER_SIZE);
     }
 
+    /**
+     * Set the density above which the markers are aggregated into an image of the number of markers in each pixel,
+     * rather than drawn individually
+     *
+     * @param pointsPerPixel the number of markers per pixel of the area covered by the markers, at the current scale.
+     *                       Use 0 to always aggregate and {@link Double#POSITIVE_INFINITY} to never aggregate
+     * @return this scatter
+     * @throws IllegalArgumentException if the density is negative or NaN
+     */
+    public Scatter setAggregateDensity(double pointsPerPixel) {
+        if (!(pointsPerPixel >= 0)) {
+            throw new IllegalArgumentException("Aggregate density must be greater than or equal to 0");
+        }
+        this.aggregateDensity = pointsPerPixel;
+        return refresh();
+    }
+
+    /**
+     * Set the normalization of the counts when the markers are aggregated
+     *
+     * @param normalization the normalization
+     * @return this scatter
+     */
+    public Scatter setAggregateNormalization(final DensityGrid.Normalization normalization) {
+        this.aggregateNormalization = Objects.requireNonNull(normalization);
+        return refresh();
+    }
+
+    @Override
+    protected double getAggregateDensity() {
+        return aggregateDensity;
+    }
+
+    @Override
+    protected DensityGrid.Normalization getAggregateNormalization() {
+        return aggregateNormalization;
+    }
+
     public Scatter setSize(final double size) {
         markerSize = Numbers.requireFinitePositive(size);
         removeAttribute(PlotDataAttribute.Type.SIZE);
@@ -6,13 +6,14 @@ import net.mahdilamb.dataviz.graphics.Font;
 import net.mahdilamb.dataviz.graphics.Stroke;
 
 import java.awt.*;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 
 public class BufferedContext implements GraphicsContext {
-    final SwingRenderer renderer;
+    final Renderer renderer;
     private BufferedImageExtended buffer;
 
-    BufferedContext(SwingRenderer renderer) {
+    BufferedContext(Renderer renderer) {
         this.renderer = renderer;
     }
 
@@ -52,6 +53,19 @@ public class BufferedContext implements GraphicsContext {
         g.setColor(Color.BLACK);
     }
 
+    @Override
+    public boolean reset(double x, double y, double width, double height) {
+        final BufferedImageExtended buffer = getBuffer();
+        buffer.reset(x, y, width, height);
+        if (Renderer.isFigureContext(renderer, this) && renderer.getFigure().getBackgroundColor() != null) {
+            final Graphics2D g = buffer.getGraphics();
+            g.setColor(renderer.getFigure().getBackgroundColor());
+            g.fill(new Rectangle2D.Double(x, y, width, height));
+            g.setColor(Color.BLACK);
+        }
+        return true;
+    }
+
     @Override
     public void done() {
         buffer.done();
@@ -162,6 +176,11 @@ public class BufferedContext implements GraphicsContext {
         buffer.fillText(text, x, y);
     }
 
+    @Override
+    public void fillCachedText(String text, double x, double y) {
+        buffer.fillCachedText(text, x, y);
+    }
+
     @Override
     public void fillText(String text, double x, double y, double rotationDegrees, double pivotX, double pivotY) {
         buffer.fillText(text, x, y, rotationDegrees, pivotX, pivotY);
@@ -182,18 +201,33 @@ public class BufferedContext implements GraphicsContext {
         buffer.clearClip();
     }
 
+    @Override
+    public boolean isRaster() {
+        return true;
+    }
+
+    @Override
+    public void fillPixel(double x, double y, int argb) {
+        buffer.fillPixel(x, y, argb);
+    }
+
     @Override
     public void drawImage(BufferedImage bufferedImage, double x, double y) {
         buffer.drawImage(bufferedImage, x, y);
     }
 
+    @Override
+    public void drawImage(BufferedImage bufferedImage, double x, double y, double width, double height) {
+        buffer.drawImage(bufferedImage, x, y, width, height);
+    }
+
     @Override
     public void setGlobalAlpha(double alpha) {
         buffer.setGlobalAlpha(alpha);
     }
 
     @Override
-    public SwingRenderer getRenderer() {
+    public Renderer getRenderer() {
         return renderer;
     }
 }
@@ -3,10 +3,13 @@ package net.mahdilamb.dataviz.swing;
 import net.mahdilamb.dataviz.graphics.Font;
 import net.mahdilamb.dataviz.graphics.Stroke;
 import net.mahdilamb.dataviz.graphics.*;
+import net.mahdilamb.dataviz.utils.ColorUtils;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 
 import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
 
@@ -14,11 +17,6 @@ import static java.awt.RenderingHints.VALUE_ANTIALIAS_ON;
  * An extended version of buffered image which supports drawing floating precision geometries using a painter
  */
 public final class BufferedImageExtended extends BufferedImage implements GraphicsBuffer {
-    /**
-     * An instance of the swing painter which is not thread-safe as it contains geometries that are reused
-     */
-    protected static final SwingPainter DEFAULT_PAINTER = new SwingPainter();
-
     static final AffineTransform IDENTITY = new AffineTransform();
     transient Graphics2D g;
     final AffineTransform transform;
@@ -32,16 +30,27 @@ public final class BufferedImageExtended extends BufferedImage implements Graphi
     public final double width, height;
 
     private final SwingPainter painter;
+    /*
+     * Direct access to the pixels, and the current clip in device space, for drawing single pixels
+     */
+    private int[] pixels;
+    private boolean clipValid = false;
+    private int clipMinX, clipMinY, clipMaxX, clipMaxY;
+    private Shape clipShape;
+    /*
+     * The region that drawing is restricted to, after a partial reset
+     */
+    private Rectangle2D region;
 
     /**
-     * Create a simple buffered image
+     * Create a simple buffered image. The image has its own painter, so images can be drawn on separate threads
      *
      * @param width  the width of the image
      * @param height the height of the image
      */
     public BufferedImageExtended(double width, double height) {
         super((int) Math.ceil(width), (int) Math.ceil(height), BufferedImage.TYPE_INT_ARGB);
-        painter = DEFAULT_PAINTER;
+        painter = new SwingPainter();
         this.width = width;
         this.height = height;
 
@@ -76,7 +85,7 @@ public final class BufferedImageExtended extends BufferedImage implements Graphi
     }
 
     /**
-     * Create an extended buffered image using the default swing painter
+     * Create an extended buffered image using its own swing painter
      *
      * @param width          the width of the image
      * @param height         the height of the image
@@ -88,7 +97,7 @@ public final class BufferedImageExtended extends BufferedImage implements Graphi
      * @param overflowRight  the overflow to the right
      */
     public BufferedImageExtended(double width, double height, double x, double y, int overflowTop, int overflowLeft, int overflowBottom, int overflowRight) {
-        this(DEFAULT_PAINTER, width, height, x, y, overflowTop, overflowLeft, overflowBottom, overflowRight);
+        this(new SwingPainter(), width, height, x, y, overflowTop, overflowLeft, overflowBottom, overflowRight);
     }
 
     @Override
@@ -116,13 +125,36 @@ public final class BufferedImageExtended extends BufferedImage implements Graphi
         painter.reset(getGraphics(), transform, getWidth(), getHeight());
     }
 
+    /**
+     * Clear a region of the image and restrict drawing to that region until {@link #done()} is called. Clips that are
+     * set in the meantime are intersected with the region
+     *
+     * @param x      the x position of the region
+     * @param y      the y position of the region
+     * @param width  the width of the region
+     * @param height the height of the region
+     */
+    public void reset(double x, double y, double width, double height) {
+        final Graphics2D g = getGraphics();
+        region = new Rectangle2D.Double(x, y, width, height);
+        final Composite before = g.getComposite();
+        g.setClip(null);
+        g.setComposite(AlphaComposite.Clear);
+        g.fill(region);
+        g.setComposite(before);
+        g.setClip(region);
+        clipValid = false;
+    }
+
     @Override
     public void done() {
+        region = null;
         if (g == null) {
             return;
         }
         g.dispose();
         g = null;
+        clipValid = false;
 
     }
 
@@ -234,6 +266,11 @@ public final class BufferedImageExtended extends BufferedImage implements Graphi
 
     }
 
+    @Override
+    public void fillCachedText(String text, double x, double y) {
+        painter.fillCachedText(getGraphics(), text, x, y);
+    }
+
     @Override
     public void fillText(String text, double x, double y, double rotationDegrees, double pivotX, double pivotY) {
         painter.fillText(getGraphics(), text, x, y, rotationDegrees, pivotX, pivotY);
@@ -247,11 +284,78 @@ public final class BufferedImageExtended extends BufferedImage implements Graphi
     @Override
     public void setClip(ClipShape shape, double x, double y, double width, double height) {
         painter.setClip(getGraphics(), shape, x, y, width, height);
+        if (region != null) {
+            g.clip(region);
+        }
+        clipValid = false;
     }
 
     @Override
     public void clearClip() {
         painter.clearClip(getGraphics());
+        if (region != null) {
+            g.setClip(region);
+        }
+        clipValid = false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The pixel is blended directly into the backing data using source-over compositing, bypassing {@link Graphics2D}.
+     * The clip and global alpha of the graphics context are respected.
+     */
+    @Override
+    public void fillPixel(double x, double y, int argb) {
+        final int px = (int) Math.floor(x + transform.getTranslateX()),
+                py = (int) Math.floor(y + transform.getTranslateY());
+        if (!clipValid) {
+            validateClip();
+        }
+        if (px < clipMinX || py < clipMinY || px >= clipMaxX || py >= clipMaxY || (clipShape != null && !clipShape.contains(px + .5, py + .5))) {
+            return;
+        }
+        if (g != null && g.getComposite() != AlphaComposite.SrcOver) {
+            final Composite composite = g.getComposite();
+            if (!(composite instanceof AlphaComposite) || ((AlphaComposite) composite).getRule() != AlphaComposite.SRC_OVER) {
+                painter.setFill(g, new Color(argb, true));
+                painter.fillRect(g, Math.floor(x), Math.floor(y), 1, 1);
+                return;
+            }
+            argb = (Math.round((argb >>> 24) * ((AlphaComposite) composite).getAlpha()) << 24) | (argb & 0xFFFFFF);
+        }
+        if (pixels == null) {
+            pixels = ((DataBufferInt) getRaster().getDataBuffer()).getData();
+        }
+        final int i = py * getWidth() + px;
+        pixels[i] = ColorUtils.sourceOver(argb, pixels[i]);
+    }
+
+    private void validateClip() {
+        clipMinX = 0;
+        clipMinY = 0;
+        clipMaxX = getWidth();
+        clipMaxY = getHeight();
+        clipShape = null;
+        final Shape clip = g == null ? null : g.getClip();
+        if (clip != null) {
+            final Shape deviceClip = transform.createTransformedShape(clip);
+            final Rectangle2D bounds = deviceClip.getBounds2D();
+            //a pixel is in the clip if its center is
+            clipMinX = Math.max(clipMinX, (int) Math.ceil(bounds.getMinX() - .5));
+            clipMinY = Math.max(clipMinY, (int) Math.ceil(bounds.getMinY() - .5));
+            clipMaxX = Math.min(clipMaxX, (int) Math.ceil(bounds.getMaxX() - .5));
+            clipMaxY = Math.min(clipMaxY, (int) Math.ceil(bounds.getMaxY() - .5));
+            if (!(clip instanceof Rectangle2D)) {
+                clipShape = deviceClip;
+            }
+        }
+        clipValid = true;
+    }
+
+    @Override
+    public boolean isRaster() {
+        return true;
     }
 
     @Override
@@ -259,6 +363,11 @@ public final class BufferedImageExtended extends BufferedImage implements Graphi
         painter.drawImage(getGraphics(), bufferedImage, x, y);
     }
 
+    @Override
+    public void drawImage(BufferedImage bufferedImage, double x, double y, double width, double height) {
+        painter.drawImage(getGraphics(), bufferedImage, x, y, width, height);
+    }
+
     @Override
     public void setGlobalAlpha(double alpha) {
         painter.setGlobalAlpha(getGraphics(), alpha);
@@ -0,0 +1,116 @@
+package net.mahdilamb.dataviz.swing;
+
+import net.mahdilamb.dataviz.figure.FigureBase;
+import net.mahdilamb.dataviz.figure.Renderer;
+import net.mahdilamb.dataviz.graphics.Font;
+import net.mahdilamb.dataviz.graphics.FontUtils;
+
+import java.awt.*;
+import java.io.File;
+import java.util.List;
+
+/**
+ * A renderer for drawing figures without a display, e.g. on a server. The renderer does not share any mutable state
+ * with other renderers, so separate renderers can be used on separate threads. A renderer (and its figure) must only be
+ * used by one thread at a time.
+ * <p>
+ * The figure is only drawn when it is exported, and the renderer can be reused for other figures.
+ */
+public final class HeadlessRenderer extends Renderer {
+    private final BufferedContext canvas = new BufferedContext(this);
+    private final BufferedContext overlay = new BufferedContext(this);
+    /*
+     * A small image used to measure text, so that the text is measured the same way as the swing renderer
+     */
+    private final BufferedImageExtended metrics = new BufferedImageExtended(1, 1);
+
+    /**
+     * Create a headless renderer without a figure
+     */
+    public HeadlessRenderer() {
+        super();
+    }
+
+    /**
+     * Create a headless renderer for a figure
+     *
+     * @param figure the figure
+     */
+    public HeadlessRenderer(final FigureBase<?> figure) {
+        this();
+        setFigure(figure);
+    }
+
+    /**
+     * Set the figure drawn by this renderer
+     *
+     * @param figure the figure
+     * @return this renderer
+     */
+    public HeadlessRenderer setFigure(final FigureBase<?> figure) {
+        init(figure);
+        return this;
+    }
+
+    @Override
+    protected void refresh() {
+        //ignored - the figure is drawn when exported
+    }
+
+    @Override
+    protected BufferedContext getFigureContext() {
+        return canvas;
+    }
+
+    @Override
+    protected BufferedContext getOverlayContext() {
+        return overlay;
+    }
+
+    @Override
+    protected void done() {
+        //ignored
+    }
+
+    @Override
+    protected double getTextBaselineOffset(Font font) {
+        return getFontMetrics(font).getAscent();
+    }
+
+    @Override
+    protected double getTextWidth(Font font, String text) {
+        return FontUtils.getTextWidth(getFontMetrics(font), text);
+    }
+
+    @Override
+    protected double getCharWidth(Font font, char character) {
+        return getFontMetrics(font).charWidth(character);
+    }
+
+    @Override
+    protected double getTextLineHeight(Font font, String text) {
+        if (text == null || text.length() == 0) {
+            return getFontMetrics(font).getHeight();
+        }
+        return FontUtils.getLineHeight(getFontMetrics(font), text, 1);
+    }
+
+    private FontMetrics getFontMetrics(final Font font) {
+        return metrics.getFontMetrics(FontUtils.convert(font));
+    }
+
+    @Override
+    protected File getOutputPath(List<String> fileTypes, String defaultExtension) {
+        return null;
+    }
+
+    @Override
+    protected String getFromClipboard() {
+        return null;
+    }
+
+    @Override
+    protected void addToClipboard(String text) {
+        //ignored
+    }
+}
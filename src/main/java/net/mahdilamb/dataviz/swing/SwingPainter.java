@@ -21,6 +21,10 @@ public final class SwingPainter {
 
     private final Variant<Color, Gradient> currentFill = Variant.ofA(Color.BLACK);
     private net.mahdilamb.dataviz.graphics.Stroke currentStroke = net.mahdilamb.dataviz.graphics.Stroke.SOLID;
+    /*
+     * The AWT form of the current stroke, which is only converted when the stroke changes
+     */
+    private java.awt.Stroke convertedStroke = convert(currentStroke);
     private Color currentStrokeColor = Color.BLACK;
     private final Path2D path = new Path2D.Double();
     private final AffineTransform affineTransform = new AffineTransform();
@@ -79,8 +83,7 @@ public final class SwingPainter {
 
     void setFill(final Graphics2D g, Color color) {
         this.currentFill.setToA(color);
-        g.setColor(color);
-        g.setPaint(g.getColor());
+        applyPaint(g, color);
         usingFill = true;
     }
 
@@ -91,8 +94,11 @@ public final class SwingPainter {
     }
 
     void setStroke(final Graphics2D g, net.mahdilamb.dataviz.graphics.Stroke stroke) {
-        this.currentStroke = stroke;
-        g.setStroke(convert(currentStroke));
+        if (this.currentStroke != stroke) {
+            this.currentStroke = stroke;
+            convertedStroke = convert(stroke);
+        }
+        applyStroke(g);
         usingFill = false;
     }
 
@@ -101,8 +107,7 @@ public final class SwingPainter {
             System.err.println(color);
         }
         this.currentStrokeColor = color;
-        g.setColor(color);
-        g.setPaint(g.getColor());
+        applyPaint(g, color);
         usingFill = false;
     }
 
@@ -171,6 +176,13 @@ public final class SwingPainter {
         FontUtils.drawMultilineTextLeft(g, text, x, y, 1, FontUtils.getTextWidth(g.getFontMetrics(), text));
     }
 
+    void fillCachedText(final Graphics2D g, String text, double x, double y) {
+        switchToFilled(g);
+        if (!TextSprites.draw(g, text, convert(x), convert(y))) {
+            FontUtils.drawMultilineTextLeft(g, text, x, y, 1, FontUtils.getTextWidth(g.getFontMetrics(), text));
+        }
+    }
+
     void fillText(final Graphics2D g, String text, double x, double y, double rotationDegrees, double pivotX, double pivotY) {
         switchToFilled(g);
         final AffineTransform lastTransform = g.getTransform();
@@ -209,6 +221,12 @@ public final class SwingPainter {
         g.drawImage(bufferedImage, AffineTransform.getTranslateInstance(x, y), null);
     }
 
+    void drawImage(final Graphics2D g, BufferedImage bufferedImage, double x, double y, double width, double height) {
+        final AffineTransform transform = AffineTransform.getTranslateInstance(x, y);
+        transform.scale(width / bufferedImage.getWidth(), height / bufferedImage.getHeight());
+        g.drawImage(bufferedImage, transform, null);
+    }
+
     void setGlobalAlpha(final Graphics2D g, double alpha) {
         g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) alpha));
     }
@@ -216,10 +234,7 @@ public final class SwingPainter {
     private void switchToFilled(final Graphics2D g) {
         if (!usingFill) {
             if (currentFill.isA()) {
-                if (!Objects.equals(g.getColor(), currentFill.asA())) {
-                    g.setColor(currentFill.asA());
-                    g.setPaint(g.getColor());
-                }
+                applyPaint(g, currentFill.asA());
             } else {
                 g.setPaint(convert(currentFill.asB()));
             }
@@ -229,10 +244,24 @@ public final class SwingPainter {
 
     private void switchToStroked(final Graphics2D g) {
         if (usingFill) {
-            g.setStroke(convert(currentStroke));
-            g.setColor(currentStrokeColor);
-            g.setPaint(g.getColor());
+            applyStroke(g);
+            applyPaint(g, currentStrokeColor);
             usingFill = false;
         }
     }
+
+    /**
+     * Set the paint of the graphics context, if it is not already using an equal color
+     */
+    private static void applyPaint(final Graphics2D g, final Color color) {
+        if (!Objects.equals(g.getPaint(), color)) {
+            g.setPaint(color);
+        }
+    }
+
+    private void applyStroke(final Graphics2D g) {
+        if (g.getStroke() != convertedStroke) {
+            g.setStroke(convertedStroke);
+        }
+    }
 }
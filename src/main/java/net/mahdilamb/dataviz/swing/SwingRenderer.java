@@ -20,16 +20,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Default Swing renderer
  */
 public final class SwingRenderer extends Renderer {
-    private static final JFileChooser fileChooser = new JFileChooser();
-
     FigurePanel panel;
+    private JFileChooser fileChooser;
     private final BufferedContext canvas = new BufferedContext(this);
     private final BufferedContext overlay = new BufferedContext(this);
+    private Timer frameTimer;
 
     private static final class FigurePanel extends JPanel {
 
@@ -84,6 +85,23 @@ public final class SwingRenderer extends Renderer {
         return overlay;
     }
 
+    @Override
+    protected void scheduleFrame(long delay) {
+        if (panel == null) {
+            //not shown, so draw immediately
+            drawFrame();
+            return;
+        }
+        synchronized (this) {
+            if (frameTimer == null) {
+                frameTimer = new Timer(0, e -> drawFrame());
+                frameTimer.setRepeats(false);
+            }
+            frameTimer.setInitialDelay((int) TimeUnit.NANOSECONDS.toMillis(delay));
+            frameTimer.restart();
+        }
+    }
+
     @Override
     protected synchronized void done() {
         if (panel != null) {
@@ -91,6 +109,14 @@ public final class SwingRenderer extends Renderer {
         }
     }
 
+    @Override
+    protected synchronized void done(double x, double y, double width, double height) {
+        if (panel != null) {
+            final int minX = (int) Math.floor(x), minY = (int) Math.floor(y);
+            panel.repaint(minX, minY, (int) Math.ceil(x + width) - minX, (int) Math.ceil(y + height) - minY);
+        }
+    }
+
 
     @Override
     protected double getTextBaselineOffset(Font font) {
@@ -118,6 +144,10 @@ public final class SwingRenderer extends Renderer {
 
     @Override
     protected File getOutputPath(List<String> fileTypes, String defaultExtension) {
+        if (fileChooser == null) {
+            //created when first needed, as file choosers cannot be created in headless environments
+            fileChooser = new JFileChooser();
+        }
         if (fileTypes == null) {
             fileChooser.setFileFilter(null);
         } else {
@@ -10,6 +10,7 @@ import java.awt.geom.Point2D;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.Map;
 import java.util.WeakHashMap;
 
@@ -21,7 +22,7 @@ public final class SwingUtils {
 
     }
 
-    static final Map<net.mahdilamb.dataviz.graphics.Stroke, java.awt.BasicStroke> strokesToAWT = new WeakHashMap<>();
+    static final Map<net.mahdilamb.dataviz.graphics.Stroke, java.awt.BasicStroke> strokesToAWT = Collections.synchronizedMap(new WeakHashMap<>());
 
     /**
      * Convert a double to int
@@ -0,0 +1,147 @@
+package net.mahdilamb.dataviz.swing;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A cache of rasterized single lines of text (e.g. tick and legend labels). Each combination of text, font, color,
+ * device scale and text antialiasing is rasterized once and then drawn as an image, rather than laying out and filling
+ * the glyphs each time the text is drawn.
+ * <p>
+ * Each thread has its own cache, so text can be rasterized and drawn by several renderers at once without contention.
+ */
+final class TextSprites {
+    /**
+     * The maximum number of sprites held
+     */
+    private static final int MAX_SPRITES = 2048;
+    /**
+     * The maximum length of text to rasterize
+     */
+    private static final int MAX_LENGTH = 64;
+    /*
+     * Padding around the text for antialiasing
+     */
+    private static final int PADDING = 1;
+    private static final AffineTransform IDENTITY = new AffineTransform();
+
+    private static final ThreadLocal<Map<Key, Sprite>> SPRITES = ThreadLocal.withInitial(() -> new LinkedHashMap<>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Sprite> eldest) {
+            return size() > MAX_SPRITES;
+        }
+    });
+
+    private static final class Key {
+        final String text;
+        final Font font;
+        final int color;
+        final double scale;
+        final Object antialiasing, fractionalMetrics;
+
+        Key(String text, Font font, int color, double scale, Object antialiasing, Object fractionalMetrics) {
+            this.text = text;
+            this.font = font;
+            this.color = color;
+            this.scale = scale;
+            this.antialiasing = antialiasing;
+            this.fractionalMetrics = fractionalMetrics;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return color == key.color && Double.compare(scale, key.scale) == 0 && text.equals(key.text) && font.equals(key.font) && Objects.equals(antialiasing, key.antialiasing) && Objects.equals(fractionalMetrics, key.fractionalMetrics);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(text, font, color, scale, antialiasing, fractionalMetrics);
+        }
+    }
+
+    /**
+     * The rasterized text, in device pixels
+     */
+    private static final class Sprite {
+        final BufferedImage image;
+        //the position of the top left of the image relative to the start of the baseline
+        final int offsetX, offsetY;
+
+        Sprite(BufferedImage image, int offsetX, int offsetY) {
+            this.image = image;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+    }
+
+    private TextSprites() {
+
+    }
+
+    /**
+     * Draw text from the cache, if it can be drawn as a sprite
+     *
+     * @param g    the graphics to draw on, with the font and fill of the text already set
+     * @param text the text
+     * @param x    the x position of the start of the baseline, in user space
+     * @param y    the y position of the baseline, in user space
+     * @return whether the text was drawn. If not, the text should be drawn as normal
+     */
+    static boolean draw(final Graphics2D g, final String text, int x, int y) {
+        final AffineTransform transform = g.getTransform();
+        if (text.isEmpty() || text.length() > MAX_LENGTH || !(g.getPaint() instanceof Color) || (transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0 || transform.getScaleX() <= 0) {
+            return false;
+        }
+        final char[] chars = text.toCharArray();
+        for (final char c : chars) {
+            if (c == '\n') {
+                return false;
+            }
+        }
+        if (Font.textRequiresLayout(chars, 0, chars.length)) {
+            return false;
+        }
+        final Key key = new Key(text, g.getFont(), ((Color) g.getPaint()).getRGB(), transform.getScaleX(), g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING), g.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS));
+        final Map<Key, Sprite> sprites = SPRITES.get();
+        Sprite sprite;
+        if ((sprite = sprites.get(key)) == null) {
+            sprites.put(key, sprite = rasterize(key, g));
+        }
+        //the device position of the start of the baseline
+        final long originX = Math.round(transform.getTranslateX() + x * key.scale),
+                originY = Math.round(transform.getTranslateY() + y * key.scale);
+        g.setTransform(IDENTITY);
+        g.drawImage(sprite.image, (int) originX + sprite.offsetX, (int) originY + sprite.offsetY, null);
+        g.setTransform(transform);
+        return true;
+    }
+
+    private static Sprite rasterize(final Key key, final Graphics2D g) {
+        final FontRenderContext frc = new FontRenderContext(AffineTransform.getScaleInstance(key.scale, key.scale), g.getRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING), g.getRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS));
+        final GlyphVector glyphs = key.font.createGlyphVector(frc, key.text);
+        final Rectangle bounds = glyphs.getPixelBounds(frc, 0, 0);
+        final BufferedImage image = new BufferedImage(Math.max(1, bounds.width + 2 * PADDING), Math.max(1, bounds.height + 2 * PADDING), BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D s = image.createGraphics();
+        s.setRenderingHints(g.getRenderingHints());
+        s.translate(PADDING - bounds.x, PADDING - bounds.y);
+        s.scale(key.scale, key.scale);
+        s.setFont(key.font);
+        s.setColor(new Color(key.color, true));
+        s.drawString(key.text, 0, 0);
+        s.dispose();
+        return new Sprite(image, bounds.x - PADDING, bounds.y - PADDING);
+    }
+}
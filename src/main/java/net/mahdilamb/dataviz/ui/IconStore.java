@@ -125,7 +125,7 @@ public final class IconStore {
         return null;
     }
 
-    public static IconStore get(final InputStream source, final Class<? extends Enum<?>> keys) {
+    public static synchronized IconStore get(final InputStream source, final Class<? extends Enum<?>> keys) {
         final IconStore icons = IconStore.icons.get(source);
         if (icons == null) {
             final BufferedImage img = loadImage(source);
@@ -1,18 +1,23 @@
 package net.mahdilamb.dataviz.utils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleConsumer;
 import java.util.function.DoubleUnaryOperator;
 
 import static net.mahdilamb.dataviz.utils.functions.Runnables.EMPTY_RUNNABLE;
 
 /**
- * Main animation class
+ * Main animation class. All animators share a single timer thread, and each animator advances all of its running
+ * animations on the same tick, so any number of animations can run at the same time without creating threads.
+ * <p>
+ * The progress of an animation is based on the time since it started, so an animation lasts for its duration even if
+ * ticks are late. The animations are advanced on the timer thread.
  */
-//todo
 public final class Animator {
     /**
      * An instance of an easing animator that runs at 60FPS
@@ -20,14 +25,82 @@ public final class Animator {
     public static final Animator ANIMATOR_60 = new Animator(60);
     public static final Animator ANIMATOR_120 = new Animator(120);
 
+    /*
+     * The timer shared by all the animators
+     */
+    private static final class Timer {
+        static final ScheduledExecutorService INSTANCE = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "dataviz-animator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * A running animation
+     */
+    public static final class Animation {
+        private final Object key;
+        private final DoubleConsumer animation;
+        private final DoubleUnaryOperator easingFunction;
+        private final Runnable onComplete;
+        private final long start, duration;
+        private volatile boolean done = false;
+
+        private Animation(Object key, DoubleConsumer animation, DoubleUnaryOperator easingFunction, Runnable onComplete, long start, long duration) {
+            this.key = key;
+            this.animation = animation;
+            this.easingFunction = easingFunction;
+            this.onComplete = onComplete;
+            this.start = start;
+            this.duration = duration;
+        }
+
+        /**
+         * Advance the animation
+         *
+         * @param now the current time, in nanoseconds
+         */
+        private void advance(long now) {
+            if (done) {
+                return;
+            }
+            final double t = Math.min(1, (double) (now - start) / duration);
+            animation.accept(easingFunction.applyAsDouble(t));
+            if (t >= 1) {
+                cancel();
+            }
+        }
+
+        /**
+         * Stop the animation where it is. The completion callback of the animation is run if it has not already been
+         */
+        public void cancel() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+            }
+            onComplete.run();
+        }
+
+        /**
+         * @return whether the animation has finished or been cancelled
+         */
+        public boolean isDone() {
+            return done;
+        }
+    }
+
     private final int FPS;
     /**
      * default duration in seconds
      */
     private float duration;
     private DoubleUnaryOperator easingFunction = Interpolations::linear;
-    private ScheduledExecutorService timer;
-    private final AtomicInteger frame = new AtomicInteger(0);
+    private final List<Animation> animations = new ArrayList<>();
+    private ScheduledFuture<?> ticker;
     private Runnable onComplete = EMPTY_RUNNABLE;
 
     /**
@@ -42,36 +115,83 @@ public final class Animator {
      * @param duration the default duration for the animation
      */
     public Animator(final int FPS, final float duration) {
+        if (FPS <= 0) {
+            throw new IllegalArgumentException("The frame rate must be positive");
+        }
         this.FPS = FPS;
         this.duration = duration;
     }
 
     /**
-     * Run and animation
+     * Run an animation alongside any other animations of this animator. The animation uses the current duration,
+     * easing function and completion callback of this animator
      *
-     * @param animation animation to play
+     * @param animation animation to play. This is called on each tick with the eased progress of the animation
+     * @return the running animation
      */
-    public void animate(final DoubleConsumer animation) {
-        //stop any previous animation
-        stop();
-        final int nFrames = Math.round(getNFrames());
-        final long animationRate = Math.round(nFrames * FPS);
+    public Animation animate(final DoubleConsumer animation) {
+        return animate(null, animation);
+    }
 
-        if (nFrames <= 1 || animationRate <= 0) {
+    /**
+     * Run an animation, replacing any running animation of this animator with the same key (e.g. so that a new
+     * transition of a range replaces the previous one)
+     *
+     * @param key       the key of the animation (may be {@code null}, in which case no animation is replaced)
+     * @param animation animation to play. This is called on each tick with the eased progress of the animation
+     * @return the running animation
+     */
+    public synchronized Animation animate(final Object key, final DoubleConsumer animation) {
+        final Animation a = new Animation(key, animation, easingFunction, onComplete, System.nanoTime(), Math.round(duration * 1e9));
+        onComplete = EMPTY_RUNNABLE;
+        if (key != null) {
+            for (final Animation other : animations) {
+                if (key.equals(other.key)) {
+                    other.cancel();
+                }
+            }
+        }
+        if (Math.round(duration * FPS) <= 1) {
             animation.accept(1);
-            return;
+            a.cancel();
+            return a;
+        }
+        animations.add(a);
+        if (ticker == null) {
+            ticker = Timer.INSTANCE.scheduleAtFixedRate(this::tick, 0L, Math.round(1e9 / FPS), TimeUnit.NANOSECONDS);
         }
-        frame.set(0);
-        timer = Executors.newScheduledThreadPool(1);
-        timer.scheduleAtFixedRate(() -> {
-            animation.accept(easingFunction.applyAsDouble(((float) frame.getAndIncrement()) / (nFrames - 1)));
-            if (frame.get() >= nFrames) {
-                stop();
+        return a;
+    }
+
+    /**
+     * Advance all the running animations, and stop the ticks once they have all finished
+     */
+    private synchronized void tick() {
+        final long now = System.nanoTime();
+        //animations started by an animation on this tick are first advanced on the next tick
+        for (int i = 0, n = animations.size(); i < n; ++i) {
+            try {
+                animations.get(i).advance(now);
+            } catch (RuntimeException e) {
+                //an exception would otherwise stop all the animations of this animator
+                e.printStackTrace();
+                animations.get(i).cancel();
             }
-        }, 0L, animationRate, TimeUnit.NANOSECONDS);
+        }
+        animations.removeIf(Animation::isDone);
+        if (animations.isEmpty() && ticker != null) {
+            ticker.cancel(false);
+            ticker = null;
+        }
     }
 
-    public Animator setOnComplete(final Runnable onComplete) {
+    /**
+     * Set the completion callback of the next animation. This is run when the animation finishes or is stopped
+     *
+     * @param onComplete the completion callback
+     * @return this animator
+     */
+    public synchronized Animator setOnComplete(final Runnable onComplete) {
         this.onComplete = onComplete == null ? EMPTY_RUNNABLE : onComplete;
         return this;
     }
@@ -81,51 +201,38 @@ public final class Animator {
      *
      * @param easingFunction the interpolation to use for the animation
      */
-    public Animator setEasingFunction(DoubleUnaryOperator easingFunction) {
+    public synchronized Animator setEasingFunction(DoubleUnaryOperator easingFunction) {
         this.easingFunction = easingFunction == null ? Interpolations::linear : easingFunction;
         return this;
     }
 
     /**
-     * stop the animation
+     * stop all the running animations
      */
     public synchronized void stop() {
-        if (!isAnimating()) {
-            return;
+        for (final Animation animation : animations) {
+            animation.cancel();
         }
-        timer.shutdown();
-        try {
-            timer.awaitTermination(1, TimeUnit.NANOSECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        } finally {
-            onComplete.run();
-            timer = null;
-            onComplete = EMPTY_RUNNABLE;
+        animations.clear();
+        if (ticker != null) {
+            ticker.cancel(false);
+            ticker = null;
         }
-
     }
 
     /**
      * @return if there is an animation running
      */
-    public boolean isAnimating() {
-        return timer != null;
+    public synchronized boolean isAnimating() {
+        return !animations.isEmpty();
     }
 
     /**
      * @param seconds the number of seconds to run the animation for
      */
-    public Animator setDuration(float seconds) {
+    public synchronized Animator setDuration(float seconds) {
         this.duration = seconds;
         return this;
     }
 
-    /**
-     * @return the number of frames to do based on animation settings
-     */
-    private float getNFrames() {
-        return duration * FPS;
-    }
-
 }
@@ -191,5 +191,35 @@ public final class ColorUtils {
         return new Color(source.getRed() / 255f, source.getGreen() / 255f, source.getBlue() / 255f, source.getAlpha() / 255f * alpha);
     }
 
+    public static int applyAlpha(int argb, float alpha) {
+        return ((int) ((argb >>> 24) / 255f * alpha * 255 + .5f) << 24) | (argb & 0xFFFFFF);
+    }
 
+    /**
+     * Composite a non-premultiplied ARGB source over a non-premultiplied ARGB destination
+     *
+     * @param src the source color
+     * @param dst the destination color
+     * @return the composited color
+     */
+    public static int sourceOver(int src, int dst) {
+        final int sa = src >>> 24;
+        if (sa == 255) {
+            return src;
+        }
+        if (sa == 0) {
+            return dst;
+        }
+        final int da = dst >>> 24;
+        if (da == 0) {
+            return src;
+        }
+        final int dw = (da * (255 - sa) + 127) / 255;
+        final int oa = sa + dw;
+        final int half = oa >> 1;
+        final int r = (((src >>> 16) & 0xFF) * sa + ((dst >>> 16) & 0xFF) * dw + half) / oa,
+                gr = (((src >>> 8) & 0xFF) * sa + ((dst >>> 8) & 0xFF) * dw + half) / oa,
+                b = ((src & 0xFF) * sa + (dst & 0xFF) * dw + half) / oa;
+        return (oa << 24) | (r << 16) | (gr << 8) | b;
+    }
 }
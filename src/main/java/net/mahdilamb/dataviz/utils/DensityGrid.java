@@ -0,0 +1,337 @@
+package net.mahdilamb.dataviz.utils;
+
+import net.mahdilamb.colormap.Colormap;
+import net.mahdilamb.dataviz.utils.rtree.PackedPointIndex;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * A grid of the number of points in each cell (optionally, split by category), used to render very large numbers of
+ * points as an image rather than as individual markers. Row 0 of the grid is at the max y of the bounds.
+ */
+public final class DensityGrid {
+    /**
+     * The normalization to apply to the counts before they are shaded
+     */
+    public enum Normalization {
+        /**
+         * The counts are linearly scaled to the max count
+         */
+        LINEAR,
+        /**
+         * The logarithm of the counts are scaled to the logarithm of the max count
+         */
+        LOG,
+        /**
+         * The counts are mapped to their position in the cumulative distribution of the counts (histogram
+         * equalization)
+         */
+        EQ_HIST
+    }
+
+    /**
+     * A mapping from counts to the range 0-1. The normalizer is computed from one grid, so that separately
+     * aggregated grids (e.g. tiles) are shaded consistently
+     */
+    public static final class Normalizer {
+        private static final int NUM_LEVELS = 256;
+        private final Normalization normalization;
+        private final int max;
+        /*
+         * For histogram equalization, the smallest count at each level
+         */
+        private final int[] levels;
+
+        private Normalizer(final Normalization normalization, final int[] totals, int cellArea) {
+            this.normalization = normalization;
+            int max = 0;
+            int nonZero = 0;
+            for (final int cell : totals) {
+                final int total = perPixel(cell, cellArea);
+                max = Math.max(max, total);
+                if (total != 0) {
+                    ++nonZero;
+                }
+            }
+            this.max = max;
+            if (normalization == Normalization.EQ_HIST) {
+                final int[] sorted = new int[nonZero];
+                for (int i = 0, j = 0; i < totals.length; ++i) {
+                    if (totals[i] != 0) {
+                        sorted[j++] = perPixel(totals[i], cellArea);
+                    }
+                }
+                Arrays.sort(sorted);
+                levels = new int[NUM_LEVELS];
+                for (int i = 0; i < NUM_LEVELS; ++i) {
+                    levels[i] = nonZero == 0 ? 1 : sorted[(int) ((long) i * (nonZero - 1) / (NUM_LEVELS - 1))];
+                }
+            } else {
+                levels = null;
+            }
+        }
+
+        /**
+         * @param count the count
+         * @return the normalized count, in the range 0-1
+         */
+        public double normalize(int count) {
+            if (count <= 0 || max == 0) {
+                return 0;
+            }
+            switch (normalization) {
+                case LOG:
+                    return max == 1 ? 1 : Math.min(1, Math.log(count) / Math.log(max));
+                case EQ_HIST:
+                    //find the highest level with a min count less than or equal to the count
+                    int i = Arrays.binarySearch(levels, count);
+                    if (i < 0) {
+                        i = -i - 2;
+                    } else {
+                        while (i + 1 < levels.length && levels[i + 1] == count) {
+                            ++i;
+                        }
+                    }
+                    return Math.max(0, i) / (NUM_LEVELS - 1.);
+                case LINEAR:
+                default:
+                    return Math.min(1, (double) count / max);
+            }
+        }
+
+        /**
+         * @param count    the count of a cell
+         * @param cellArea the number of pixels in the cell
+         * @return the mean count of each pixel in the cell, rounded up so non-empty cells stay non-empty
+         */
+        private static int perPixel(int count, int cellArea) {
+            return cellArea == 1 ? count : (count + cellArea - 1) / cellArea;
+        }
+
+        /**
+         * @return the max count of the grid used to create this normalizer
+         */
+        public int getMax() {
+            return max;
+        }
+    }
+
+    /*
+     * The min alpha of non-empty cells when shading categories
+     */
+    private static final double MIN_ALPHA = 40 / 255.;
+
+    private final int width, height, numCategories;
+    /*
+     * The counts of each cell (and category), in row-major order
+     */
+    private final int[] counts;
+    private int[] totals;
+
+    private DensityGrid(int width, int height, int numCategories) {
+        this.width = width;
+        this.height = height;
+        this.numCategories = numCategories;
+        this.counts = new int[width * height * numCategories];
+    }
+
+    /**
+     * Aggregate the points in the bounds into a grid. The aggregation is performed in parallel over separate parts
+     * of the index
+     *
+     * @param index         the index of the points
+     * @param filter        the filter for the ids of the points to include (may be {@code null} to include all points)
+     * @param categories    the category of each point (may be {@code null})
+     * @param numCategories the number of categories (ignored if the categories are {@code null})
+     * @param minX          the min x of the bounds
+     * @param minY          the min y of the bounds
+     * @param maxX          the max x of the bounds
+     * @param maxY          the max y of the bounds
+     * @param width         the number of columns in the grid
+     * @param height        the number of rows in the grid
+     * @return the grid
+     * @throws IllegalArgumentException if the width or height is not positive
+     */
+    public static DensityGrid aggregate(final PackedPointIndex index, final IntPredicate filter, final int[] categories, int numCategories, double minX, double minY, double maxX, double maxY, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("The width and height of the grid must be positive");
+        }
+        final int n = categories == null ? 1 : Math.max(1, numCategories);
+        final double scaleX = width / (maxX - minX), scaleY = height / (maxY - minY);
+        return index.collect(minX, minY, maxX, maxY,
+                () -> new DensityGrid(width, height, n),
+                (grid, id, x, y) -> {
+                    if (filter != null && !filter.test(id)) {
+                        return;
+                    }
+                    final int cx = Math.min(width - 1, (int) ((x - minX) * scaleX));
+                    final int cy = Math.min(height - 1, (int) ((maxY - y) * scaleY));
+                    ++grid.counts[(cy * width + cx) * n + (categories == null ? 0 : categories[id])];
+                },
+                DensityGrid::add);
+    }
+
+    private void add(final DensityGrid other) {
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] += other.counts[i];
+        }
+    }
+
+    /**
+     * @return the total count of each cell, in row-major order
+     */
+    private int[] getTotals() {
+        if (totals == null) {
+            if (numCategories == 1) {
+                totals = counts;
+            } else {
+                totals = new int[width * height];
+                for (int i = 0; i < totals.length; ++i) {
+                    for (int c = 0; c < numCategories; ++c) {
+                        totals[i] += counts[i * numCategories + c];
+                    }
+                }
+            }
+        }
+        return totals;
+    }
+
+    /**
+     * @param normalization the normalization method
+     * @return a normalizer using the distribution of counts in this grid
+     */
+    public Normalizer createNormalizer(final Normalization normalization) {
+        return createNormalizer(normalization, 1);
+    }
+
+    /**
+     * Create a normalizer for grids at a finer resolution than this grid
+     *
+     * @param normalization the normalization method
+     * @param cellArea      the number of pixels of the finer grids in each cell of this grid. The normalizer uses the
+     *                      mean count of each pixel in the cells
+     * @return a normalizer using the distribution of counts in this grid
+     * @throws IllegalArgumentException if the cell area is not positive
+     */
+    public Normalizer createNormalizer(final Normalization normalization, int cellArea) {
+        if (cellArea <= 0) {
+            throw new IllegalArgumentException("The cell area must be positive");
+        }
+        return new Normalizer(normalization, getTotals(), cellArea);
+    }
+
+    /**
+     * @return the total number of points in the grid
+     */
+    public long getTotal() {
+        long total = 0;
+        for (final int t : getTotals()) {
+            total += t;
+        }
+        return total;
+    }
+
+    /**
+     * @param x the column
+     * @param y the row
+     * @return the number of points in the cell
+     */
+    public int getCount(int x, int y) {
+        return getTotals()[y * width + x];
+    }
+
+    /**
+     * Shade the counts of the grid using a sequential colormap. Empty cells are transparent
+     *
+     * @param normalizer the normalizer
+     * @param colormap   the colormap
+     * @param flipX      whether to flip the image horizontally
+     * @param flipY      whether to flip the image vertically
+     * @return the shaded image
+     */
+    public BufferedImage shade(final Normalizer normalizer, final Colormap colormap, boolean flipX, boolean flipY) {
+        final int[] lut = new int[256];
+        for (int i = 0; i < lut.length; ++i) {
+            lut[i] = colormap.get(i / 255f).getRGB();
+        }
+        final int[] totals = getTotals();
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                final int count = totals[y * width + x];
+                if (count != 0) {
+                    pixels[getPixel(x, y, flipX, flipY)] = lut[(int) Math.round(normalizer.normalize(count) * 255)];
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Shade the counts of the grid by mixing the colors of the categories in each cell, with the alpha determined by
+     * the total count in the cell. Empty cells are transparent
+     *
+     * @param normalizer the normalizer
+     * @param colors     the color of each category
+     * @param flipX      whether to flip the image horizontally
+     * @param flipY      whether to flip the image vertically
+     * @return the shaded image
+     */
+    public BufferedImage shade(final Normalizer normalizer, final Color[] colors, boolean flipX, boolean flipY) {
+        final int[] totals = getTotals();
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                final int cell = y * width + x;
+                final int total = totals[cell];
+                if (total == 0) {
+                    continue;
+                }
+                double r = 0, g = 0, b = 0;
+                for (int c = 0; c < numCategories; ++c) {
+                    final int count = counts[cell * numCategories + c];
+                    if (count != 0) {
+                        final Color color = colors[c];
+                        r += color.getRed() * count;
+                        g += color.getGreen() * count;
+                        b += color.getBlue() * count;
+                    }
+                }
+                final int alpha = (int) Math.round(255 * (MIN_ALPHA + (1 - MIN_ALPHA) * normalizer.normalize(total)));
+                pixels[getPixel(x, y, flipX, flipY)] = (alpha << 24) | ((int) Math.round(r / total) << 16) | ((int) Math.round(g / total) << 8) | (int) Math.round(b / total);
+            }
+        }
+        return image;
+    }
+
+    private int getPixel(int x, int y, boolean flipX, boolean flipY) {
+        return (flipY ? (height - 1 - y) : y) * width + (flipX ? (width - 1 - x) : x);
+    }
+
+    /**
+     * @return the number of columns in the grid
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the number of rows in the grid
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return the number of categories in the grid
+     */
+    public int getNumCategories() {
+        return numCategories;
+    }
+}
@@ -0,0 +1,189 @@
+package net.mahdilamb.dataviz.utils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * A size-bounded store of image tiles held as PNG files in a local directory. Tiles are identified by a 64-bit key
+ * which should be a fingerprint of everything that determines the content of the tile. The least recently used tiles
+ * are removed when the size of the directory exceeds its budget. The access order is persisted through the
+ * modification time of the files, so the cache may be reused between JVMs.
+ */
+public final class DiskTileCache {
+    private static final String EXTENSION = ".png";
+
+    private final Path directory;
+    private final long maxBytes;
+    /*
+     * Map of key to file size, in access order
+     */
+    private final LinkedHashMap<Long, Long> entries = new LinkedHashMap<>(16, .75f, true);
+    private long bytesHeld = 0;
+
+    /**
+     * Create a disk cache in the given directory. Existing tiles in the directory are reused
+     *
+     * @param directory the directory in which to store the tiles (created if it does not exist)
+     * @param maxBytes  the maximum number of bytes the tiles may use on disk
+     * @throws IOException              if the directory cannot be created or read
+     * @throws IllegalArgumentException if the maximum number of bytes is not positive
+     */
+    public DiskTileCache(final Path directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("max bytes must be greater than 0");
+        }
+        this.directory = Files.createDirectories(Objects.requireNonNull(directory));
+        this.maxBytes = maxBytes;
+        final List<Path> files = new ArrayList<>();
+        try (final Stream<Path> stream = Files.list(directory)) {
+            stream.filter(p -> p.getFileName().toString().endsWith(EXTENSION)).forEach(files::add);
+        }
+        final Map<Path, FileTime> modified = new HashMap<>(files.size());
+        for (final Path file : files) {
+            modified.put(file, Files.getLastModifiedTime(file));
+        }
+        files.sort(Comparator.comparing(modified::get));
+        for (final Path file : files) {
+            final String name = file.getFileName().toString();
+            try {
+                final long key = Long.parseUnsignedLong(name.substring(0, name.length() - EXTENSION.length()), 16);
+                final long size = Files.size(file);
+                entries.put(key, size);
+                bytesHeld += size;
+            } catch (NumberFormatException ignored) {
+                //not a tile
+            }
+        }
+        trimToSize();
+    }
+
+    /**
+     * Load a tile
+     *
+     * @param key the key of the tile
+     * @return the tile or {@code null} if the tile is not in the cache or cannot be read
+     */
+    public synchronized BufferedImage load(long key) {
+        if (entries.get(key) == null) {
+            return null;
+        }
+        final Path file = getPath(key);
+        try {
+            final BufferedImage image = ImageIO.read(file.toFile());
+            if (image == null) {
+                remove(key);
+                return null;
+            }
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return image;
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Store a tile. Failures to write are ignored, as the tile can always be recreated
+     *
+     * @param key   the key of the tile
+     * @param image the content of the tile
+     */
+    public synchronized void store(long key, final BufferedImage image) {
+        if (entries.containsKey(key)) {
+            return;
+        }
+        final Path file = getPath(key);
+        try {
+            final Path temp = Files.createTempFile(directory, null, ".tmp");
+            try {
+                ImageIO.write(image, "png", temp.toFile());
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            final long size = Files.size(file);
+            entries.put(key, size);
+            bytesHeld += size;
+            trimToSize();
+        } catch (IOException ignored) {
+            //the tile will be recreated when requested
+        }
+    }
+
+    /**
+     * @param key the key of the tile
+     * @return whether the cache contains the tile
+     */
+    public synchronized boolean contains(long key) {
+        return entries.containsKey(key);
+    }
+
+    /**
+     * @return the number of bytes used by the tiles on disk
+     */
+    public synchronized long getBytesHeld() {
+        return bytesHeld;
+    }
+
+    /**
+     * @return the number of tiles in the cache
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove all the tiles from the cache
+     */
+    public synchronized void clear() {
+        for (final Long key : new ArrayList<>(entries.keySet())) {
+            remove(key);
+        }
+    }
+
+    /**
+     * @return the directory containing the tiles
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private Path getPath(long key) {
+        return directory.resolve(Long.toHexString(key) + EXTENSION);
+    }
+
+    private void remove(long key) {
+        final Long size = entries.remove(key);
+        if (size != null) {
+            bytesHeld -= size;
+        }
+        try {
+            Files.deleteIfExists(getPath(key));
+        } catch (IOException ignored) {
+            //will be overwritten if the key is stored again
+        }
+    }
+
+    /**
+     * Remove the least recently used tiles until the cache is within its budget
+     */
+    private void trimToSize() {
+        final Iterator<Map.Entry<Long, Long>> iterator = entries.entrySet().iterator();
+        while (bytesHeld > maxBytes && iterator.hasNext()) {
+            final Map.Entry<Long, Long> entry = iterator.next();
+            iterator.remove();
+            bytesHeld -= entry.getValue();
+            try {
+                Files.deleteIfExists(getPath(entry.getKey()));
+            } catch (IOException ignored) {
+                //will be overwritten if the key is stored again
+            }
+        }
+    }
+
+}
@@ -0,0 +1,347 @@
+package net.mahdilamb.dataviz.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Viewport-aware downsampling of series whose x values are sorted. The series is split into pixel columns, using a grid
+ * that is aligned to the pixels of the viewport (so that the columns do not change when panning by whole pixels), and a
+ * small number of points are kept for each column.
+ */
+public final class Downsampling {
+    /**
+     * The method used to choose the points to keep in each pixel column
+     */
+    public enum Mode {
+        /**
+         * Keep all the points
+         */
+        NONE,
+        /**
+         * Keep the first, last, min and max point in each pixel column. The resulting line is identical to the full
+         * line when rasterized
+         */
+        M4,
+        /**
+         * Keep the point in each pixel column that forms the largest triangle with the point kept in the previous
+         * column and the average of the next column (Largest-Triangle-Three-Buckets). This produces a smoother line
+         * than M4, but is not exact
+         */
+        LTTB
+    }
+
+    /**
+     * A cache of the downsampled points of a series at the most recently used scales. At each scale, the cache covers a
+     * contiguous range of pixel columns which is extended as the viewport moves, so panning only computes the newly
+     * exposed columns, and zooming back to a recent scale does not compute anything
+     */
+    public static final class Cache {
+        /**
+         * The maximum number of scales held
+         */
+        private static final int MAX_LEVELS = 4;
+
+        /**
+         * The downsampled points at a single scale and alignment of the pixel columns
+         */
+        private static final class Level {
+            final Mode mode;
+            final double scale, phase;
+            /*
+             * The range of columns covered by the level (end exclusive)
+             */
+            long startColumn, endColumn;
+            int[] indices = new int[0];
+            int size = 0;
+
+            Level(Mode mode, double scale, double phase) {
+                this.mode = mode;
+                this.scale = scale;
+                this.phase = phase;
+            }
+
+            private void ensureCapacity(int capacity) {
+                if (indices.length < capacity) {
+                    indices = Arrays.copyOf(indices, Math.max(capacity, indices.length * 2));
+                }
+            }
+        }
+
+        //the levels, most recently used first
+        private final List<Level> levels = new ArrayList<>(MAX_LEVELS);
+
+        /**
+         * Visit the indices of the points to draw for the given range of the series. The point before and the point
+         * after the range are included, so lines that leave the range are drawn
+         *
+         * @param x       the x values of the series (must be sorted in ascending order)
+         * @param y       the y values of the series
+         * @param mode    the downsampling mode
+         * @param scale   the number of pixels per unit of x
+         * @param phase   the fraction of a pixel that the pixel columns are offset by, so that they are aligned to the
+         *                pixels of the viewport (i.e. the fractional part of the pixel position of x = 0)
+         * @param minX    the min x of the range
+         * @param maxX    the max x of the range
+         * @param visitor the function to apply to each index, in ascending order
+         */
+        public synchronized void forEach(final double[] x, final double[] y, final Mode mode, double scale, double phase, double minX, double maxX, final IntConsumer visitor) {
+            if (x.length == 0) {
+                return;
+            }
+            if (mode == Mode.NONE || !(scale > 0)) {
+                final int from = Math.max(0, lowerBound(x, minX) - 1), to = Math.min(x.length, upperBound(x, maxX) + 1);
+                for (int i = from; i < to; ++i) {
+                    visitor.accept(i);
+                }
+                return;
+            }
+            final long start = column(minX, scale, phase), end = column(maxX, scale, phase) + 1;
+            final Level level = getLevel(mode, scale, phase);
+            if (level.size == 0 || end < level.startColumn || start > level.endColumn) {
+                level.size = 0;
+                level.startColumn = start;
+                level.endColumn = start;
+            }
+            if (start < level.startColumn) {
+                //prepend the newly exposed columns
+                final int[] before = new int[4 * (int) Math.min(x.length, level.startColumn - start) + 4];
+                final int n = downsample(x, y, mode, scale, phase, start, level.startColumn, before, 0);
+                level.ensureCapacity(n + level.size);
+                System.arraycopy(level.indices, 0, level.indices, n, level.size);
+                System.arraycopy(before, 0, level.indices, 0, n);
+                level.size += n;
+                level.startColumn = start;
+            }
+            if (end > level.endColumn) {
+                //append the newly exposed columns
+                level.ensureCapacity(level.size + 4 * (int) Math.min(x.length, end - level.endColumn) + 4);
+                level.size += downsample(x, y, mode, scale, phase, level.endColumn, end, level.indices, level.size);
+                level.endColumn = end;
+            }
+            //find the points in the range, plus one either side
+            final int from = lowerBound(x, minX), to = upperBound(x, maxX);
+            if (from > 0) {
+                visitor.accept(from - 1);
+            }
+            int i = Arrays.binarySearch(level.indices, 0, level.size, from);
+            for (i = i < 0 ? (-i - 1) : i; i < level.size && level.indices[i] < to; ++i) {
+                visitor.accept(level.indices[i]);
+            }
+            if (to < x.length) {
+                visitor.accept(to);
+            }
+        }
+
+        /**
+         * @return the level for the mode, scale and phase, moving it to the front or replacing the least recently used
+         */
+        private Level getLevel(final Mode mode, double scale, double phase) {
+            for (int i = 0; i < levels.size(); ++i) {
+                final Level level = levels.get(i);
+                if (level.mode == mode && level.scale == scale && level.phase == phase) {
+                    if (i != 0) {
+                        levels.remove(i);
+                        levels.add(0, level);
+                    }
+                    return level;
+                }
+            }
+            if (levels.size() == MAX_LEVELS) {
+                levels.remove(MAX_LEVELS - 1);
+            }
+            final Level level = new Level(mode, scale, phase);
+            levels.add(0, level);
+            return level;
+        }
+
+        /**
+         * @return the number of points held in the cache, at all scales
+         */
+        public synchronized int size() {
+            int size = 0;
+            for (final Level level : levels) {
+                size += level.size;
+            }
+            return size;
+        }
+
+        /**
+         * Clear the cache
+         */
+        public synchronized void clear() {
+            levels.clear();
+        }
+    }
+
+    private Downsampling() {
+
+    }
+
+    /**
+     * @param x     the x value
+     * @param scale the number of pixels per unit of x
+     * @param phase the fraction of a pixel that the columns are offset by
+     * @return the pixel column of the value
+     */
+    static long column(double x, double scale, double phase) {
+        return (long) Math.floor(x * scale + phase);
+    }
+
+    /**
+     * Downsample the points of a series in a range of pixel columns
+     *
+     * @param x           the x values of the series (must be sorted in ascending order)
+     * @param y           the y values of the series
+     * @param mode        the downsampling mode
+     * @param scale       the number of pixels per unit of x
+     * @param phase       the fraction of a pixel that the columns are offset by
+     * @param startColumn the first column
+     * @param endColumn   the column after the last
+     * @param out         the output array of indices, which must have space for 4 indices per column (or per point,
+     *                    if fewer)
+     * @param offset      the offset in the output array
+     * @return the number of indices written to the output
+     */
+    public static int downsample(final double[] x, final double[] y, final Mode mode, double scale, double phase, long startColumn, long endColumn, int[] out, int offset) {
+        final int from = lowerBound(x, (startColumn - phase) / scale), to = lowerBound(x, (endColumn - phase) / scale);
+        int n = offset;
+        int i = from;
+        //the point kept in the previous column (for LTTB)
+        int previous = from > 0 ? (from - 1) : -1;
+        while (i < to) {
+            final long column = column(x[i], scale, phase);
+            int end = i + 1;
+            while (end < to && column(x[end], scale, phase) == column) {
+                ++end;
+            }
+            switch (mode) {
+                case LTTB:
+                    previous = out[n++] = largestTriangle(x, y, scale, phase, i, end, previous, x.length);
+                    break;
+                case M4:
+                default:
+                    n = m4(y, i, end, out, n);
+                    break;
+            }
+            i = end;
+        }
+        return n - offset;
+    }
+
+    /**
+     * Add the first, min, max and last indices of a column to the output, in ascending order and without duplicates
+     */
+    private static int m4(final double[] y, int from, int to, int[] out, int n) {
+        int min = from, max = from;
+        for (int i = from + 1; i < to; ++i) {
+            if (y[i] < y[min]) {
+                min = i;
+            }
+            if (y[i] > y[max]) {
+                max = i;
+            }
+        }
+        out[n++] = from;
+        final int a = Math.min(min, max), b = Math.max(min, max);
+        if (a != from) {
+            out[n++] = a;
+        }
+        if (b != a && b != from) {
+            out[n++] = b;
+        }
+        if (to - 1 != b && to - 1 != from) {
+            out[n++] = to - 1;
+        }
+        return n;
+    }
+
+    /**
+     * @return the index in the column which forms the largest triangle with the previous point and the average of the
+     * next column
+     */
+    private static int largestTriangle(final double[] x, final double[] y, double scale, double phase, int from, int to, int previous, int limit) {
+        if (to - from == 1 || previous < 0) {
+            return from;
+        }
+        //average of the next column
+        double avgX = 0, avgY = 0;
+        int count = 0;
+        if (to < limit) {
+            final long next = column(x[to], scale, phase);
+            for (int i = to; i < limit && column(x[i], scale, phase) == next; ++i) {
+                avgX += x[i];
+                avgY += y[i];
+                ++count;
+            }
+        }
+        if (count == 0) {
+            avgX = x[to - 1];
+            avgY = y[to - 1];
+        } else {
+            avgX /= count;
+            avgY /= count;
+        }
+        final double ax = x[previous], ay = y[previous];
+        int best = from;
+        double bestArea = -1;
+        for (int i = from; i < to; ++i) {
+            final double area = Math.abs((ax - avgX) * (y[i] - ay) - (ax - x[i]) * (avgY - ay));
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param x     the sorted values
+     * @param value the value
+     * @return the index of the first element greater than or equal to the value
+     */
+    static int lowerBound(final double[] x, double value) {
+        int lo = 0, hi = x.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (x[mid] < value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @param x     the sorted values
+     * @param value the value
+     * @return the index of the first element greater than the value
+     */
+    static int upperBound(final double[] x, double value) {
+        int lo = 0, hi = x.length;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (x[mid] <= value) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * @param x the values
+     * @return whether the values are finite and sorted in ascending order
+     */
+    public static boolean isSorted(final double[] x) {
+        for (int i = 0; i < x.length; ++i) {
+            if (!Double.isFinite(x[i]) || (i > 0 && x[i] < x[i - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
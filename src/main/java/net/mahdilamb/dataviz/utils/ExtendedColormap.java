@@ -4,17 +4,37 @@ import net.mahdilamb.colormap.Colormap;
 import net.mahdilamb.colormap.Colormaps;
 
 import java.awt.*;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Objects;
+import java.util.stream.IntStream;
 
 /**
  * A colormap that can be statically scaled between values. Supports reversing a colormap and use logarithmic, rather
  * than linearly scale if desired. Does not watch colors.
  */
 public class ExtendedColormap implements Colormap {
+    /**
+     * The number of entries in the lookup table used for quantized sampling
+     */
+    public static final int LUT_SIZE = 4096;
+    /*
+     * The number of values mapped by each task when mapping in parallel
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
     private Colormap colormap;
     private double mapMin = 0, mapMax = 1;
     private boolean useLog = false, reversed = false;
+    /*
+     * The smallest value at each level of the lookup table, when using histogram equalization
+     */
+    private double[] equalization;
+    /*
+     * The lookup table, which is created when first needed and cleared when the colormap is changed
+     */
+    private int[] lut;
+    private int nanARGB, lowARGB, highARGB;
 
     /**
      * Extend the given colormap
@@ -54,6 +74,7 @@ public class ExtendedColormap implements Colormap {
         }
         this.mapMin = valMin;
         this.mapMax = valMax;
+        lut = null;
         return this;
     }
 
@@ -65,6 +86,7 @@ public class ExtendedColormap implements Colormap {
      */
     public ExtendedColormap setLogarithmic(boolean useLog) {
         this.useLog = useLog;
+        lut = null;
         return this;
     }
 
@@ -76,6 +98,7 @@ public class ExtendedColormap implements Colormap {
      */
     public ExtendedColormap setReversed(boolean reversed) {
         this.reversed = reversed;
+        lut = null;
         return this;
     }
 
@@ -85,6 +108,29 @@ public class ExtendedColormap implements Colormap {
      */
     public ExtendedColormap setColormap(final Colormap colormap) {
         Objects.requireNonNull(this.colormap = colormap);
+        lut = null;
+        return this;
+    }
+
+    /**
+     * Use histogram equalization, so that the colors are spread evenly over the distribution of the given values
+     * rather than linearly over the range. This is only applied by the quantized methods ({@link #getARGB(double)} and
+     * {@link #map(double[], int[])}) and takes the place of the log scale
+     *
+     * @param values the values whose distribution to use (or {@code null} to stop using histogram equalization)
+     * @return this extended colormap
+     */
+    public ExtendedColormap setEqualization(final double[] values) {
+        if (values == null) {
+            equalization = null;
+        } else {
+            final double[] sorted = Arrays.stream(values).filter(Double::isFinite).sorted().toArray();
+            equalization = new double[LUT_SIZE];
+            for (int i = 0; i < LUT_SIZE; ++i) {
+                equalization[i] = sorted.length == 0 ? 0 : sorted[(int) ((long) i * (sorted.length - 1) / (LUT_SIZE - 1))];
+            }
+        }
+        lut = null;
         return this;
     }
 
@@ -123,6 +169,100 @@ public class ExtendedColormap implements Colormap {
         return colormap.get(Float.valueOf((float) t));
     }
 
+    /**
+     * Get the color of a value from the lookup table. The color is quantized to one of {@link #LUT_SIZE} levels
+     * across the range, with the reversal and log scale (or histogram equalization) already applied
+     *
+     * @param value the value
+     * @return the packed ARGB color of the value
+     */
+    public int getARGB(double value) {
+        final int[] lut = getLUT();
+        if (!Double.isFinite(value)) {
+            return nanARGB;
+        } else if (value < mapMin) {
+            return reversed ? highARGB : lowARGB;
+        } else if (value > mapMax) {
+            return reversed ? lowARGB : highARGB;
+        }
+        return lut[getLevel(value)];
+    }
+
+    /**
+     * Map values to packed ARGB colors using the lookup table. Large arrays are mapped in parallel
+     *
+     * @param values  the values
+     * @param outArgb the output array, which must be at least as long as the values
+     * @throws IllegalArgumentException if the output array is shorter than the values
+     */
+    public void map(final double[] values, final int[] outArgb) {
+        if (outArgb.length < values.length) {
+            throw new IllegalArgumentException("The output array must be at least as long as the values");
+        }
+        getLUT();
+        if (values.length <= CHUNK_SIZE) {
+            map(values, outArgb, 0, values.length);
+            return;
+        }
+        IntStream.range(0, (values.length + CHUNK_SIZE - 1) / CHUNK_SIZE)
+                .parallel()
+                .forEach(c -> map(values, outArgb, c * CHUNK_SIZE, Math.min(values.length, (c + 1) * CHUNK_SIZE)));
+    }
+
+    private void map(final double[] values, final int[] outArgb, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            outArgb[i] = getARGB(values[i]);
+        }
+    }
+
+    /**
+     * @param value a finite value in the range
+     * @return the level of the lookup table for the value
+     */
+    private int getLevel(double value) {
+        if (equalization != null) {
+            //the highest level with a min value less than or equal to the value
+            int lo = 0, hi = LUT_SIZE;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (equalization[mid] <= value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return Math.max(0, lo - 1);
+        }
+        return Math.min(LUT_SIZE - 1, (int) ((value - mapMin) / (mapMax - mapMin) * (LUT_SIZE - 1) + .5));
+    }
+
+    /**
+     * @return the lookup table of the colors at each level, creating it if needed
+     */
+    private int[] getLUT() {
+        int[] lut = this.lut;
+        if (lut == null) {
+            lut = new int[LUT_SIZE];
+            for (int i = 0; i < LUT_SIZE; ++i) {
+                double t = (double) i / (LUT_SIZE - 1);
+                t = reversed ? (1 - t) : t;
+                if (useLog && equalization == null) {
+                    t = Interpolations.easeInExpo(t);
+                }
+                lut[i] = colormap.get(Float.valueOf((float) t)).getRGB();
+            }
+            nanARGB = getARGB(getNaNColor(), 0);
+            lowARGB = getARGB(getLowColor(), reversed ? lut[LUT_SIZE - 1] : lut[0]);
+            highARGB = getARGB(getHighColor(), reversed ? lut[0] : lut[LUT_SIZE - 1]);
+            this.lut = lut;
+        }
+        return lut;
+    }
+
+    private static int getARGB(final Color color, int defaultARGB) {
+        return color == null ? defaultARGB : color.getRGB();
+    }
+
     @Override
     public Color get(Float position) {
         if (position == null) {
@@ -0,0 +1,268 @@
+package net.mahdilamb.dataviz.utils;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A screen-space index used to find the item under the mouse. The viewport is split into square blocks of cells. Each
+ * block is filled the first time that it is queried, and records which items overlap each of its cells, so finding the
+ * item nearest to a position only needs to check the few items that overlap a single cell.
+ * <p>
+ * Items are identified by a layer (e.g. the index of a trace) and an id (e.g. the row of the item). Where items are the
+ * same distance from the position, the one added last (i.e. drawn on top) is used.
+ *
+ * @param <T> the type of the items
+ */
+public final class HoverGrid<T> {
+    /**
+     * The size of a cell, in pixels
+     */
+    public static final int CELL_SIZE = 8;
+    /**
+     * The number of cells along each side of a block
+     */
+    private static final int CELLS_PER_BLOCK = 8;
+    /**
+     * The size of a block, in pixels
+     */
+    public static final int BLOCK_SIZE = CELL_SIZE * CELLS_PER_BLOCK;
+
+    /**
+     * The source of the items in the grid
+     *
+     * @param <T> the type of the items
+     */
+    public interface Source<T> {
+        /**
+         * Add the items that overlap an area of the viewport to a block
+         *
+         * @param block the block to add to
+         * @param minX  the min x of the area, in pixels
+         * @param minY  the min y of the area, in pixels
+         * @param maxX  the max x of the area, in pixels
+         * @param maxY  the max y of the area, in pixels
+         */
+        void fill(Block<T> block, double minX, double minY, double maxX, double maxY);
+
+        /**
+         * Create the item for an entry that was added without one
+         *
+         * @param layer the layer of the entry
+         * @param id    the id of the entry
+         * @return the item
+         */
+        T get(int layer, int id);
+    }
+
+    /**
+     * The items that overlap a block of cells
+     *
+     * @param <T> the type of the items
+     */
+    public static final class Block<T> {
+        private final double minX, minY;
+        private int size;
+        private int[] layers = new int[16], ids = new int[16];
+        private Object[] items = new Object[16];
+        //the x, y, half width and half height of each entry
+        private double[] extents = new double[64];
+        //the entries in each cell, with the start of each cell in cellItems
+        private final int[] cellStart = new int[CELLS_PER_BLOCK * CELLS_PER_BLOCK + 1];
+        private int[] cellItems;
+
+        private Block(double minX, double minY) {
+            this.minX = minX;
+            this.minY = minY;
+        }
+
+        /**
+         * Add an entry to the block
+         *
+         * @param layer      the layer of the entry
+         * @param id         the id of the entry
+         * @param item       the item (may be {@code null}, in which case the item is created by the source when needed)
+         * @param x          the x position of the center of the entry, in pixels
+         * @param y          the y position of the center of the entry, in pixels
+         * @param halfWidth  half the width of the entry, in pixels
+         * @param halfHeight half the height of the entry, in pixels
+         */
+        public void add(int layer, int id, T item, double x, double y, double halfWidth, double halfHeight) {
+            if (x + halfWidth < minX || y + halfHeight < minY || x - halfWidth > minX + BLOCK_SIZE || y - halfHeight > minY + BLOCK_SIZE) {
+                return;
+            }
+            if (size == layers.length) {
+                layers = Arrays.copyOf(layers, size << 1);
+                ids = Arrays.copyOf(ids, size << 1);
+                items = Arrays.copyOf(items, size << 1);
+                extents = Arrays.copyOf(extents, size << 3);
+            }
+            layers[size] = layer;
+            ids[size] = id;
+            items[size] = item;
+            extents[size << 2] = x;
+            extents[(size << 2) + 1] = y;
+            extents[(size << 2) + 2] = halfWidth;
+            extents[(size << 2) + 3] = halfHeight;
+            ++size;
+        }
+
+        private int firstCell(double v, double min) {
+            return Math.max(0, Math.min(CELLS_PER_BLOCK - 1, (int) Math.floor((v - min) / CELL_SIZE)));
+        }
+
+        /*
+         * Bin the entries into the cells that they overlap
+         */
+        private void build() {
+            for (int pass = 0; pass < 2; ++pass) {
+                if (pass == 1) {
+                    for (int c = 1; c < cellStart.length; ++c) {
+                        cellStart[c] += cellStart[c - 1];
+                    }
+                    cellItems = new int[cellStart[cellStart.length - 1]];
+                }
+                for (int i = size - 1; i >= 0; --i) {
+                    final int e = i << 2;
+                    final int cx0 = firstCell(extents[e] - extents[e + 2], minX),
+                            cx1 = firstCell(extents[e] + extents[e + 2], minX),
+                            cy0 = firstCell(extents[e + 1] - extents[e + 3], minY),
+                            cy1 = firstCell(extents[e + 1] + extents[e + 3], minY);
+                    for (int cy = cy0; cy <= cy1; ++cy) {
+                        for (int cx = cx0; cx <= cx1; ++cx) {
+                            final int cell = cy * CELLS_PER_BLOCK + cx;
+                            if (pass == 0) {
+                                ++cellStart[cell + 1];
+                            } else {
+                                //fill from the end of the cell so that the entries stay in the order they were added
+                                cellItems[--cellStart[cell + 1]] = i;
+                            }
+                        }
+                    }
+                }
+            }
+            //the end of each cell was moved back to its start, so shift the starts down by one cell
+            System.arraycopy(cellStart, 1, cellStart, 0, cellStart.length - 1);
+            cellStart[cellStart.length - 1] = cellItems.length;
+        }
+
+        /**
+         * @return the index of the entry nearest to the position that contains it, or -1
+         */
+        private int nearest(double x, double y) {
+            final int cell = firstCell(y, minY) * CELLS_PER_BLOCK + firstCell(x, minX);
+            int nearest = -1;
+            double nearestDistance = Double.POSITIVE_INFINITY;
+            for (int c = cellStart[cell], end = cellStart[cell + 1]; c < end; ++c) {
+                final int e = cellItems[c] << 2;
+                final double dx = Math.abs(x - extents[e]), dy = Math.abs(y - extents[e + 1]);
+                if (dx > extents[e + 2] || dy > extents[e + 3]) {
+                    continue;
+                }
+                final double distance = dx * dx + dy * dy;
+                if (distance <= nearestDistance) {
+                    nearestDistance = distance;
+                    nearest = cellItems[c];
+                }
+            }
+            return nearest;
+        }
+    }
+
+    private final Source<T> source;
+    private double width, height;
+    private int blocksX, blocksY;
+    private Block<T>[] blocks;
+
+    /**
+     * Create an empty grid
+     *
+     * @param source the source of the items
+     */
+    public HoverGrid(final Source<T> source) {
+        this.source = Objects.requireNonNull(source);
+        reset(0, 0);
+    }
+
+    /**
+     * Remove all the blocks and set the size of the viewport
+     *
+     * @param width  the width of the viewport, in pixels
+     * @param height the height of the viewport, in pixels
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public synchronized void reset(double width, double height) {
+        this.width = width;
+        this.height = height;
+        blocksX = (int) Math.ceil(width / BLOCK_SIZE);
+        blocksY = (int) Math.ceil(height / BLOCK_SIZE);
+        blocks = new Block[blocksX * blocksY];
+    }
+
+    /**
+     * Remove all the blocks, so they are filled again when next queried
+     */
+    public synchronized void clear() {
+        Arrays.fill(blocks, null);
+    }
+
+    /**
+     * Remove the blocks that overlap an area of the viewport (e.g. when a tile is redrawn)
+     *
+     * @param minX the min x of the area, in pixels
+     * @param minY the min y of the area, in pixels
+     * @param maxX the max x of the area, in pixels
+     * @param maxY the max y of the area, in pixels
+     */
+    public synchronized void invalidate(double minX, double minY, double maxX, double maxY) {
+        final int bx0 = Math.max(0, (int) Math.floor(minX / BLOCK_SIZE)),
+                by0 = Math.max(0, (int) Math.floor(minY / BLOCK_SIZE)),
+                bx1 = Math.min(blocksX - 1, (int) Math.floor(maxX / BLOCK_SIZE)),
+                by1 = Math.min(blocksY - 1, (int) Math.floor(maxY / BLOCK_SIZE));
+        for (int by = by0; by <= by1; ++by) {
+            for (int bx = bx0; bx <= bx1; ++bx) {
+                blocks[by * blocksX + bx] = null;
+            }
+        }
+    }
+
+    /**
+     * @return the width of the viewport
+     */
+    public double getWidth() {
+        return width;
+    }
+
+    /**
+     * @return the height of the viewport
+     */
+    public double getHeight() {
+        return height;
+    }
+
+    /**
+     * Find the item nearest to a position, from the items whose extent contains the position
+     *
+     * @param x the x position, in pixels
+     * @param y the y position, in pixels
+     * @return the nearest item, or {@code null} if there are no items at the position
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized T nearest(double x, double y) {
+        if (!(x >= 0 && y >= 0 && x < width && y < height)) {
+            return null;
+        }
+        final int b = ((int) (y / BLOCK_SIZE)) * blocksX + (int) (x / BLOCK_SIZE);
+        Block<T> block = blocks[b];
+        if (block == null) {
+            block = new Block<>(Math.floor(x / BLOCK_SIZE) * BLOCK_SIZE, Math.floor(y / BLOCK_SIZE) * BLOCK_SIZE);
+            source.fill(block, block.minX, block.minY, block.minX + BLOCK_SIZE, block.minY + BLOCK_SIZE);
+            block.build();
+            blocks[b] = block;
+        }
+        final int i = block.nearest(x, y);
+        if (i == -1) {
+            return null;
+        }
+        return block.items[i] == null ? source.get(block.layers[i], block.ids[i]) : (T) block.items[i];
+    }
+}
@@ -144,6 +144,32 @@ public final class Numbers {
         return r;
     }
 
+    /**
+     * Combine a value into a 64-bit hash. The result is stable between JVMs so may be used for persistent keys
+     *
+     * @param hash  the current hash
+     * @param value the value to combine
+     * @return the updated hash
+     */
+    public static long hashCombine(long hash, long value) {
+        long h = hash ^ (value + 0x9E3779B97F4A7C15L + (hash << 6) + (hash >>> 2));
+        //finalizer from SplitMix64
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+
+    /**
+     * Combine a value into a 64-bit hash
+     *
+     * @param hash  the current hash
+     * @param value the value to combine
+     * @return the updated hash
+     */
+    public static long hashCombine(long hash, double value) {
+        return hashCombine(hash, Double.doubleToLongBits(value));
+    }
+
     public static double requireFinitePositive(double x) {
         if (!Double.isFinite(x)) {
             throw new IllegalArgumentException("Number is not finite");
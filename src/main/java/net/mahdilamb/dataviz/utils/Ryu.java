@@ -4,7 +4,14 @@ package net.mahdilamb.dataviz.utils;
 import java.math.BigInteger;
 
 /**
- * Code has been modified to quickly extract the length of a string representation of a double.
+ * Shortest round-trip formatting of doubles, using the <a href="https://github.com/ulfjack/ryu">Ryu</a> algorithm.
+ * <p>
+ * The digits are written into a caller-supplied {@code char[]} or {@link StringBuilder}, so formatting does not
+ * allocate (other than to grow the builder) and does not lock. The shortest form follows the format of
+ * {@link Double#toString(double)}, and the fixed forms write at most a given number of decimal places, without an
+ * exponent and without trailing zeros.
+ * <p>
+ * Code has been modified from the original to write into existing buffers and to add the fixed-precision forms.
  */
 // Copyright 2018 Ulf Adams
 //
@@ -19,10 +26,23 @@ import java.math.BigInteger;
 // WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
 // See the License for the specific language governing permissions and
 // limitations under the License.
-final class Ryu {
-    private Ryu(){
+public final class Ryu {
+    private Ryu() {
 
     }
+
+    /**
+     * The maximum number of characters written by {@link #toChars(double, char[], int)}
+     */
+    public static final int MAX_CHARS = 24;
+    /**
+     * The maximum number of decimal places supported by the fixed-precision forms
+     */
+    public static final int MAX_DECIMALS = 17;
+    /*
+     * Scratch space for the StringBuilder forms
+     */
+    private static final ThreadLocal<char[]> SCRATCH = ThreadLocal.withInitial(() -> new char[64]);
     static final int DOUBLE_MANTISSA_BITS = 52;
     static final long DOUBLE_MANTISSA_MASK = (1L << DOUBLE_MANTISSA_BITS) - 1;
 
@@ -75,14 +95,309 @@ final class Ryu {
         }
     }
 
+    /**
+     * Write the shortest decimal representation of a double that parses back to the same value, in the format of
+     * {@link Double#toString(double)}
+     *
+     * @param value  the value
+     * @param out    the buffer to write to. This must have space for {@link #MAX_CHARS} characters after the offset
+     * @param offset the position in the buffer to start writing at
+     * @return the number of characters written
+     */
+    public static int toChars(double value, final char[] out, int offset) {
+        final long bits = Double.doubleToRawLongBits(value);
+        final int special = writeSpecial(value, bits, out, offset);
+        if (special != 0) {
+            return special;
+        }
+        int index = offset;
+        if (bits < 0) {
+            out[index++] = '-';
+        }
+        final int decimal = decimal(bits, out, index);
+        final int olength = decimal & 31, exp = decimal >> 5;
+        if (exp < -3 || exp >= 7) {
+            //x.xxxxE-yy
+            System.arraycopy(out, index + 1, out, index + 2, olength - 1);
+            out[index + 1] = '.';
+            index += olength + 1;
+            if (olength == 1) {
+                out[index++] = '0';
+            }
+            out[index++] = 'E';
+            int e = exp;
+            if (e < 0) {
+                out[index++] = '-';
+                e = -e;
+            }
+            if (e >= 100) {
+                out[index++] = (char) ('0' + e / 100);
+                e %= 100;
+                out[index++] = (char) ('0' + e / 10);
+            } else if (e >= 10) {
+                out[index++] = (char) ('0' + e / 10);
+            }
+            out[index++] = (char) ('0' + e % 10);
+        } else if (exp < 0) {
+            //0.00xxxx
+            final int zeros = -exp - 1;
+            System.arraycopy(out, index, out, index + 2 + zeros, olength);
+            out[index++] = '0';
+            out[index++] = '.';
+            for (int i = 0; i < zeros; ++i) {
+                out[index++] = '0';
+            }
+            index += olength;
+        } else if (exp + 1 >= olength) {
+            //xxxx00.0
+            index += olength;
+            for (int i = olength; i < exp + 1; ++i) {
+                out[index++] = '0';
+            }
+            out[index++] = '.';
+            out[index++] = '0';
+        } else {
+            //xx.xx
+            System.arraycopy(out, index + exp + 1, out, index + exp + 2, olength - exp - 1);
+            out[index + exp + 1] = '.';
+            index += olength + 1;
+        }
+        return index - offset;
+    }
+
+    /**
+     * Append the shortest decimal representation of a double that parses back to the same value, in the format of
+     * {@link Double#toString(double)}
+     *
+     * @param out   the builder to append to
+     * @param value the value
+     * @return the builder
+     */
+    public static StringBuilder append(final StringBuilder out, double value) {
+        final char[] scratch = SCRATCH.get();
+        return out.append(scratch, 0, toChars(value, scratch, 0));
+    }
+
+    /**
+     * @param value the value
+     * @return the shortest decimal representation of the value, in the format of {@link Double#toString(double)}
+     */
+    public static String toString(double value) {
+        final char[] scratch = SCRATCH.get();
+        return new String(scratch, 0, toChars(value, scratch, 0));
+    }
+
+    /**
+     * Write a double in plain decimal notation, rounded (half up) to at most the given number of decimal places, and
+     * without trailing zeros after the decimal point. Non-finite values are written as in {@link Double#toString(double)}
+     *
+     * @param value       the value
+     * @param maxDecimals the maximum number of decimal places
+     * @param out         the buffer to write to. This must have space for the integer digits, the decimal places and
+     *                    two more characters after the offset (at most {@code 311 + maxDecimals} characters)
+     * @param offset      the position in the buffer to start writing at
+     * @return the number of characters written
+     * @throws IllegalArgumentException if the number of decimal places is negative or greater than
+     *                                  {@link #MAX_DECIMALS}
+     */
+    public static int toFixedChars(double value, int maxDecimals, final char[] out, int offset) {
+        if (maxDecimals < 0 || maxDecimals > MAX_DECIMALS) {
+            throw new IllegalArgumentException("The number of decimal places must be between 0 and " + MAX_DECIMALS);
+        }
+        final long bits = Double.doubleToRawLongBits(value);
+        if (!Double.isFinite(value)) {
+            return writeSpecial(value, bits, out, offset);
+        }
+        if (value == 0) {
+            out[offset] = '0';
+            return 1;
+        }
+        int index = offset;
+        if (bits < 0) {
+            out[index++] = '-';
+        }
+        final int decimal = decimal(bits, out, index);
+        int olength = decimal & 31, exp = decimal >> 5;
+        //the number of significant digits to keep
+        int keep = Math.min(olength, exp + 1 + maxDecimals);
+        if (keep < olength) {
+            boolean roundUp = keep >= 0 && out[index + keep] >= '5';
+            if (keep <= 0) {
+                //all the digits are rounded away, so the result is 0 or a single unit of the last decimal place
+                roundUp = keep == 0 && out[index] >= '5';
+                if (!roundUp) {
+                    out[offset] = '0';
+                    return 1;
+                }
+                out[index] = '1';
+                keep = 1;
+                exp = -maxDecimals;
+            } else if (roundUp) {
+                int i = keep - 1;
+                while (i >= 0 && out[index + i] == '9') {
+                    out[index + i--] = '0';
+                }
+                if (i >= 0) {
+                    ++out[index + i];
+                } else {
+                    //carried out of the first digit, e.g. 9.99 to 10.0
+                    out[index] = '1';
+                    ++exp;
+                }
+            }
+            olength = keep;
+        }
+        while (olength > 1 && out[index + olength - 1] == '0' && olength > exp + 1) {
+            --olength;
+        }
+        if (exp < 0) {
+            //0.00xxxx
+            final int zeros = -exp - 1;
+            System.arraycopy(out, index, out, index + 2 + zeros, olength);
+            out[index++] = '0';
+            out[index++] = '.';
+            for (int i = 0; i < zeros; ++i) {
+                out[index++] = '0';
+            }
+            index += olength;
+        } else if (exp + 1 >= olength) {
+            //xxxx00
+            index += olength;
+            for (int i = olength; i < exp + 1; ++i) {
+                out[index++] = '0';
+            }
+        } else {
+            //xx.xx
+            System.arraycopy(out, index + exp + 1, out, index + exp + 2, olength - exp - 1);
+            out[index + exp + 1] = '.';
+            index += olength + 1;
+        }
+        return index - offset;
+    }
+
+    /**
+     * Append a double in plain decimal notation, rounded (half up) to at most the given number of decimal places, and
+     * without trailing zeros after the decimal point
+     *
+     * @param out         the builder to append to
+     * @param value       the value
+     * @param maxDecimals the maximum number of decimal places
+     * @return the builder
+     * @throws IllegalArgumentException if the number of decimal places is negative or greater than
+     *                                  {@link #MAX_DECIMALS}
+     * @see #toFixedChars(double, int, char[], int)
+     */
+    public static StringBuilder appendFixed(final StringBuilder out, double value, int maxDecimals) {
+        final char[] scratch = fixedScratch(value);
+        return out.append(scratch, 0, toFixedChars(value, maxDecimals, scratch, 0));
+    }
+
+    /**
+     * @param value       the value
+     * @param maxDecimals the maximum number of decimal places
+     * @return the value in plain decimal notation, rounded (half up) to at most the given number of decimal places
+     * @throws IllegalArgumentException if the number of decimal places is negative or greater than
+     *                                  {@link #MAX_DECIMALS}
+     */
+    public static String toFixedString(double value, int maxDecimals) {
+        final char[] scratch = fixedScratch(value);
+        return new String(scratch, 0, toFixedChars(value, maxDecimals, scratch, 0));
+    }
+
+    /**
+     * @param value the value to write
+     * @return the scratch space of this thread, grown if needed to hold the value in plain notation
+     */
+    private static char[] fixedScratch(double value) {
+        char[] scratch = SCRATCH.get();
+        if (scratch.length < 311 + MAX_DECIMALS && Math.abs(value) >= 1e40) {
+            //only very large values need more space
+            SCRATCH.set(scratch = new char[311 + MAX_DECIMALS]);
+        }
+        return scratch;
+    }
+
+    /**
+     * @param value the value
+     * @return the number of decimal places in the shortest decimal representation of the value, or 0 if the value is
+     * not finite
+     */
+    public static int decimalPlaces(double value) {
+        if (!Double.isFinite(value) || value == 0) {
+            return 0;
+        }
+        final int decimal = decimal(Double.doubleToRawLongBits(value), null, 0);
+        return Math.max(0, (decimal & 31) - (decimal >> 5) - 1);
+    }
+
+    /**
+     * @param value the value
+     * @return the length of the string that {@link #toChars(double, char[], int)} would write, or -1 if the value is
+     * not finite and 0 if the value is zero
+     */
     static int lengthOfDouble(double value) {
-        // Step 1: Decode the floating point number, and unify normalized and subnormal cases.
-        // First, handle all the trivial cases.
-        if (!Double.isFinite(value)) return -1;
-        long bits = Double.doubleToRawLongBits(value);
-        if (bits == 0 || bits == 0x8000000000000000L) return 0;
+        if (!Double.isFinite(value)) {
+            return -1;
+        }
+        final long bits = Double.doubleToRawLongBits(value);
+        if (value == 0) {
+            return 0;
+        }
+        final int decimal = decimal(bits, null, 0);
+        final int olength = decimal & 31;
+        int exp = decimal >> 5;
+        int length = bits < 0 ? 1 : 0;
+        if (exp < -3 || exp >= 7) {
+            length += olength + (olength == 1 ? 2 : 1) + 1;
+            if (exp < 0) {
+                ++length;
+                exp = -exp;
+            }
+            length += exp >= 100 ? 3 : exp >= 10 ? 2 : 1;
+        } else if (exp < 0) {
+            length += 1 - exp + olength;
+        } else if (exp + 1 >= olength) {
+            length += exp + 3;
+        } else {
+            length += olength + 1;
+        }
+        return length;
+    }
 
-        // Otherwise extract the mantissa and exponent bits and run the full algorithm.
+    /**
+     * Write the non-finite values and zeros
+     *
+     * @return the number of characters written, or 0 if the value is finite and not zero
+     */
+    private static int writeSpecial(double value, long bits, final char[] out, int offset) {
+        final String special;
+        if (Double.isNaN(value)) {
+            special = "NaN";
+        } else if (value == Double.POSITIVE_INFINITY) {
+            special = "Infinity";
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            special = "-Infinity";
+        } else if (value == 0) {
+            special = bits < 0 ? "-0.0" : "0.0";
+        } else {
+            return 0;
+        }
+        special.getChars(0, special.length(), out, offset);
+        return special.length();
+    }
+
+    /**
+     * Compute the shortest decimal digits of a finite, non-zero double
+     *
+     * @param bits   the raw bits of the double
+     * @param out    the buffer to write the digits to, most significant first (may be {@code null} to only compute
+     *               the number of digits)
+     * @param offset the position in the buffer to start writing at
+     * @return the number of digits in the lowest 5 bits, and the decimal exponent of the first digit in the remaining
+     * bits (i.e. the value is {@code d.ddd * 10^exp})
+     */
+    private static int decimal(long bits, final char[] out, int offset) {
+        // Step 1: Decode the floating point number, and unify normalized and subnormal cases.
         int ieeeExponent = (int) ((bits >>> DOUBLE_MANTISSA_BITS) & DOUBLE_EXPONENT_MASK);
         long ieeeMantissa = bits & DOUBLE_MANTISSA_MASK;
         int e2;
@@ -96,8 +411,7 @@ final class Ryu {
             e2 = ieeeExponent - DOUBLE_EXPONENT_BIAS - DOUBLE_MANTISSA_BITS;
             m2 = ieeeMantissa | (1L << DOUBLE_MANTISSA_BITS);
         }
-
-        boolean sign = bits < 0;
+        final boolean acceptBounds = (m2 & 1) == 0;
 
         // Step 2: Determine the interval of legal decimal representations.
         final long mv = 4 * m2;
@@ -124,8 +438,10 @@ final class Ryu {
             if (q <= 21) {
                 if (mv % 5 == 0) {
                     dvIsTrailingZeros = multipleOfPowerOf5(mv, q);
-                } else  {
+                } else if (acceptBounds) {
                     dmIsTrailingZeros = multipleOfPowerOf5(mm, q);
+                } else {
+                    dp -= multipleOfPowerOf5(mp, q) ? 1 : 0;
                 }
             }
         } else {
@@ -139,37 +455,22 @@ final class Ryu {
             e10 = q + e2;
             if (q <= 1) {
                 dvIsTrailingZeros = true;
+                if (acceptBounds) {
                     dmIsTrailingZeros = mmShift == 1;
-
+                } else {
+                    --dp;
+                }
             } else if (q < 63) {
                 dvIsTrailingZeros = (mv & ((1L << (q - 1)) - 1)) == 0;
             }
         }
 
         // Step 4: Find the shortest decimal representation in the interval of legal representations.
-        //
-        // We do some extra work here in order to follow Float/Double.toString semantics. In particular,
-        // that requires printing in scientific format if and only if the exponent is between -3 and 7,
-        // and it requires printing at least two decimal digits.
-        //
-        // Above, we moved the decimal dot all the way to the right, so now we need to count digits to
-        // figure out the correct exponent for scientific notation.
-        final int vplength = decimalLength(dp);
-        int exp = e10 + vplength - 1;
-
-        // Double.toString semantics requires using scientific notation if and only if outside this range.
-        boolean scientificNotation = !((exp >= -3) && (exp < 7));
-
         int removed = 0;
-
         int lastRemovedDigit = 0;
         long output;
         if (dmIsTrailingZeros || dvIsTrailingZeros) {
             while (dp / 10 > dm / 10) {
-                if ((dp < 100) && scientificNotation) {
-                    // Double.toString semantics requires printing at least two digits.
-                    break;
-                }
                 dmIsTrailingZeros &= dm % 10 == 0;
                 dvIsTrailingZeros &= lastRemovedDigit == 0;
                 lastRemovedDigit = (int) (dv % 10);
@@ -178,12 +479,8 @@ final class Ryu {
                 dm /= 10;
                 removed++;
             }
-            if (dmIsTrailingZeros ) {
+            if (dmIsTrailingZeros && acceptBounds) {
                 while (dm % 10 == 0) {
-                    if ((dp < 100) && scientificNotation) {
-                        // Double.toString semantics requires printing at least two digits.
-                        break;
-                    }
                     dvIsTrailingZeros &= lastRemovedDigit == 0;
                     lastRemovedDigit = (int) (dv % 10);
                     dp /= 10;
@@ -196,14 +493,9 @@ final class Ryu {
                 // Round even if the exact numbers is .....50..0.
                 lastRemovedDigit = 4;
             }
-            output = dv +
-                    ((dv == dm && !(dmIsTrailingZeros )) || (lastRemovedDigit >= 5) ? 1 : 0);
+            output = dv + ((dv == dm && !(dmIsTrailingZeros && acceptBounds)) || (lastRemovedDigit >= 5) ? 1 : 0);
         } else {
             while (dp / 10 > dm / 10) {
-                if ((dp < 100) && scientificNotation) {
-                    // Double.toString semantics requires printing at least two digits.
-                    break;
-                }
                 lastRemovedDigit = (int) (dv % 10);
                 dp /= 10;
                 dv /= 10;
@@ -212,73 +504,16 @@ final class Ryu {
             }
             output = dv + ((dv == dm || (lastRemovedDigit >= 5)) ? 1 : 0);
         }
-        int olength = vplength - removed;
+        final int olength = decimalLength(output);
 
-        // Step 5: Print the decimal representation.
-        // We follow Double.toString semantics here.
-        int index = 0;
-        if (sign) {
-            index++;
-        }
-
-        // Values in the interval [1E-3, 1E7) are special.
-        if (scientificNotation) {
-            // Print in the format x.xxxxxE-yy.
-            for (int i = 0; i < olength - 1; i++) {
-                int c = (int) (output % 10);
+        // Step 5: Write the digits.
+        if (out != null) {
+            for (int i = olength - 1; i >= 0; --i) {
+                out[offset + i] = (char) ('0' + (output % 10));
                 output /= 10;
             }
-            index += olength + 1;
-            if (olength == 1) {
-                index++;
-            }
-
-            // Print 'E', the exponent sign, and the exponent, which has at most three digits.
-            index++;
-            if (exp < 0) {
-                index++;
-                exp = -exp;
-            }
-            if (exp >= 100) {
-                index++;
-                index++;
-            } else if (exp >= 10) {
-                index++;
-            }
-            index++;
-        } else {
-            // Otherwise follow the Java spec for values in the interval [1E-3, 1E7).
-            if (exp < 0) {
-                // Decimal dot is before any of the digits.
-                index++;
-                index++;
-                for (int i = -1; i > exp; i--) {
-                    index++;
-                }
-                for (int i = 0; i < olength; i++) {
-                    output /= 10;
-                    index++;
-                }
-            } else if (exp + 1 >= olength) {
-                // Decimal dot is after any of the digits.
-                for (int i = 0; i < olength; i++) {
-                    output /= 10;
-                }
-                index += olength;
-                for (int i = olength; i < exp + 1; i++) {
-                    index++;
-                }
-                index++;
-                index++;
-            } else {
-                // Decimal dot is somewhere between the digits.
-                for (int i = 0; i < olength; i++) {
-                    output /= 10;
-                }
-                index += olength + 1;
-            }
         }
-        return index;
+        return ((e10 + removed + olength - 1) << 5) | olength;
     }
 
     private static int pow5bits(int e) {
@@ -6,9 +6,12 @@ import net.mahdilamb.dataviz.utils.functions.BiDoubleObjConsumer;
 import net.mahdilamb.dataviz.utils.rtree.RTree;
 import net.mahdilamb.dataviz.utils.rtree.RectangularNode;
 
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
 
 import static net.mahdilamb.dataviz.utils.Numbers.ceilDiv;
 
@@ -18,6 +21,227 @@ import static net.mahdilamb.dataviz.utils.Numbers.ceilDiv;
  * @param <E> the type of the type object to store
  */
 public final class SpatialCache<E> {
+    /**
+     * A slower tier of storage that sits below the in-memory tiles, e.g. on disk. Tiles are identified by a key that
+     * combines the fingerprint of the cache content with the scale, orientation and position of the tile
+     *
+     * @param <E> the type of the tiles
+     */
+    public interface PersistentTier<E> {
+        /**
+         * Load a tile
+         *
+         * @param key    the key of the tile
+         * @param x      the x position of the tile in the viewport
+         * @param y      the y position of the tile in the viewport
+         * @param width  the width of the tile
+         * @param height the height of the tile
+         * @return the tile or {@code null} if it is not stored
+         */
+        E load(long key, double x, double y, int width, int height);
+
+        /**
+         * Store a tile
+         *
+         * @param key  the key of the tile
+         * @param tile the tile
+         */
+        void store(long key, E tile);
+    }
+
+    /**
+     * Counters and timers describing the behaviour of a spatial cache. The statistics may be shared between successive
+     * caches (e.g. when a cache is discarded and recreated), and are safe to update from background threads
+     */
+    public static final class Statistics {
+        /**
+         * The number of buckets in the render time histogram
+         */
+        public static final int NUM_BUCKETS = 16;
+        private final AtomicLong hits = new AtomicLong(),
+                misses = new AtomicLong(),
+                emptyTiles = new AtomicLong(),
+                evictions = new AtomicLong(),
+                persistentHits = new AtomicLong(),
+                prefetched = new AtomicLong(),
+                prefetchWasted = new AtomicLong(),
+                bytesHeld = new AtomicLong(),
+                renderTime = new AtomicLong(),
+                tilesRendered = new AtomicLong(),
+                compositeTime = new AtomicLong(),
+                tilesComposited = new AtomicLong();
+        private final AtomicLongArray renderTimeHistogram = new AtomicLongArray(NUM_BUCKETS);
+
+        /**
+         * @return the number of tiles that were requested for drawing and were already in the cache
+         */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * @return the number of tiles that were requested for drawing and had to be created
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * @return the ratio of hits to requests, or {@code NaN} if no tiles have been requested
+         */
+        public double getHitRatio() {
+            final long hits = getHits();
+            final long total = hits + getMisses();
+            return total == 0 ? Double.NaN : ((double) hits / total);
+        }
+
+        /**
+         * @return the number of tiles that were not in memory but were loaded from the persistent tier
+         */
+        public long getPersistentHits() {
+            return persistentHits.get();
+        }
+
+        /**
+         * @return the number of tiles that were skipped as they contained nothing to draw
+         */
+        public long getEmptyTiles() {
+            return emptyTiles.get();
+        }
+
+        /**
+         * @return the number of tiles that have been removed as the cache reached its capacity
+         */
+        public long getEvictions() {
+            return evictions.get();
+        }
+
+        /**
+         * @return the number of tiles that were created in the background
+         */
+        public long getPrefetched() {
+            return prefetched.get();
+        }
+
+        /**
+         * @return the number of tiles that were created in the background and removed without ever being drawn
+         */
+        public long getPrefetchWasted() {
+            return prefetchWasted.get();
+        }
+
+        /**
+         * @return the estimated number of bytes currently held by the tiles in the cache
+         */
+        public long getBytesHeld() {
+            return bytesHeld.get();
+        }
+
+        /**
+         * @return the number of tiles that have been rendered (including empty tiles)
+         */
+        public long getTilesRendered() {
+            return tilesRendered.get();
+        }
+
+        /**
+         * @return the total time spent rendering tiles in nanoseconds
+         */
+        public long getRenderTime() {
+            return renderTime.get();
+        }
+
+        /**
+         * @return the mean time to render a tile in nanoseconds, or {@code NaN} if no tiles have been rendered
+         */
+        public double getMeanRenderTime() {
+            final long n = getTilesRendered();
+            return n == 0 ? Double.NaN : ((double) getRenderTime() / n);
+        }
+
+        /**
+         * @return the total time spent drawing tiles to the output in nanoseconds
+         */
+        public long getCompositeTime() {
+            return compositeTime.get();
+        }
+
+        /**
+         * @return the number of times a tile has been drawn to the output
+         */
+        public long getTilesComposited() {
+            return tilesComposited.get();
+        }
+
+        /**
+         * Get a snapshot of the render time histogram. Bucket {@code 0} contains the tiles that took less than 1 microsecond to
+         * render, bucket {@code i} those that took between {@code 2^(i-1)} and {@code 2^i} microseconds and the last bucket all
+         * the tiles that took longer.
+         *
+         * @return a copy of the render time histogram
+         * @see #getBucketUpperBound(int)
+         */
+        public long[] getRenderTimeHistogram() {
+            final long[] out = new long[NUM_BUCKETS];
+            for (int i = 0; i < NUM_BUCKETS; ++i) {
+                out[i] = renderTimeHistogram.get(i);
+            }
+            return out;
+        }
+
+        /**
+         * @param bucket the index of the bucket in the histogram
+         * @return the exclusive upper bound of the bucket in microseconds (the last bucket is unbounded)
+         */
+        public static long getBucketUpperBound(int bucket) {
+            if (bucket < 0 || bucket >= NUM_BUCKETS) {
+                throw new IndexOutOfBoundsException();
+            }
+            return bucket == NUM_BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket);
+        }
+
+        /**
+         * Reset the counters and timers. The number of bytes held is not reset as it reflects the current contents of
+         * the cache
+         */
+        public void reset() {
+            hits.set(0);
+            misses.set(0);
+            emptyTiles.set(0);
+            evictions.set(0);
+            persistentHits.set(0);
+            prefetched.set(0);
+            prefetchWasted.set(0);
+            renderTime.set(0);
+            tilesRendered.set(0);
+            compositeTime.set(0);
+            tilesComposited.set(0);
+            for (int i = 0; i < NUM_BUCKETS; ++i) {
+                renderTimeHistogram.set(i, 0);
+            }
+        }
+
+        void recordRender(long nanos) {
+            renderTime.addAndGet(nanos);
+            tilesRendered.incrementAndGet();
+            final long micros = nanos / 1000;
+            final int bucket = micros == 0 ? 0 : Math.min(NUM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+            renderTimeHistogram.incrementAndGet(bucket);
+        }
+
+        void recordComposite(long nanos) {
+            compositeTime.addAndGet(nanos);
+            tilesComposited.incrementAndGet();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "SpatialCache.Statistics {hits: %d, misses: %d, empty: %d, evictions: %d, prefetched: %d, prefetch wasted: %d, bytes held: %d, mean render: %.1fus, composite: %.1fms}",
+                    getHits(), getMisses(), getEmptyTiles(), getEvictions(), getPrefetched(), getPrefetchWasted(), getBytesHeld(), getMeanRenderTime() / 1000, getCompositeTime() / 1e6
+            );
+        }
+    }
 
     private final List<RectangularNode<E>> lru = new LinkedList<>();
     private final RTree<RectangularNode<E>> cache = new RTree<>();
@@ -30,6 +254,25 @@ public final class SpatialCache<E> {
     private double xScale, yScale;
     private final BiDoubleBiIntFunction<E> cacheFunction;
     private final BiDoubleObjConsumer<E> useFunction;
+    private final ToLongFunction<? super E> tileWeigher;
+    private final Statistics statistics;
+    /*
+     * Tiles that were created in the background and have not been drawn yet. This is shared by the prefetch thread
+     * and the drawing thread
+     */
+    private final Set<RectangularNode<E>> unusedPrefetches = ConcurrentHashMap.newKeySet();
+    private PersistentTier<E> persistentTier;
+    private LongSupplier fingerprintFunction;
+    /*
+     * The fingerprint of the content, which is calculated by whichever thread first needs it (the drawing or prefetch
+     * thread). Invalidating it replaces the holder, so a calculation that was in progress cannot overwrite the new one
+     */
+    private volatile Fingerprint fingerprint = new Fingerprint();
+
+    private static final class Fingerprint {
+        private long value;
+        private boolean valid = false;
+    }
 
     /**
      * Create a spatial cache
@@ -40,16 +283,34 @@ public final class SpatialCache<E> {
      * @param tileCreator           the function used to create a tile (method args: x (double), y (double), width (int), height (int); returns a tile (E))
      * @param backgroundTileCreator the function used to create a tile in a background thread (method args: x (double), y (double), width (int), height (int); returns a tile (E))
      * @param tileConsumer          the function used to consume a tile (method args: x (double), y (double), tile (E))
+     * @param tileWeigher           the function used to estimate the number of bytes held by a tile
+     * @param statistics            the statistics to update as the cache is used
      */
-    public SpatialCache(int maxTiles, int tileWidth, int tileHeight, BiDoubleBiIntFunction<E> tileCreator, BiDoubleBiIntFunction<E> backgroundTileCreator, BiDoubleObjConsumer<E> tileConsumer) {
+    public SpatialCache(int maxTiles, int tileWidth, int tileHeight, BiDoubleBiIntFunction<E> tileCreator, BiDoubleBiIntFunction<E> backgroundTileCreator, BiDoubleObjConsumer<E> tileConsumer, ToLongFunction<? super E> tileWeigher, Statistics statistics) {
         this.tileWidth = tileWidth;
         this.tileHeight = tileHeight;
         this.cacheFunction = Objects.requireNonNull(tileCreator);
         this.backgroundCacheFunction = Objects.requireNonNull(backgroundTileCreator);
         this.useFunction = Objects.requireNonNull(tileConsumer);
+        this.tileWeigher = Objects.requireNonNull(tileWeigher);
+        this.statistics = Objects.requireNonNull(statistics);
         this.suggestedMaxTiles = maxTiles;
     }
 
+    /**
+     * Create a spatial cache
+     *
+     * @param maxTiles              the maximum suggested number of tiles (will differ depending on viewport dimensions)
+     * @param tileWidth             the width of the tile
+     * @param tileHeight            the height of the tile
+     * @param tileCreator           the function used to create a tile (method args: x (double), y (double), width (int), height (int); returns a tile (E))
+     * @param backgroundTileCreator the function used to create a tile in a background thread (method args: x (double), y (double), width (int), height (int); returns a tile (E))
+     * @param tileConsumer          the function used to consume a tile (method args: x (double), y (double), tile (E))
+     */
+    public SpatialCache(int maxTiles, int tileWidth, int tileHeight, BiDoubleBiIntFunction<E> tileCreator, BiDoubleBiIntFunction<E> backgroundTileCreator, BiDoubleObjConsumer<E> tileConsumer) {
+        this(maxTiles, tileWidth, tileHeight, tileCreator, backgroundTileCreator, tileConsumer, tile -> 0, new Statistics());
+    }
+
     /**
      * Create a spatial cache using the minimum number of tiles that supports the given viewport and 128x128 tiles
      *
@@ -116,9 +377,24 @@ public final class SpatialCache<E> {
                 final RectangularNode<E> cacheTile;
                 if (cached.isEmpty()) {
                     //create tile
-                    final E data = cacheFunction.apply(_x, _y, tileWidth, tileHeight);
-                    if (data == null) {
-                        continue;
+                    if (draw) {
+                        statistics.misses.incrementAndGet();
+                    }
+                    final long key = persistentTier == null ? 0 : getKey(x, y, xReversed, yReversed);
+                    E data = persistentTier == null ? null : persistentTier.load(key, _x, _y, tileWidth, tileHeight);
+                    if (data != null) {
+                        statistics.persistentHits.incrementAndGet();
+                    } else {
+                        final long start = System.nanoTime();
+                        data = cacheFunction.apply(_x, _y, tileWidth, tileHeight);
+                        statistics.recordRender(System.nanoTime() - start);
+                        if (data == null) {
+                            statistics.emptyTiles.incrementAndGet();
+                            continue;
+                        }
+                        if (persistentTier != null) {
+                            persistentTier.store(key, data);
+                        }
                     }
                     cacheTile = new RectangularNode<>(
                             x, y, x + tileWidth, y + tileHeight,
@@ -126,15 +402,26 @@ public final class SpatialCache<E> {
                     );
                     cache.put(cacheTile);
                     lru.add(cacheTile);
+                    statistics.bytesHeld.addAndGet(tileWeigher.applyAsLong(data));
+                    if (!draw) {
+                        statistics.prefetched.incrementAndGet();
+                        unusedPrefetches.add(cacheTile);
+                    }
                 } else {
                     //extract cached
                     cacheTile = cached.get(0);
+                    if (draw) {
+                        statistics.hits.incrementAndGet();
+                        unusedPrefetches.remove(cacheTile);
+                    }
                     if (lru.remove(cacheTile)) {
                         lru.add(cacheTile);
                     }
                 }
                 if (draw && cacheTile.data != null) {
+                    final long start = System.nanoTime();
                     useFunction.accept(_x, _y, cacheTile.data);
+                    statistics.recordComposite(System.nanoTime() - start);
                 }
             }
         }
@@ -196,14 +483,86 @@ public final class SpatialCache<E> {
         draw(viewportWidth, viewportHeight, false, false, minX, minY, maxX, maxY);
     }
 
+    /**
+     * Set the persistent tier of the cache. When a tile is not in memory, it will be loaded from the persistent tier
+     * before being created, and newly created tiles are stored in the persistent tier
+     *
+     * @param persistentTier      the persistent tier (may be {@code null} to remove the tier)
+     * @param fingerprintFunction the function used to fingerprint the content of the cache. This is called at most
+     *                            once per clear of the cache
+     * @return this spatial cache
+     */
+    public SpatialCache<E> setPersistentTier(final PersistentTier<E> persistentTier, final LongSupplier fingerprintFunction) {
+        this.persistentTier = persistentTier;
+        this.fingerprintFunction = persistentTier == null ? null : Objects.requireNonNull(fingerprintFunction);
+        this.fingerprint = new Fingerprint();
+        return this;
+    }
+
+    /**
+     * Get the key of a tile in the persistent tier
+     *
+     * @param x         the x position of the tile in scaled world coordinates
+     * @param y         the y position of the tile in scaled world coordinates
+     * @param xReversed whether the x axis is reversed
+     * @param yReversed whether the y axis is reversed
+     * @return the key of the tile
+     */
+    private long getKey(double x, double y, boolean xReversed, boolean yReversed) {
+        long key = Numbers.hashCombine(getFingerprint(), xScale);
+        key = Numbers.hashCombine(key, yScale);
+        key = Numbers.hashCombine(key, (xReversed ? 1 : 0) | (yReversed ? 2 : 0));
+        key = Numbers.hashCombine(key, ((long) tileWidth << 32) | tileHeight);
+        key = Numbers.hashCombine(key, x);
+        return Numbers.hashCombine(key, y);
+    }
+
+    /**
+     * @return the fingerprint of the content of the cache, calculating it if needed
+     */
+    private long getFingerprint() {
+        final Fingerprint fingerprint = this.fingerprint;
+        synchronized (fingerprint) {
+            if (!fingerprint.valid) {
+                fingerprint.value = fingerprintFunction.getAsLong();
+                fingerprint.valid = true;
+            }
+            return fingerprint.value;
+        }
+    }
+
+    /**
+     * @return the statistics of this cache
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
     /**
      * Clear the cache
      */
     public void clear() {
+        for (final RectangularNode<E> tile : lru) {
+            release(tile);
+        }
+        unusedPrefetches.clear();
+        fingerprint = new Fingerprint();
         lru.clear();
         cache.clear();
     }
 
+    /**
+     * Update the statistics for a tile that is being removed
+     *
+     * @param tile the tile being removed
+     */
+    private void release(final RectangularNode<E> tile) {
+        statistics.bytesHeld.addAndGet(-tileWeigher.applyAsLong(tile.data));
+        if (unusedPrefetches.remove(tile)) {
+            statistics.prefetchWasted.incrementAndGet();
+        }
+    }
+
     /**
      * Check the viewport for changes
      *
@@ -228,7 +587,12 @@ public final class SpatialCache<E> {
         if (lru.size() < maxTiles) {
             return;
         }
-        lru.subList(0, lru.size() - maxTiles).clear();
+        final List<RectangularNode<E>> evicted = lru.subList(0, lru.size() - maxTiles);
+        for (final RectangularNode<E> tile : evicted) {
+            release(tile);
+        }
+        statistics.evictions.addAndGet(evicted.size());
+        evicted.clear();
         cache.clear();
         cache.putAll(lru.toArray(new RectangularNode[0]));
     }
@@ -0,0 +1,517 @@
+package net.mahdilamb.dataviz.utils.rtree;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * A static, packed spatial index of points. Rather than storing a node per point, the index stores the coordinates and
+ * row ids of the points, sorted by their Hilbert value, along with the bounds of each node in primitive arrays. As the
+ * coordinates are stored in Hilbert order, points that are near each other are also near in memory.
+ * <p>
+ * Points with non-finite coordinates are not included in searches, but can still be accessed by their id.
+ */
+public final class PackedPointIndex {
+    /**
+     * The default number of entries per node
+     */
+    public static final int DEFAULT_NODE_SIZE = 16;
+    private static final int HILBERT_MAX = (1 << 16) - 1;
+
+    /**
+     * Function applied to points found in a search
+     */
+    @FunctionalInterface
+    public interface PointConsumer {
+        /**
+         * @param id the row id of the point
+         * @param x  the x coordinate of the point
+         * @param y  the y coordinate of the point
+         */
+        void accept(int id, double x, double y);
+    }
+
+    /**
+     * Function used to reduce points found in a search into a result container
+     *
+     * @param <R> the type of the result container
+     */
+    @FunctionalInterface
+    public interface PointAccumulator<R> {
+        /**
+         * @param result the result container
+         * @param id     the row id of the point
+         * @param x      the x coordinate of the point
+         * @param y      the y coordinate of the point
+         */
+        void accept(R result, int id, double x, double y);
+    }
+
+    private final int nodeSize;
+    private final int numItems;
+    /*
+     * The coordinates and ids of the points, in Hilbert order (non-finite points are at the end)
+     */
+    private final double[] x, y;
+    private final int[] ids;
+    /*
+     * The position of each id in Hilbert order
+     */
+    private final int[] positions;
+    /*
+     * The bounds of every node, level by level (leaf nodes first). The root is the last node
+     */
+    private final double[] nodeMinX, nodeMinY, nodeMaxX, nodeMaxY;
+    /*
+     * The index of the first node of each level (and a final entry with the total number of nodes)
+     */
+    private final int[] levelStarts;
+    /*
+     * The number of points covered by a (full) node at each level
+     */
+    private final long[] levelSpans;
+
+    /**
+     * Create a packed index from the coordinates
+     *
+     * @param x        the x coordinates
+     * @param y        the y coordinates
+     * @param nodeSize the number of entries per node
+     * @throws IllegalArgumentException if the coordinate arrays are of different lengths or the node size is less than 2
+     */
+    public PackedPointIndex(final double[] x, final double[] y, int nodeSize) {
+        if (Objects.requireNonNull(x).length != Objects.requireNonNull(y).length) {
+            throw new IllegalArgumentException("x and y are of different sizes");
+        }
+        if (nodeSize < 2) {
+            throw new IllegalArgumentException("node size must be at least 2");
+        }
+        this.nodeSize = nodeSize;
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY,
+                maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        int n = 0;
+        for (int i = 0; i < x.length; ++i) {
+            if (Double.isFinite(x[i]) && Double.isFinite(y[i])) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+                ++n;
+            }
+        }
+        numItems = n;
+        //sort the ids by Hilbert value, packed with the id so a primitive sort can be used
+        final long[] sorted = new long[n];
+        final double scaleX = maxX == minX ? 0 : (HILBERT_MAX / (maxX - minX));
+        final double scaleY = maxY == minY ? 0 : (HILBERT_MAX / (maxY - minY));
+        for (int i = 0, j = 0; i < x.length; ++i) {
+            if (Double.isFinite(x[i]) && Double.isFinite(y[i])) {
+                final int h = SpaceFillingCurves.encodeHilbert((int) ((x[i] - minX) * scaleX), (int) ((y[i] - minY) * scaleY));
+                sorted[j++] = ((h & 0xFFFFFFFFL) << 32) | i;
+            }
+        }
+        Arrays.parallelSort(sorted);
+        this.x = new double[x.length];
+        this.y = new double[y.length];
+        ids = new int[x.length];
+        positions = new int[x.length];
+        for (int i = 0; i < n; ++i) {
+            setItem(i, (int) sorted[i], x, y);
+        }
+        for (int i = 0, j = n; i < x.length; ++i) {
+            if (!(Double.isFinite(x[i]) && Double.isFinite(y[i]))) {
+                setItem(j++, i, x, y);
+            }
+        }
+        //calculate the number of nodes in each level
+        int numNodes = 0;
+        int levels = 0;
+        int m = n;
+        do {
+            m = (m + nodeSize - 1) / nodeSize;
+            numNodes += m;
+            ++levels;
+        } while (m > 1);
+        if (n == 0) {
+            //single empty root
+            numNodes = 1;
+        }
+        levelStarts = new int[levels + 1];
+        levelSpans = new long[levels];
+        for (int i = 0, span = 1; i < levels; ++i) {
+            levelSpans[i] = span = (int) Math.min(Integer.MAX_VALUE, (long) span * nodeSize);
+        }
+        nodeMinX = new double[numNodes];
+        nodeMinY = new double[numNodes];
+        nodeMaxX = new double[numNodes];
+        nodeMaxY = new double[numNodes];
+        //leaves
+        int node = 0;
+        for (int i = 0; i < n; i += nodeSize, ++node) {
+            double nMinX = Double.POSITIVE_INFINITY, nMinY = Double.POSITIVE_INFINITY,
+                    nMaxX = Double.NEGATIVE_INFINITY, nMaxY = Double.NEGATIVE_INFINITY;
+            for (int j = i, end = Math.min(n, i + nodeSize); j < end; ++j) {
+                nMinX = Math.min(nMinX, this.x[j]);
+                nMinY = Math.min(nMinY, this.y[j]);
+                nMaxX = Math.max(nMaxX, this.x[j]);
+                nMaxY = Math.max(nMaxY, this.y[j]);
+            }
+            setNode(node, nMinX, nMinY, nMaxX, nMaxY);
+        }
+        if (n == 0) {
+            setNode(node++, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        //internal nodes
+        int level = 0;
+        levelStarts[++level] = node;
+        while (level < levels) {
+            final int start = levelStarts[level - 1], end = levelStarts[level];
+            for (int i = start; i < end; i += nodeSize, ++node) {
+                double nMinX = Double.POSITIVE_INFINITY, nMinY = Double.POSITIVE_INFINITY,
+                        nMaxX = Double.NEGATIVE_INFINITY, nMaxY = Double.NEGATIVE_INFINITY;
+                for (int j = i, e = Math.min(end, i + nodeSize); j < e; ++j) {
+                    nMinX = Math.min(nMinX, nodeMinX[j]);
+                    nMinY = Math.min(nMinY, nodeMinY[j]);
+                    nMaxX = Math.max(nMaxX, nodeMaxX[j]);
+                    nMaxY = Math.max(nMaxY, nodeMaxY[j]);
+                }
+                setNode(node, nMinX, nMinY, nMaxX, nMaxY);
+            }
+            levelStarts[++level] = node;
+        }
+    }
+
+    /**
+     * Create a packed index from the coordinates using the default node size
+     *
+     * @param x the x coordinates
+     * @param y the y coordinates
+     */
+    public PackedPointIndex(final double[] x, final double[] y) {
+        this(x, y, DEFAULT_NODE_SIZE);
+    }
+
+    private void setItem(int i, int id, final double[] x, final double[] y) {
+        this.x[i] = x[id];
+        this.y[i] = y[id];
+        ids[i] = id;
+        positions[id] = i;
+    }
+
+    private void setNode(int node, double minX, double minY, double maxX, double maxY) {
+        nodeMinX[node] = minX;
+        nodeMinY[node] = minY;
+        nodeMaxX[node] = maxX;
+        nodeMaxY[node] = maxY;
+    }
+
+    private boolean nodeIntersects(int node, double minX, double minY, double maxX, double maxY) {
+        return nodeMinX[node] <= maxX && nodeMinY[node] <= maxY && nodeMaxX[node] >= minX && nodeMaxY[node] >= minY;
+    }
+
+    /**
+     * Visit the ids of all the points in the given bounds
+     *
+     * @param minX    the min x of the bounds
+     * @param minY    the min y of the bounds
+     * @param maxX    the max x of the bounds
+     * @param maxY    the max y of the bounds
+     * @param visitor the function to apply to the id of each point in the bounds
+     */
+    public void search(double minX, double minY, double maxX, double maxY, final IntConsumer visitor) {
+        search(minX, minY, maxX, maxY, (id, x, y) -> visitor.accept(id));
+    }
+
+    /**
+     * Visit all the points in the given bounds, in Hilbert order
+     *
+     * @param minX    the min x of the bounds
+     * @param minY    the min y of the bounds
+     * @param maxX    the max x of the bounds
+     * @param maxY    the max y of the bounds
+     * @param visitor the function to apply to each point in the bounds
+     */
+    public void search(double minX, double minY, double maxX, double maxY, final PointConsumer visitor) {
+        if (numItems == 0) {
+            return;
+        }
+        search(getRoot(), minX, minY, maxX, maxY, visitor);
+    }
+
+    /**
+     * Visit all the points in the given bounds in the subtree of a node
+     */
+    private void search(int root, double minX, double minY, double maxX, double maxY, final PointConsumer visitor) {
+        final int[] stack = new int[(levelStarts.length - 1) * nodeSize + 1];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            final int node = stack[--top];
+            if (!nodeIntersects(node, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            final int level = getLevel(node);
+            if (nodeContained(node, minX, minY, maxX, maxY)) {
+                //all the points in the subtree are in the bounds
+                for (int i = getFirstItem(node, level), end = getLastItem(node, level); i < end; ++i) {
+                    visitor.accept(ids[i], x[i], y[i]);
+                }
+                continue;
+            }
+            if (level == 0) {
+                for (int i = getFirstItem(node, 0), end = getLastItem(node, 0); i < end; ++i) {
+                    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                        visitor.accept(ids[i], x[i], y[i]);
+                    }
+                }
+                continue;
+            }
+            final int first = levelStarts[level - 1] + (node - levelStarts[level]) * nodeSize;
+            final int last = Math.min(levelStarts[level], first + nodeSize);
+            for (int child = first; child < last; ++child) {
+                stack[top++] = child;
+            }
+        }
+    }
+
+    /**
+     * Reduce all the points in the given bounds in parallel. The subtrees of the index are shared between the
+     * workers, and each worker reduces its subtrees into a single result container, so that at most one container is
+     * created per worker. The containers are then combined
+     *
+     * @param minX        the min x of the bounds
+     * @param minY        the min y of the bounds
+     * @param maxX        the max x of the bounds
+     * @param maxY        the max y of the bounds
+     * @param supplier    a function that creates a new result container
+     * @param accumulator a function that adds a point to a result container
+     * @param combiner    a function that combines the second result container into the first
+     * @param <R>         the type of the result container
+     * @return the result container
+     */
+    public <R> R collect(double minX, double minY, double maxX, double maxY, final Supplier<R> supplier, final PointAccumulator<R> accumulator, final BiConsumer<R, R> combiner) {
+        if (numItems == 0) {
+            return supplier.get();
+        }
+        //expand the intersecting nodes until there is enough to share between the workers
+        final int target = 4 * ForkJoinPool.getCommonPoolParallelism();
+        int[] nodes = {getRoot()};
+        int level = levelStarts.length - 2;
+        while (nodes.length < target && level > 0) {
+            final int[] children = new int[nodes.length * nodeSize];
+            int numChildren = 0;
+            for (final int node : nodes) {
+                final int first = levelStarts[level - 1] + (node - levelStarts[level]) * nodeSize;
+                final int last = Math.min(levelStarts[level], first + nodeSize);
+                for (int child = first; child < last; ++child) {
+                    if (nodeIntersects(child, minX, minY, maxX, maxY)) {
+                        children[numChildren++] = child;
+                    }
+                }
+            }
+            nodes = Arrays.copyOf(children, numChildren);
+            --level;
+        }
+        final int[] subtrees = nodes;
+        //the workers take the next subtree from the queue, so they stay busy if the subtrees are uneven
+        final AtomicInteger next = new AtomicInteger();
+        final Object[] results = IntStream.range(0, Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism(), subtrees.length)))
+                .parallel()
+                .mapToObj(worker -> {
+                    final R result = supplier.get();
+                    final PointConsumer consumer = (id, x, y) -> accumulator.accept(result, id, x, y);
+                    int node;
+                    while ((node = next.getAndIncrement()) < subtrees.length) {
+                        search(subtrees[node], minX, minY, maxX, maxY, consumer);
+                    }
+                    return result;
+                })
+                .toArray();
+        @SuppressWarnings("unchecked") final R result = (R) results[0];
+        for (int i = 1; i < results.length; ++i) {
+            @SuppressWarnings("unchecked") final R other = (R) results[i];
+            combiner.accept(result, other);
+        }
+        return result;
+    }
+
+    /**
+     * @param minX the min x of the bounds
+     * @param minY the min y of the bounds
+     * @param maxX the max x of the bounds
+     * @param maxY the max y of the bounds
+     * @return the number of points in the given bounds
+     */
+    public int count(double minX, double minY, double maxX, double maxY) {
+        if (numItems == 0) {
+            return 0;
+        }
+        final int[] stack = new int[(levelStarts.length - 1) * nodeSize + 1];
+        int top = 0;
+        int count = 0;
+        stack[top++] = getRoot();
+        while (top > 0) {
+            final int node = stack[--top];
+            if (!nodeIntersects(node, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            final int level = getLevel(node);
+            if (nodeContained(node, minX, minY, maxX, maxY)) {
+                count += getLastItem(node, level) - getFirstItem(node, level);
+                continue;
+            }
+            if (level == 0) {
+                for (int i = getFirstItem(node, 0), end = getLastItem(node, 0); i < end; ++i) {
+                    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                        ++count;
+                    }
+                }
+                continue;
+            }
+            final int first = levelStarts[level - 1] + (node - levelStarts[level]) * nodeSize;
+            final int last = Math.min(levelStarts[level], first + nodeSize);
+            for (int child = first; child < last; ++child) {
+                stack[top++] = child;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param minX the min x of the bounds
+     * @param minY the min y of the bounds
+     * @param maxX the max x of the bounds
+     * @param maxY the max y of the bounds
+     * @return whether there are any points in the given bounds
+     */
+    public boolean collides(double minX, double minY, double maxX, double maxY) {
+        if (numItems == 0) {
+            return false;
+        }
+        final int[] stack = new int[(levelStarts.length - 1) * nodeSize + 1];
+        int top = 0;
+        stack[top++] = getRoot();
+        while (top > 0) {
+            final int node = stack[--top];
+            if (!nodeIntersects(node, minX, minY, maxX, maxY)) {
+                continue;
+            }
+            if (nodeContained(node, minX, minY, maxX, maxY)) {
+                return true;
+            }
+            if (node < levelStarts[1]) {
+                for (int i = getFirstItem(node, 0), end = getLastItem(node, 0); i < end; ++i) {
+                    if (x[i] >= minX && x[i] <= maxX && y[i] >= minY && y[i] <= maxY) {
+                        return true;
+                    }
+                }
+                continue;
+            }
+            final int level = getLevel(node);
+            final int first = levelStarts[level - 1] + (node - levelStarts[level]) * nodeSize;
+            final int last = Math.min(levelStarts[level], first + nodeSize);
+            for (int child = first; child < last; ++child) {
+                stack[top++] = child;
+            }
+        }
+        return false;
+    }
+
+    private int getRoot() {
+        return levelStarts[levelStarts.length - 1] - 1;
+    }
+
+    private boolean nodeContained(int node, double minX, double minY, double maxX, double maxY) {
+        return nodeMinX[node] >= minX && nodeMinY[node] >= minY && nodeMaxX[node] <= maxX && nodeMaxY[node] <= maxY;
+    }
+
+    /**
+     * @return the index (in Hilbert order) of the first point in the subtree of the node
+     */
+    private int getFirstItem(int node, int level) {
+        return (int) Math.min(numItems, (node - levelStarts[level]) * levelSpans[level]);
+    }
+
+    /**
+     * @return the index (in Hilbert order) after the last point in the subtree of the node
+     */
+    private int getLastItem(int node, int level) {
+        return (int) Math.min(numItems, (node - levelStarts[level] + 1) * levelSpans[level]);
+    }
+
+    private int getLevel(int node) {
+        int level = 1;
+        while (node >= levelStarts[level]) {
+            ++level;
+        }
+        return level - 1;
+    }
+
+    /**
+     * @return the number of points in the index
+     */
+    public int size() {
+        return numItems;
+    }
+
+    /**
+     * @param id the row id
+     * @return the x coordinate of the point
+     */
+    public double getX(int id) {
+        return x[positions[id]];
+    }
+
+    /**
+     * @param id the row id
+     * @return the y coordinate of the point
+     */
+    public double getY(int id) {
+        return y[positions[id]];
+    }
+
+    /**
+     * @return the min x of all the points
+     */
+    public double getMinX() {
+        return nodeMinX[nodeMinX.length - 1];
+    }
+
+    /**
+     * @return the min y of all the points
+     */
+    public double getMinY() {
+        return nodeMinY[nodeMinY.length - 1];
+    }
+
+    /**
+     * @return the max x of all the points
+     */
+    public double getMaxX() {
+        return nodeMaxX[nodeMaxX.length - 1];
+    }
+
+    /**
+     * @return the max y of all the points
+     */
+    public double getMaxY() {
+        return nodeMaxY[nodeMaxY.length - 1];
+    }
+
+    /**
+     * Iterate over the ids of the points in the index, in Hilbert order
+     *
+     * @param visitor the function to apply to each id
+     */
+    public void forEach(final IntConsumer visitor) {
+        for (int i = 0; i < numItems; ++i) {
+            visitor.accept(ids[i]);
+        }
+    }
+
+}
@@ -1,13 +1,423 @@
 package net.mahdilamb.dataviz.tests;
 
 import net.mahdilamb.dataviz.MarkerShape;
+import net.mahdilamb.dataviz.figure.Component;
+import net.mahdilamb.dataviz.figure.FigureBase;
+import net.mahdilamb.dataviz.figure.Renderer;
+import net.mahdilamb.dataviz.graphics.ClipShape;
+import net.mahdilamb.dataviz.graphics.GraphicsBuffer;
+import net.mahdilamb.dataviz.graphics.Stroke;
+import net.mahdilamb.dataviz.io.FigureExporter;
+import net.mahdilamb.dataviz.io.RendererPool;
+import net.mahdilamb.dataviz.swing.HeadlessRenderer;
+import net.mahdilamb.dataviz.swing.BufferedImageExtended;
+import net.mahdilamb.dataviz.utils.DensityGrid;
+import net.mahdilamb.dataviz.utils.DiskTileCache;
+import net.mahdilamb.dataviz.utils.Downsampling;
+import net.mahdilamb.dataviz.utils.Ryu;
+import net.mahdilamb.dataviz.utils.SpatialCache;
+import net.mahdilamb.dataviz.utils.rtree.PackedPointIndex;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 public class JUnitTests {
     @Test
     public void findMarkerTest() {
         assertEquals(MarkerShape.X, MarkerShape.get(" x"));
     }
+
+    @Test
+    public void spatialCacheStatisticsTest() {
+        final SpatialCache.Statistics statistics = new SpatialCache.Statistics();
+        final SpatialCache<Object> cache = new SpatialCache<>(-1, 10, 10,
+                (x, y, w, h) -> x == 0 && y == 0 ? null : new Object(),
+                (x, y, w, h) -> new Object(),
+                (x, y, tile) -> {
+                },
+                tile -> 100,
+                statistics
+        );
+        cache.draw(20, 20, 0, 0, 20, 20);
+        assertEquals(4, statistics.getMisses());
+        assertEquals(1, statistics.getEmptyTiles());
+        assertEquals(300, statistics.getBytesHeld());
+        cache.draw(20, 20, 0, 0, 20, 20);
+        assertEquals(3, statistics.getHits());
+        cache.clear();
+        assertEquals(0, statistics.getBytesHeld());
+    }
+
+    @Test
+    public void diskTileCacheTest(@TempDir Path directory) throws IOException {
+        final BufferedImage tile = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+        tile.setRGB(3, 4, 0x80ff0000);
+        new DiskTileCache(directory, 1 << 20).store(42, tile);
+        //a new cache over the same directory should find the tile
+        final DiskTileCache cache = new DiskTileCache(directory, 1 << 20);
+        final BufferedImage loaded = cache.load(42);
+        assertNotNull(loaded);
+        assertEquals(0x80ff0000, loaded.getRGB(3, 4));
+        assertNull(cache.load(43));
+        //tiles should be evicted when the budget is exceeded
+        final DiskTileCache small = new DiskTileCache(directory, cache.getBytesHeld());
+        small.store(43, tile);
+        assertEquals(1, small.size());
+        assertNotNull(small.load(43));
+    }
+
+    @Test
+    public void packedPointIndexTest() {
+        final Random random = new Random(42);
+        final double[] x = new double[10_000], y = new double[x.length];
+        for (int i = 0; i < x.length; ++i) {
+            x[i] = random.nextDouble() * 100;
+            y[i] = random.nextDouble() * 100;
+        }
+        x[0] = Double.NaN;
+        final PackedPointIndex index = new PackedPointIndex(x, y);
+        assertEquals(x.length - 1, index.size());
+        int expected = 0;
+        for (int i = 0; i < x.length; ++i) {
+            if (x[i] >= 20 && x[i] <= 40 && y[i] >= 50 && y[i] <= 55) {
+                ++expected;
+            }
+        }
+        final AtomicInteger found = new AtomicInteger();
+        index.search(20, 50, 40, 55, i -> {
+            assertTrue(x[i] >= 20 && x[i] <= 40 && y[i] >= 50 && y[i] <= 55);
+            found.incrementAndGet();
+        });
+        assertEquals(expected, found.get());
+        assertTrue(index.collides(20, 50, 40, 55));
+        assertFalse(index.collides(101, 101, 102, 102));
+        assertFalse(new PackedPointIndex(new double[0], new double[0]).collides(0, 0, 1, 1));
+    }
+
+    @Test
+    public void fillPixelTest() {
+        final BufferedImageExtended image = new BufferedImageExtended(4, 4);
+        image.fillPixel(1.5, 2.2, 0xFFFFFFFF);
+        assertEquals(0xFFFFFFFF, image.getRGB(1, 2));
+        image.fillPixel(1.9, 2.9, 0x80FF0000);
+        assertEquals(0xFFFF7F7F, image.getRGB(1, 2), "source-over of half red on white");
+        image.fillPixel(0, 0, 0x80FF0000);
+        assertEquals(0x80FF0000, image.getRGB(0, 0), "source-over on transparent");
+        image.fillPixel(-1, 0, 0xFF000000);
+        image.fillPixel(4, 0, 0xFF000000);
+        image.setClip(ClipShape.RECTANGLE, 0, 0, 2, 2);
+        image.fillPixel(3, 3, 0xFF000000);
+        assertEquals(0, image.getRGB(3, 3), "outside of clip");
+        image.clearClip();
+        image.fillPixel(3, 3, 0xFF000000);
+        assertEquals(0xFF000000, image.getRGB(3, 3));
+    }
+
+    @Test
+    public void densityGridTest() {
+        final double[] x = {0.1, 0.1, 0.1, 0.9, 0.6, Double.NaN};
+        final double[] y = {0.9, 0.9, 0.9, 0.1, 0.1, 0.5};
+        final PackedPointIndex index = new PackedPointIndex(x, y);
+        final DensityGrid grid = DensityGrid.aggregate(index, null, null, 1, 0, 0, 1, 1, 2, 2);
+        assertEquals(5, grid.getTotal());
+        assertEquals(3, grid.getCount(0, 0), "row 0 is at the max y");
+        assertEquals(2, grid.getCount(1, 1));
+        assertEquals(0, grid.getCount(1, 0));
+        final DensityGrid.Normalizer linear = grid.createNormalizer(DensityGrid.Normalization.LINEAR);
+        assertEquals(1, linear.normalize(3));
+        assertEquals(0, linear.normalize(0));
+        final DensityGrid.Normalizer eqHist = grid.createNormalizer(DensityGrid.Normalization.EQ_HIST);
+        assertTrue(eqHist.normalize(2) < eqHist.normalize(3));
+        assertEquals(1, eqHist.normalize(3));
+        final DensityGrid.Normalizer coarse = grid.createNormalizer(DensityGrid.Normalization.LINEAR, 4);
+        assertEquals(1, coarse.getMax(), "the mean count of each pixel, rounded up");
+        assertThrows(IllegalArgumentException.class, () -> grid.createNormalizer(DensityGrid.Normalization.LOG, 0));
+        final DensityGrid filtered = DensityGrid.aggregate(index, i -> i != 0, new int[]{0, 1, 1, 0, 0, 0}, 2, 0, 0, 1, 1, 2, 2);
+        assertEquals(4, filtered.getTotal());
+    }
+
+    @Test
+    public void downsamplingTest() {
+        final Random random = new Random(5);
+        final double[] x = new double[1000], y = new double[1000];
+        for (int i = 0; i < x.length; ++i) {
+            x[i] = i / 100.;
+            y[i] = random.nextGaussian();
+        }
+        final Downsampling.Cache cache = new Downsampling.Cache();
+        final boolean[] visited = new boolean[x.length];
+        final AtomicInteger count = new AtomicInteger();
+        cache.forEach(x, y, Downsampling.Mode.M4, 10, 0, 2, 4, i -> {
+            visited[i] = true;
+            count.incrementAndGet();
+        });
+        assertTrue(count.get() <= 4 * 21 + 2);
+        assertTrue(visited[199] && visited[401], "the points either side of the range are included");
+        for (int c = 20; c < 40; ++c) {
+            int min = c * 10, max = c * 10;
+            for (int i = c * 10; i < c * 10 + 10; ++i) {
+                min = y[i] < y[min] ? i : min;
+                max = y[i] > y[max] ? i : max;
+            }
+            assertTrue(visited[c * 10] && visited[c * 10 + 9] && visited[min] && visited[max]);
+        }
+        //panning only adds the new columns
+        final int size = cache.size();
+        cache.forEach(x, y, Downsampling.Mode.M4, 10, 0, 3, 5, i -> {
+        });
+        assertTrue(cache.size() > size && cache.size() <= size + 4 * 11);
+        //zooming back to a recent scale reuses its columns
+        final int panned = cache.size();
+        cache.forEach(x, y, Downsampling.Mode.M4, 20, 0, 3, 5, i -> {
+        });
+        final int zoomed = cache.size();
+        assertTrue(zoomed > panned);
+        cache.forEach(x, y, Downsampling.Mode.M4, 10, 0, 3, 5, i -> {
+        });
+        assertEquals(zoomed, cache.size());
+        //the columns are offset by the phase
+        final Downsampling.Cache shifted = new Downsampling.Cache();
+        final boolean[] kept = new boolean[x.length];
+        shifted.forEach(x, y, Downsampling.Mode.M4, 10, .5, 2, 4, i -> kept[i] = true);
+        for (int c = 21; c < 40; ++c) {
+            assertTrue(kept[c * 10 - 5] && kept[c * 10 + 4], "the first and last points of each shifted column are kept");
+        }
+    }
+
+    @Test
+    public void ryuTest() {
+        final double[] values = {
+                0., -0., 1., -1., .1, .2, .3, 1e7, 9999999., 1e-3, 9.999e-4, 1e22, 1e23, 2e-323,
+                Double.MIN_VALUE, Double.MIN_NORMAL, Math.nextDown(Double.MIN_NORMAL), Double.MAX_VALUE, Math.PI, -Math.E,
+                5e-324, 1.7976931348623157e308, 4.9e-324, 2.2250738585072014e-308, 123456789.123, 0.30000000000000004
+        };
+        final char[] buffer = new char[Ryu.MAX_CHARS + 3];
+        for (final double value : values) {
+            assertRyu(value, buffer);
+        }
+        for (int e = -323; e <= 308; ++e) {
+            assertRyu(Double.parseDouble("1e" + e), buffer);
+        }
+        final Random random = new Random(47);
+        for (int i = 0; i < 200_000; ++i) {
+            final double value = Double.longBitsToDouble(random.nextLong());
+            if (Double.isFinite(value)) {
+                assertRyu(value, buffer);
+            }
+        }
+        assertEquals("NaN", Ryu.toString(Double.NaN));
+        assertEquals("Infinity", Ryu.toString(Double.POSITIVE_INFINITY));
+        assertEquals("-Infinity", Ryu.toString(Double.NEGATIVE_INFINITY));
+        assertEquals("0.0", Ryu.toString(0.));
+        assertEquals("-0.0", Ryu.toString(-0.));
+        assertEquals("1.0E-5", Ryu.toString(1e-5));
+        assertEquals("1234567.0", Ryu.toString(1234567.));
+        assertEquals(4.9e-324, Double.parseDouble(Ryu.toString(Double.MIN_VALUE)));
+        assertEquals(0, Ryu.decimalPlaces(100));
+        assertEquals(1, Ryu.decimalPlaces(.5));
+        assertEquals(3, Ryu.decimalPlaces(-1.125));
+        assertEquals(0, Ryu.decimalPlaces(Double.NaN));
+    }
+
+    private static void assertRyu(double value, char[] buffer) {
+        final String expected = Double.toString(value);
+        buffer[0] = buffer[1] = '#';
+        final int length = Ryu.toChars(value, buffer, 2);
+        final String actual = new String(buffer, 2, length);
+        assertEquals('#', buffer[1], "writes after the offset");
+        assertEquals(Double.doubleToLongBits(value), Double.doubleToLongBits(Double.parseDouble(actual)), expected);
+        assertTrue(length <= expected.length(), expected + " shorter than " + actual);
+        assertEquals(expected.contains("E"), actual.contains("E"), expected);
+        assertEquals(actual, Ryu.toString(value));
+        assertEquals(Math.max(0, new BigDecimal(actual).stripTrailingZeros().scale()), Ryu.decimalPlaces(value), actual);
+    }
+
+    @Test
+    public void ryuFixedTest() {
+        final double[] values = {
+                0., -0., .5, -.5, 1.005, 2.675, .125, -.125, 9.9999, 99.5, -99.5, .0005, -.0004, 1e-20, 123456789.987654321,
+                1e21, 1e-7, 5e-7, 4.9e-7, Math.PI, Double.MIN_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE
+        };
+        for (final double value : values) {
+            for (int decimals = 0; decimals <= Ryu.MAX_DECIMALS; ++decimals) {
+                assertFixed(value, decimals);
+            }
+        }
+        final Random random = new Random(11);
+        for (int i = 0; i < 50_000; ++i) {
+            final double value = (random.nextDouble() - .5) * Math.pow(10, random.nextInt(30) - 15);
+            assertFixed(value, random.nextInt(Ryu.MAX_DECIMALS + 1));
+        }
+        assertEquals("NaN", Ryu.toFixedString(Double.NaN, 2));
+        assertEquals("-Infinity", Ryu.toFixedString(Double.NEGATIVE_INFINITY, 2));
+        assertEquals("1", Ryu.toFixedString(.9999, 3));
+        assertEquals("0.13", Ryu.toFixedString(.125, 2));
+        assertThrows(IllegalArgumentException.class, () -> Ryu.toFixedString(1, Ryu.MAX_DECIMALS + 1));
+        assertThrows(IllegalArgumentException.class, () -> Ryu.toFixedString(1, -1));
+    }
+
+    private static void assertFixed(double value, int decimals) {
+        //the shortest representation is rounded, rather than the exact binary value
+        final String expected = new BigDecimal(Ryu.toString(value)).setScale(decimals, RoundingMode.HALF_UP).stripTrailingZeros().toPlainString();
+        assertEquals(expected, Ryu.toFixedString(value, decimals), value + " to " + decimals + " places");
+        assertEquals(expected, Ryu.appendFixed(new StringBuilder("x"), value, decimals).substring(1));
+    }
+
+    /**
+     * A figure containing a single component that draws with the given function
+     */
+    private static final class DrawingFigure extends FigureBase<DrawingFigure> {
+        DrawingFigure(final Consumer<GraphicsBuffer> drawing) {
+            super(100, 100);
+            add(new Component() {
+                @Override
+                protected void layoutComponent(Renderer renderer, double minX, double minY, double maxX, double maxY) {
+                    setBoundsFromRect(minX, minY, maxX - minX, maxY - minY);
+                }
+
+                @Override
+                protected void drawComponent(Renderer renderer, GraphicsBuffer canvas) {
+                    drawing.accept(canvas);
+                }
+            });
+        }
+    }
+
+    private static String exportSVG(final Path directory, final Consumer<GraphicsBuffer> drawing) throws IOException {
+        final Path file = directory.resolve("figure.svg");
+        new FigureExporter.SVGExporter().export(file.toFile(), new HeadlessRenderer(new DrawingFigure(drawing)));
+        return Files.readString(file);
+    }
+
+    private static int count(final String text, final String pattern) {
+        final Matcher matcher = Pattern.compile(pattern).matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            ++count;
+        }
+        return count;
+    }
+
+    @Test
+    public void svgPathMergeTest(@TempDir Path directory) throws IOException {
+        final String merged = exportSVG(directory, canvas -> {
+            canvas.setStroke(Color.BLACK);
+            for (int i = 0; i < 4; ++i) {
+                canvas.strokeLine(i * 10, 5, (i + 1) * 10, 5);
+            }
+            canvas.strokeLine(0, 20, 10, 30);
+            canvas.strokeLine(10, 30, 20, 20);
+            canvas.setStroke(new Color(0, 0, 255, 128));
+            canvas.strokeLine(0, 80, 10, 80);
+            canvas.strokeLine(10, 80, 20, 80);
+        });
+        assertTrue(merged.contains("d=\"M 0 5 L 40 5 M 0 20 L 10 30 M 10 30 L 20 20 \""), "collinear lines are joined and same-style lines merged");
+        assertEquals(3, count(merged, "<path "), "translucent lines are not merged");
+        assertFalse(merged.contains("stroke-width=\"1\""));
+
+        final String dashed = exportSVG(directory, canvas -> {
+            canvas.setStroke(Color.BLACK);
+            canvas.setStroke(Stroke.DASHED);
+            canvas.beginPath();
+            canvas.moveTo(0, 5);
+            canvas.lineTo(10, 5);
+            canvas.moveTo(10, 5);
+            canvas.lineTo(20, 5);
+            canvas.lineTo(30, 5);
+            canvas.stroke();
+            canvas.strokeLine(30, 5, 40, 5);
+        });
+        assertTrue(dashed.contains("d=\"M 0 5 L 10 5 M 10 5 L 30 5 \""), "dashed lines are not joined across moves");
+        assertEquals(2, count(dashed, "<path "), "dashed lines are not merged");
+
+        final int numLines = 5000;
+        final String split = exportSVG(directory, canvas -> {
+            canvas.setStroke(Color.BLACK);
+            for (int i = 0; i < numLines; ++i) {
+                canvas.strokeLine(i * .01, 0, i * .01, 100);
+            }
+        });
+        assertEquals(numLines, count(split, "M "));
+        assertEquals(3, count(split, "<path "), "merged paths are split after 4096 commands");
+    }
+
+    @Test
+    public void svgSymbolTest(@TempDir Path directory) throws IOException {
+        final GraphicsBuffer.Symbol square = new GraphicsBuffer.Symbol() {
+            @Override
+            public void paint(GraphicsBuffer canvas, double x, double y) {
+                canvas.fillRect(x - 2, y - 2, 4, 4);
+                canvas.strokeRect(x - 2, y - 2, 4, 4);
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                return o == this;
+            }
+
+            @Override
+            public int hashCode() {
+                return 0;
+            }
+        };
+        final Color[] colors = {Color.RED, Color.GREEN, Color.BLUE};
+        final String svg = exportSVG(directory, canvas -> {
+            for (int i = 0; i < colors.length; ++i) {
+                canvas.setFill(colors[i]);
+                canvas.setStroke(Color.BLACK);
+                canvas.drawSymbol(square, 10 + i * 10, 20);
+            }
+        });
+        //the geometry is defined once, and the colors are set where it is used
+        assertEquals(1, count(svg, "<symbol "));
+        assertEquals(colors.length, count(svg, "<use [^>]*class=\"s\\d+\""));
+        assertEquals(colors.length, count(svg, "\\.s\\d+ \\{fill:"));
+        final Matcher symbol = Pattern.compile("<symbol [^>]*>(.*?)</symbol>", Pattern.DOTALL).matcher(svg);
+        assertTrue(symbol.find());
+        final String geometry = symbol.group(1);
+        assertFalse(geometry.contains("class="), "the elements of a symbol inherit their colors");
+        assertEquals(2, count(geometry, "x=\"-2\" y=\"-2\" width=\"4\" height=\"4\""));
+        assertTrue(geometry.contains("stroke=\"none\""));
+        assertTrue(geometry.contains("fill=\"none\""));
+        assertTrue(svg.contains("<use xlink:href=\"#symbol-0\" class=\"s1\" x=\"20\" y=\"20\" />"));
+    }
+
+    @Test
+    public void rendererPoolTest() throws IOException {
+        final AtomicInteger draws = new AtomicInteger();
+        final DrawingFigure figure = new DrawingFigure(canvas -> {
+            draws.incrementAndGet();
+            canvas.setFill(Color.RED);
+            canvas.fillRect(10, 10, 50, 50);
+        });
+        final long before = countNonDaemonThreads();
+        final byte[] first, second;
+        //render the same figure on the threads of two pools, one after the other
+        try (final RendererPool a = new RendererPool(1); final RendererPool b = new RendererPool(1)) {
+            first = a.render(figure, 320, 240, RendererPool.Format.PNG);
+            second = b.render(figure, 200, 150, RendererPool.Format.PNG);
+        }
+        assertEquals(2, draws.get(), "resizing the figure does not redraw it in the previous renderer");
+        assertFalse(Arrays.equals(first, second));
+        assertEquals(before, countNonDaemonThreads(), "rendering does not start threads that keep the JVM alive");
+    }
+
+    private static long countNonDaemonThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(t -> t.isAlive() && !t.isDaemon()).count();
+    }
 }